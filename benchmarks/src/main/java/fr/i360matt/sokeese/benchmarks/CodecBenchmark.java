@@ -0,0 +1,90 @@
+package fr.i360matt.sokeese.benchmarks;
+
+import fr.i360matt.sokeese.commons.requests.Action;
+import fr.i360matt.sokeese.commons.requests.Message;
+import fr.i360matt.sokeese.commons.requests.Reply;
+import fr.i360matt.sokeese.commons.transport.Codec;
+import fr.i360matt.sokeese.commons.transport.Frames;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the requests as frames, with each codec.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"SERIALIZED", "BINARY"})
+    public String codec;
+
+    @Param({"MESSAGE", "ACTION", "REPLY"})
+    public String request;
+
+    private Codec selected;
+    private Object obj;
+    private ByteBuffer payload;
+
+
+    @Setup
+    public void setup () throws IOException {
+        this.selected = Codec.valueOf(this.codec);
+        switch (this.request) {
+            case "MESSAGE":
+                final Message message = new Message();
+                message.setRecipient("server");
+                message.setChannel("bench");
+                message.setIdRequest(42);
+                message.setContent("hello world");
+                this.obj = message;
+                break;
+            case "ACTION":
+                final Action action = new Action();
+                action.setName("bench");
+                action.setContent(123456789L);
+                this.obj = action;
+                break;
+            default:
+                final Reply reply = new Reply();
+                reply.setRecipient("client");
+                reply.setChannel("bench");
+                reply.setIdRequest(42);
+                reply.setContent("hello world");
+                this.obj = reply;
+        }
+
+        final ByteBuffer frame = Frames.encode(this.selected, this.obj);
+        frame.position(frame.position() + Frames.HEADER);
+        this.payload = frame.slice();
+    }
+
+    @Benchmark
+    public ByteBuffer encode () throws IOException {
+        return Frames.encode(this.selected, this.obj);
+    }
+
+    @Benchmark
+    public Object decode () throws IOException, ClassNotFoundException {
+        return Frames.decode(this.selected, this.payload.duplicate());
+    }
+}
@@ -0,0 +1,111 @@
+package fr.i360matt.sokeese.benchmarks;
+
+import fr.i360matt.sokeese.commons.metrics.Metrics;
+import fr.i360matt.sokeese.commons.modules.CatcherManager;
+import fr.i360matt.sokeese.commons.requests.Message;
+import fr.i360matt.sokeese.server.ServerOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of a 'MESSAGE' request to its events by CatcherManager, on the thread reading the requests,
+ * with many channels and many events per channel.
+ * With patterns, wildcard events are registered too: the exact channels must not be slower.
+ *
+ * @author 360matt
+ * @version 1.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Param({"1", "1000"})
+    public int channels;
+
+    @Param({"1", "16", "128"})
+    public int handlers; // per channel
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    @Param({"0", "100"})
+    public int patterns; // 'pattern-N.*', matching none of the channels
+
+    private CatcherManager.SERVER manager;
+    private Message[] messages;
+
+
+    @Setup
+    public void setup (final Blackhole blackhole) {
+        final Metrics recorded = this.metrics ? new Metrics(() -> 0) : null;
+        this.manager = new CatcherManager.SERVER(new ServerOptions(), recorded);
+        for (int p = 0; p < this.patterns; p++)
+            this.manager.addMessageEvent("pattern-" + p + ".*", (event, client) -> blackhole.consume(event));
+        this.messages = new Message[this.channels];
+        for (int c = 0; c < this.channels; c++) {
+            final String channel = "channel-" + c;
+            for (int h = 0; h < this.handlers; h++)
+                this.manager.addMessageEvent(channel, (event, client) -> blackhole.consume(event.getContent()));
+
+            final Message message = new Message();
+            message.setRecipient("server");
+            message.setSender("bench");
+            message.setChannel(channel);
+            message.setContent(c);
+            this.messages[c] = message;
+        }
+    }
+
+    @TearDown
+    public void tearDown () {
+        this.manager.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public void dispatch (final Cursor cursor) {
+        final Message message = this.messages[cursor.next];
+        cursor.next = (cursor.next + 1) % this.messages.length;
+        this.manager.handleMessage(message, null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void dispatchContended (final Cursor cursor) {
+        this.dispatch(cursor);
+    }
+
+    @Benchmark
+    public void dispatchUnlistened () {
+        this.manager.handleMessage(Unlistened.MESSAGE, null);
+    }
+
+    private static final class Unlistened {
+        private static final Message MESSAGE = new Message();
+        static {
+            MESSAGE.setChannel("nobody");
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package fr.i360matt.sokeese.benchmarks;
+
+import fr.i360matt.sokeese.client.ClientOptions;
+import fr.i360matt.sokeese.client.Login;
+import fr.i360matt.sokeese.client.SokeeseClient;
+import fr.i360matt.sokeese.commons.metrics.LatencyHistogram;
+import fr.i360matt.sokeese.commons.metrics.Traffic;
+import fr.i360matt.sokeese.commons.requests.Action;
+import fr.i360matt.sokeese.commons.requests.Message;
+import fr.i360matt.sokeese.commons.transport.Codec;
+import fr.i360matt.sokeese.commons.transport.Transport;
+import fr.i360matt.sokeese.server.ServerOptions;
+import fr.i360matt.sokeese.server.SokeeseServer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Allows to load a local server with many client sessions, sending a mix of requests at a fixed rate,
+ * then to print the throughput and the latency percentiles of each kind of request.
+ *
+ * The requests are sent on a schedule (open loop): the n-th request of a driver is due at start + n * interval,
+ * whether the previous ones are answered or not. The latency is counted from this due time, not from the actual send,
+ * so a stall of the server or of the drivers is paid by every request scheduled meanwhile (coordinated omission).
+ * The latency counted from the actual send (the service time) is printed too: the gap between both shows the stalls.
+ *
+ * Each request carries its due time and its send time, read by its receiver:
+ * the server for the messages, actions and requests, the other sessions for the peer messages and the broadcasts.
+ *
+ * Usage: java -jar benchmarks.jar load [--option=value ...]
+ *   --clients=1000           sessions logged in to the server
+ *   --rate=10000             requests sent per second, by all the sessions
+ *   --duration=30            seconds measured
+ *   --warmup=5               seconds sent before, not measured
+ *   --mix=message:40,peer:20,action:20,broadcast:1,request:19   weight of each kind of request
+ *   --payload=64             bytes of content per request (16 at least)
+ *   --transport=FRAMED       STREAM or FRAMED, for the server and the clients
+ *   --codec=BINARY           codec of the FRAMED clients
+ *   --drivers=cpu count      threads sending the requests, each one for a share of the sessions
+ *   --virtual=false          sessions and events on virtual threads (Java 21+)
+ *   --delay=5000             ms before a request without reply is counted as failed
+ *   --port=25592
+ *
+ * @author 360matt
+ * @version 1.0.0
+ */
+public final class LoadGenerator {
+    private static final String CHANNEL = "load";
+    private static final String ECHO = "load-echo";
+    private static final int STAMPS = 16; // due time then send time, at the head of the content
+
+    /**
+     * The kinds of request sent by the sessions.
+     */
+    enum Kind {
+        MESSAGE, // to the server
+        PEER, // to another session, forwarded by the server
+        ACTION, // to the server
+        BROADCAST, // to all the sessions, forwarded by the server
+        REQUEST // to the server, answered: the latency is the round trip
+    }
+
+    private final Map<String, String> options;
+    private final int clients;
+    private final long rate;
+    private final int payload;
+    private final int drivers;
+    private final int delay;
+    private final Kind[] kinds;
+    private final int[] weights; // cumulative
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Kind.values().length];
+    private final LatencyHistogram[] services = new LatencyHistogram[Kind.values().length];
+    private final LongAdder[] sent = new LongAdder[Kind.values().length];
+    private final LongAdder[] received = new LongAdder[Kind.values().length];
+    private final LongAdder failed = new LongAdder();
+    private final LongAccumulator lag = new LongAccumulator(Math::max, 0);
+    private volatile long measureStart = Long.MAX_VALUE; // the requests due before are not counted
+    private volatile long measureEnd = Long.MAX_VALUE;
+    private volatile boolean running = true;
+
+    private SokeeseServer server;
+    private SokeeseClient[] sessions;
+
+
+    LoadGenerator (final Map<String, String> options) {
+        this.options = options;
+        this.clients = this.option("clients", 1000);
+        this.rate = this.option("rate", 10_000);
+        this.payload = Math.max(STAMPS, this.option("payload", 64));
+        this.drivers = Math.max(1, Math.min(this.clients, this.option("drivers", Runtime.getRuntime().availableProcessors())));
+        this.delay = this.option("delay", 5000);
+
+        final List<Kind> kinds = new ArrayList<>();
+        final List<Integer> weights = new ArrayList<>();
+        int total = 0;
+        for (final String part : options.getOrDefault("mix", "message:40,peer:20,action:20,broadcast:1,request:19").split(",")) {
+            final String[] entry = part.trim().split(":");
+            final int weight = (entry.length > 1) ? Integer.parseInt(entry[1].trim()) : 1;
+            if (weight <= 0)
+                continue;
+            kinds.add(Kind.valueOf(entry[0].trim().toUpperCase(Locale.ROOT)));
+            weights.add(total += weight);
+        }
+        if (kinds.isEmpty())
+            throw new IllegalArgumentException("The mix has no request");
+        this.kinds = kinds.toArray(new Kind[0]);
+        this.weights = weights.stream().mapToInt(Integer::intValue).toArray();
+
+        for (int i = 0; i < this.latencies.length; i++) {
+            this.latencies[i] = new LatencyHistogram();
+            this.services[i] = new LatencyHistogram();
+            this.sent[i] = new LongAdder();
+            this.received[i] = new LongAdder();
+        }
+    }
+
+    private int option (final String name, final int def) {
+        final String value = this.options.get(name);
+        return (value == null) ? def : Integer.parseInt(value);
+    }
+
+    public static void main (final String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --option=value: " + arg);
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    void run () throws Exception {
+        final int port = this.option("port", 25592);
+        final Transport transport = Transport.valueOf(this.options.getOrDefault("transport", "FRAMED").toUpperCase(Locale.ROOT));
+        final boolean virtual = Boolean.parseBoolean(this.options.getOrDefault("virtual", "false"));
+
+        final ServerOptions serverOptions = new ServerOptions();
+        serverOptions.setTransport(transport);
+        serverOptions.setVirtualThreads(virtual);
+        serverOptions.setMaxClients(this.clients);
+        serverOptions.setLevelMessages(ServerOptions.Level.ALL);
+        this.server = new SokeeseServer(port, serverOptions);
+        this.server.onMessage(CHANNEL, (event, client) -> this.receive(Kind.MESSAGE, event.getContent()));
+        this.server.onAction(CHANNEL, (event, client) -> this.receive(Kind.ACTION, event.getContent()));
+        this.server.onMessage(ECHO, (event, client) -> event.reply((Object) event.getContent()));
+
+        final ClientOptions clientOptions = new ClientOptions();
+        clientOptions.setTransport(transport);
+        clientOptions.setCodec(Codec.valueOf(this.options.getOrDefault("codec", "BINARY").toUpperCase(Locale.ROOT)));
+        clientOptions.setVirtualThreads(virtual);
+
+        try {
+            this.connect(port, clientOptions);
+            this.drive(this.option("warmup", 5), this.option("duration", 30));
+            this.report(transport);
+        } finally {
+            for (final SokeeseClient session : this.sessions)
+                if (session != null)
+                    session.close();
+            this.server.close();
+        }
+    }
+
+    /**
+     * Allows to log in all the sessions, a few at a time.
+     */
+    private void connect (final int port, final ClientOptions clientOptions) {
+        System.out.println("Connecting " + this.clients + " sessions ...");
+        this.sessions = new SokeeseClient[this.clients];
+        final ExecutorService connecting = Executors.newFixedThreadPool(Math.min(this.clients, 32));
+        try {
+            final CompletableFuture<?>[] connected = new CompletableFuture<?>[this.clients];
+            for (int i = 0; i < this.clients; i++) {
+                final int index = i;
+                connected[i] = CompletableFuture.runAsync(() -> {
+                    final SokeeseClient session = new SokeeseClient("127.0.0.1", port, new Login(name(index), ""), clientOptions);
+                    session.onMessage(CHANNEL, event -> this.receive(Kind.PEER, event.getContent()));
+                    session.onMessage(Kind.BROADCAST.name(), event -> this.receive(Kind.BROADCAST, event.getContent()));
+                    this.sessions[index] = session;
+                }, connecting);
+            }
+            CompletableFuture.allOf(connected).join();
+        } finally {
+            connecting.shutdown();
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (this.server.getUserManager().getCount() < this.clients && System.nanoTime() < deadline)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        if (this.server.getUserManager().getCount() < this.clients)
+            throw new IllegalStateException("Only " + this.server.getUserManager().getCount() + " sessions out of " + this.clients + " are logged in");
+    }
+
+    private static String name (final int index) {
+        return "load-" + index;
+    }
+
+    /**
+     * Allows to send the requests on schedule during the warmup then the measure,
+     * and to wait for the last requests to be received.
+     */
+    private void drive (final int warmup, final int duration) throws InterruptedException {
+        final long interval = Math.max(1, TimeUnit.SECONDS.toNanos(1) * this.drivers / Math.max(1, this.rate)); // per driver
+        final long start = System.nanoTime();
+        this.measureStart = start + TimeUnit.SECONDS.toNanos(warmup);
+        this.measureEnd = this.measureStart + TimeUnit.SECONDS.toNanos(duration);
+
+        System.out.println("Sending " + this.rate + " requests/s for " + warmup + "s of warmup then " + duration + "s measured ...");
+        final Thread[] threads = new Thread[this.drivers];
+        for (int d = 0; d < this.drivers; d++) {
+            final int driver = d;
+            threads[d] = new Thread(() -> this.driver(driver, start + driver * interval / this.drivers, interval), "LoadGenerator-driver-" + d);
+            threads[d].start();
+        }
+        for (final Thread thread : threads)
+            thread.join();
+
+        // the requests still in flight, until the delay of the replies
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.delay);
+        while (System.nanoTime() < deadline && this.missing() > 0)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    /**
+     * Allows to send the requests of a driver, the sessions index % drivers == driver taking turns.
+     * A request late on its schedule is sent at once, with its original due time.
+     */
+    private void driver (final int driver, final long first, final long interval) {
+        int session = driver;
+        long due = first;
+        while (due < this.measureEnd) {
+            long now = System.nanoTime();
+            if (due > now) {
+                LockSupport.parkNanos(due - now);
+                continue;
+            }
+            this.lag.accumulate(now - due);
+            while (due <= now && due < this.measureEnd) {
+                this.send(this.sessions[session], session, this.pick(), due);
+                session += this.drivers;
+                if (session >= this.clients)
+                    session = driver;
+                due += interval;
+            }
+        }
+    }
+
+    private Kind pick () {
+        if (this.kinds.length == 1)
+            return this.kinds[0];
+        final int value = ThreadLocalRandom.current().nextInt(this.weights[this.weights.length - 1]);
+        for (int i = 0; i < this.weights.length; i++)
+            if (value < this.weights[i])
+                return this.kinds[i];
+        return this.kinds[this.kinds.length - 1];
+    }
+
+    private void send (final SokeeseClient session, final int index, final Kind kind, final long due) {
+        final byte[] content = new byte[this.payload];
+        ByteBuffer.wrap(content).putLong(due).putLong(System.nanoTime());
+        final boolean measured = due >= this.measureStart;
+        if (measured)
+            this.sent[kind.ordinal()].add((kind == Kind.BROADCAST) ? this.clients : 1);
+
+        switch (kind) {
+            case ACTION: {
+                final Action action = new Action();
+                action.setName(CHANNEL);
+                action.setContent(content);
+                session.sendAction(action);
+                break;
+            }
+            case REQUEST: {
+                final Message message = new Message();
+                message.setRecipient("server");
+                message.setChannel(ECHO);
+                message.setContent(content);
+                session.request(message, this.delay).whenComplete((reply, error) -> {
+                    if (error != null) {
+                        if (measured)
+                            this.failed.increment();
+                    } else {
+                        this.receive(Kind.REQUEST, content);
+                    }
+                });
+                break;
+            }
+            default: {
+                final Message message = new Message();
+                message.setRecipient((kind == Kind.MESSAGE) ? "server"
+                        : (kind == Kind.BROADCAST) ? "ALL"
+                        : name((index + 1 + ThreadLocalRandom.current().nextInt(Math.max(1, this.clients - 1))) % this.clients));
+                message.setChannel((kind == Kind.BROADCAST) ? Kind.BROADCAST.name() : CHANNEL);
+                message.setContent(content);
+                session.sendMessage(message);
+            }
+        }
+    }
+
+    private void receive (final Kind kind, final Object content) {
+        final long now = System.nanoTime();
+        final ByteBuffer stamps = ByteBuffer.wrap((byte[]) content);
+        final long due = stamps.getLong();
+        final long sent = stamps.getLong();
+        if (due < this.measureStart)
+            return;
+        this.latencies[kind.ordinal()].record(now - due);
+        this.services[kind.ordinal()].record(now - sent);
+        this.received[kind.ordinal()].increment();
+    }
+
+    private long missing () {
+        long missing = -this.failed.sum();
+        for (int i = 0; i < this.sent.length; i++)
+            missing += this.sent[i].sum() - this.received[i].sum();
+        return missing;
+    }
+
+    private void report (final Transport transport) {
+        final double seconds = (this.measureEnd - this.measureStart) / 1e9;
+        final Traffic traffic = this.server.getMetrics().getTraffic();
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%d sessions, %s transport, %d requests/s scheduled, %.0fs measured%n",
+                this.clients, transport, this.rate, seconds);
+        System.out.printf(Locale.ROOT, "%-10s %10s %12s %10s %10s %10s %10s | %10s %10s%n",
+                "kind", "received", "received/s", "p50 us", "p99 us", "p999 us", "max us", "svc p50", "svc p99");
+        for (final Kind kind : Kind.values()) {
+            final LatencyHistogram latency = this.latencies[kind.ordinal()];
+            final LatencyHistogram service = this.services[kind.ordinal()];
+            if (this.sent[kind.ordinal()].sum() == 0)
+                continue;
+            System.out.printf(Locale.ROOT, "%-10s %10d %12.0f %10d %10d %10d %10d | %10d %10d%n",
+                    kind.name().toLowerCase(Locale.ROOT), latency.getCount(), latency.getCount() / seconds,
+                    micros(latency.getPercentile(50)), micros(latency.getPercentile(99)),
+                    micros(latency.getPercentile(99.9)), micros(latency.getMax()),
+                    micros(service.getPercentile(50)), micros(service.getPercentile(99)));
+        }
+        System.out.println("Latencies from the due time of the requests, 'svc' from their actual send (not corrected).");
+        System.out.printf(Locale.ROOT, "Missing: %d, failed requests: %d, dropped by the server: %d, max lag of the drivers: %d us%n",
+                this.missing(), this.failed.sum(), traffic.getDropped(), micros(this.lag.get()));
+    }
+
+    private static long micros (final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,100 @@
+package fr.i360matt.sokeese.benchmarks;
+
+import fr.i360matt.sokeese.client.ClientOptions;
+import fr.i360matt.sokeese.client.Login;
+import fr.i360matt.sokeese.client.SokeeseClient;
+import fr.i360matt.sokeese.commons.requests.Message;
+import fr.i360matt.sokeese.commons.requests.Reply;
+import fr.i360matt.sokeese.commons.transport.Codec;
+import fr.i360matt.sokeese.commons.transport.Transport;
+import fr.i360matt.sokeese.server.ServerOptions;
+import fr.i360matt.sokeese.server.SokeeseServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end request/reply between a client and a server on the loopback:
+ * the latency of a single request (sampled, with percentiles), and the throughput of PIPELINED requests in flight.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+    private static final int PORT = 25591;
+    private static final int PIPELINED = 64;
+    private static final int DELAY = 5000;
+
+    @Param({"STREAM", "FRAMED"})
+    public String transport;
+
+    @Param({"SERIALIZED", "BINARY"})
+    public String codec;
+
+    private SokeeseServer server;
+    private SokeeseClient client;
+
+
+    @Setup
+    public void setup () {
+        final Transport selected = Transport.valueOf(this.transport);
+
+        final ServerOptions serverOptions = new ServerOptions();
+        serverOptions.setTransport(selected);
+        this.server = new SokeeseServer(PORT, serverOptions);
+        this.server.onMessage("echo", (event, client) -> event.reply((Object) event.getContent()));
+
+        final ClientOptions options = new ClientOptions();
+        options.setTransport(selected);
+        options.setCodec(Codec.valueOf(this.codec)); // only used by the FRAMED transport
+        this.client = new SokeeseClient("127.0.0.1", PORT, new Login("bench", ""), options);
+    }
+
+    @TearDown
+    public void tearDown () {
+        this.client.close();
+        this.server.close();
+    }
+
+    private CompletableFuture<Reply> request () {
+        final Message message = new Message();
+        message.setRecipient("server");
+        message.setChannel("echo");
+        message.setContent("ping");
+        return this.client.request(message, DELAY);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public Reply latency () {
+        return this.request().join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(PIPELINED)
+    public void throughput () {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[PIPELINED];
+        for (int i = 0; i < PIPELINED; i++)
+            futures[i] = this.request();
+        CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,37 @@
+package fr.i360matt.sokeese.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Allows to run the benchmarks like the JMH launcher, the results being written as JSON by default
+ * so that two releases can be compared (jmh.morethan.io, or any JSON tool).
+ *
+ * Usage: java -jar benchmarks.jar [JMH options], for example:
+ *   java -jar benchmarks.jar Codec -rff codec-1.0.json
+ *   java -jar benchmarks.jar -h
+ *
+ * With 'load' as first argument, runs the LoadGenerator instead:
+ *   java -jar benchmarks.jar load --clients=2000 --rate=20000
+ *
+ * @author 360matt
+ * @version 1.1.0
+ */
+public final class Main {
+
+    private Main () { }
+
+    public static void main (final String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("load")) {
+            LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        final List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf"))
+            options.addAll(Arrays.asList("-rf", "json"));
+        if (!options.contains("-rff"))
+            options.addAll(Arrays.asList("-rff", "jmh-result.json"));
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,121 @@
+package fr.i360matt.sokeese.benchmarks;
+
+import fr.i360matt.sokeese.client.ClientOptions;
+import fr.i360matt.sokeese.commons.modules.CatcherManager;
+import fr.i360matt.sokeese.commons.requests.Reply;
+import fr.i360matt.sokeese.utils.ExpirableCallback;
+import fr.i360matt.sokeese.utils.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * The reply events: insertion then removal when the reply arrives, and insertion then expiration.
+ * ExpirableCallback (map of boxed keys) is measured next to the table used by CatcherManager.
+ *
+ * The expirations are measured by batches of EXPIRED events of 1ms,
+ * the time of a batch includes the tick of the wheel (1ms).
+ *
+ * @author 360matt
+ * @version 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplyBenchmark {
+    private static final int EXPIRED = 100_000;
+    private static final BiConsumer<Reply, Boolean> IGNORED = (reply, received) -> { };
+
+    private final AtomicLong ids = new AtomicLong();
+    private TimingWheel wheel;
+    private ExpirableCallback<Long, BiConsumer<Reply, Boolean>> expirable;
+    private CatcherManager.CLIENT manager;
+
+
+    @Setup(Level.Trial)
+    public void setup () {
+        this.wheel = new TimingWheel(1, TimingWheel.DEFAULT_SIZE);
+        this.expirable = new ExpirableCallback<>(this.wheel);
+        final ClientOptions options = new ClientOptions();
+        options.setTimingWheel(this.wheel);
+        this.manager = new CatcherManager.CLIENT(options, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () {
+        this.expirable.close();
+        this.manager.close();
+        this.wheel.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Answer {
+        final Reply reply = new Reply();
+    }
+
+    @Benchmark
+    public Object expirableInsertRemove () {
+        final long id = this.ids.incrementAndGet();
+        this.expirable.put(id, IGNORED, 5000);
+        return this.expirable.remove(id);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object expirableInsertRemoveContended () {
+        return this.expirableInsertRemove();
+    }
+
+    @Benchmark
+    public void tableInsertAnswer (final Answer answer) {
+        final long id = this.ids.incrementAndGet();
+        this.manager.addReplyEvent(id, 5000, IGNORED);
+        answer.reply.setIdRequest(id);
+        this.manager.handleReply(answer.reply);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void tableInsertAnswerContended (final Answer answer) {
+        this.tableInsertAnswer(answer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EXPIRED)
+    public void expirableExpire () throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(EXPIRED);
+        final BiConsumer<Reply, Boolean> callback = (reply, received) -> expired.countDown();
+        for (int i = 0; i < EXPIRED; i++)
+            this.expirable.put(this.ids.incrementAndGet(), callback, 1);
+        expired.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EXPIRED)
+    public void tableExpire () throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(EXPIRED);
+        final BiConsumer<Reply, Boolean> callback = (reply, received) -> expired.countDown();
+        for (int i = 0; i < EXPIRED; i++)
+            this.manager.addReplyEvent(this.ids.incrementAndGet(), 1, callback);
+        expired.await();
+    }
+}
@@ -0,0 +1,125 @@
+package fr.i360matt.sokeese.benchmarks;
+
+import fr.i360matt.sokeese.client.ClientOptions;
+import fr.i360matt.sokeese.client.Login;
+import fr.i360matt.sokeese.client.SokeeseClient;
+import fr.i360matt.sokeese.commons.modules.UserManager;
+import fr.i360matt.sokeese.commons.transport.Transport;
+import fr.i360matt.sokeese.server.ClientLogged;
+import fr.i360matt.sokeese.server.ServerOptions;
+import fr.i360matt.sokeese.server.SokeeseServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of the sessions by name in the UserManager of a server, with real sessions logged in on the loopback.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserManagerBenchmark {
+    private static final int PORT = 25590;
+
+    @Param({"16", "256"})
+    public int users;
+
+    private SokeeseServer server;
+    private SokeeseClient[] clients;
+    private UserManager manager;
+    private String[] names;
+    private ClientLogged churned;
+
+
+    @Setup
+    public void setup () throws InterruptedException {
+        final ServerOptions serverOptions = new ServerOptions();
+        serverOptions.setTransport(Transport.FRAMED);
+        serverOptions.setMaxClients(this.users + 1);
+        this.server = new SokeeseServer(PORT, serverOptions);
+        this.manager = this.server.getUserManager();
+
+        final ClientOptions options = new ClientOptions();
+        options.setTransport(Transport.FRAMED);
+        this.clients = new SokeeseClient[this.users];
+        this.names = new String[this.users];
+        for (int i = 0; i < this.users; i++) {
+            this.names[i] = "user-" + i;
+            this.clients[i] = new SokeeseClient("127.0.0.1", PORT, new Login(this.names[i], ""), options);
+        }
+        while (this.manager.getCount() < this.users)
+            Thread.sleep(10);
+        this.churned = this.manager.getUser(this.names[0]).iterator().next();
+    }
+
+    @TearDown
+    public void tearDown () {
+        for (final SokeeseClient client : this.clients)
+            client.close();
+        this.server.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String next (final String[] names) {
+            final String name = names[this.next];
+            this.next = (this.next + 1) % names.length;
+            return name;
+        }
+    }
+
+    @Benchmark
+    public Set<ClientLogged> getUser (final Cursor cursor) {
+        return this.manager.getUser(cursor.next(this.names));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Set<ClientLogged> getUserContended (final Cursor cursor) {
+        return this.manager.getUser(cursor.next(this.names));
+    }
+
+    @Benchmark
+    public boolean exist (final Cursor cursor) {
+        return this.manager.exist(cursor.next(this.names));
+    }
+
+    @Benchmark
+    public int getUserCount (final Cursor cursor) {
+        return this.manager.getUserCount(cursor.next(this.names));
+    }
+
+    @Benchmark
+    public void iterateAll (final Blackhole blackhole) {
+        for (final ClientLogged user : this.manager.getAllUsers())
+            blackhole.consume(user);
+    }
+
+    @Benchmark
+    public void removeAdd () {
+        this.manager.removeUser(this.churned);
+        this.manager.addUser(this.churned);
+    }
+}
@@ -1,15 +1,72 @@
 package fr.i360matt.sokeese.client;
 
+import fr.i360matt.sokeese.commons.modules.DispatchOrder;
+import fr.i360matt.sokeese.commons.transport.Codec;
+import fr.i360matt.sokeese.commons.transport.Transport;
+import fr.i360matt.sokeese.utils.Threads;
+import fr.i360matt.sokeese.utils.TimingWheel;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
 /**
  * Allows to modificate the client behavor
  *
- * @version 1.1.0
+ * @version 1.6.0
  */
 public class ClientOptions {
 
+    public enum Overflow {
+
+        /**
+         * The new request is dropped when the offline buffer is full.
+         */
+        DROP_NEWEST,
+
+        /**
+         * The oldest request of the offline buffer is dropped to make room for the new one.
+         */
+        DROP_OLDEST
+
+    }
+
+    public enum Sharding {
+
+        /**
+         * The requests of a same channel (or action name) take the same connection and keep their order.
+         */
+        CHANNEL,
+
+        /**
+         * The requests take the connections in turn, their order is not kept.
+         */
+        ROUND_ROBIN
+
+    }
+
+    public static final long MAX_RETRY_DELAY = 30_000; // ceiling of the default reconnect strategy
+
     protected int retryDelay = 100;
-    protected int maxRetry = 20;
+    protected int maxRetry = 20; // attempts without login before giving up, 0 or less: unlimited
+    protected ReconnectStrategy reconnectStrategy = null; // null: exponential backoff from retryDelay to MAX_RETRY_DELAY
     protected boolean debug = false;
+    protected Transport transport = Transport.STREAM;
+    protected Codec codec = Codec.SERIALIZED;
+    protected TimingWheel timingWheel = null; // null: the wheel shared by the whole JVM
+    protected Executor dispatchExecutor = null; // null: the events are handled by the thread reading the requests
+    protected DispatchOrder dispatchOrder = DispatchOrder.SENDER;
+    protected boolean virtualThreads = false; // only on Java 21+, platform threads otherwise
+    protected int offlineBufferSize = 1024; // requests kept per connection while disconnected, 0 to drop them
+    protected Overflow offlineOverflow = Overflow.DROP_NEWEST;
+    protected int connections = 1; // sockets opened to the server, at most the maxSameClient of the server
+    protected Sharding sharding = Sharding.CHANNEL;
+    protected int streamChunkSize = 64 * 1024; // bytes per chunk of the streams sent
+    protected int streamWindow = 8; // chunks of a stream sent before waiting for credits
+    protected int compressionThreshold = 0; // FRAMED only: bytes from which a frame is compressed, 0: no compression
+    protected int fileSegmentSize = 256 * 1024; // bytes per segment of the files sent
+    protected Path fileDirectory = null; // directory of the files received, null: the temporary directory
+    protected int maxFileReceptions = 16; // files received at once per connection, the next ones are skipped, 0 or less: no limit
+    protected String jmxName = null; // name of the MBean of the metrics, null: not registered
 
 
     public final void setRetryDelay (final int delay) {
@@ -18,9 +75,63 @@ public class ClientOptions {
     public final void setMaxRetry (final int maxRetry) {
         this.maxRetry = maxRetry;
     }
+    public final void setReconnectStrategy (final ReconnectStrategy reconnectStrategy) {
+        this.reconnectStrategy = reconnectStrategy;
+    }
     public final void setDebug (final boolean debug) {
         this.debug = debug;
     }
+    public final void setTransport (final Transport transport) {
+        this.transport = transport;
+    }
+    public final void setCodec (final Codec codec) {
+        this.codec = codec;
+    }
+    public final void setTimingWheel (final TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+    public final void setDispatchExecutor (final Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+    }
+    public final void setDispatchOrder (final DispatchOrder dispatchOrder) {
+        this.dispatchOrder = dispatchOrder;
+    }
+    public final void setVirtualThreads (final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+    public final void setOfflineBufferSize (final int offlineBufferSize) {
+        this.offlineBufferSize = offlineBufferSize;
+    }
+    public final void setOfflineOverflow (final Overflow offlineOverflow) {
+        this.offlineOverflow = offlineOverflow;
+    }
+    public final void setConnections (final int connections) {
+        this.connections = connections;
+    }
+    public final void setSharding (final Sharding sharding) {
+        this.sharding = sharding;
+    }
+    public final void setStreamChunkSize (final int streamChunkSize) {
+        this.streamChunkSize = streamChunkSize;
+    }
+    public final void setStreamWindow (final int streamWindow) {
+        this.streamWindow = streamWindow;
+    }
+    public final void setCompressionThreshold (final int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+    public final void setFileSegmentSize (final int fileSegmentSize) {
+        this.fileSegmentSize = fileSegmentSize;
+    }
+    public final void setFileDirectory (final Path fileDirectory) {
+        this.fileDirectory = fileDirectory;
+    }
+    public final void setMaxFileReceptions (final int maxFileReceptions) {
+        this.maxFileReceptions = maxFileReceptions;
+    }
+    public final void setJmxName (final String jmxName) {
+        this.jmxName = jmxName;
+    }
 
     public final int getRetryDelay () {
         return this.retryDelay;
@@ -28,8 +139,84 @@ public class ClientOptions {
     public final int getMaxRetry () {
         return this.maxRetry;
     }
+    public final ReconnectStrategy getReconnectStrategy () {
+        return this.reconnectStrategy;
+    }
     public final boolean getDebug () {
         return this.debug;
     }
+    public final Transport getTransport () {
+        return this.transport;
+    }
+    public final Codec getCodec () {
+        return this.codec;
+    }
+    public final TimingWheel getTimingWheel () {
+        return this.timingWheel;
+    }
+    public final Executor getDispatchExecutor () {
+        return this.dispatchExecutor;
+    }
+    public final DispatchOrder getDispatchOrder () {
+        return this.dispatchOrder;
+    }
+    public final boolean getVirtualThreads () {
+        return this.virtualThreads;
+    }
+    public final int getOfflineBufferSize () {
+        return this.offlineBufferSize;
+    }
+    public final Overflow getOfflineOverflow () {
+        return this.offlineOverflow;
+    }
+    public final int getConnections () {
+        return this.connections;
+    }
+    public final Sharding getSharding () {
+        return this.sharding;
+    }
+    public final int getStreamChunkSize () {
+        return this.streamChunkSize;
+    }
+    public final int getStreamWindow () {
+        return this.streamWindow;
+    }
+    public final int getCompressionThreshold () {
+        return this.compressionThreshold;
+    }
+    public final int getFileSegmentSize () {
+        return this.fileSegmentSize;
+    }
+    public final Path getFileDirectory () {
+        return this.fileDirectory;
+    }
+    public final int getMaxFileReceptions () {
+        return this.maxFileReceptions;
+    }
+    public final String getJmxName () {
+        return this.jmxName;
+    }
+
+    /**
+     * Allows to retrieve the strategy delaying the connection attempts:
+     * the chosen one, else an exponential backoff with jitter from retryDelay to MAX_RETRY_DELAY.
+     * @return The strategy.
+     */
+    public final ReconnectStrategy getEffectiveReconnectStrategy () {
+        if (this.reconnectStrategy != null)
+            return this.reconnectStrategy;
+        return ReconnectStrategy.exponential(Math.max(1, this.retryDelay), Math.max(this.retryDelay, MAX_RETRY_DELAY));
+    }
+
+    /**
+     * Allows to retrieve the executor handling the events:
+     * the chosen one, else virtual threads if they are enabled and supported, else null (inline).
+     * @return The executor, or null.
+     */
+    public final Executor getEffectiveDispatchExecutor () {
+        if (this.dispatchExecutor != null || !this.virtualThreads)
+            return this.dispatchExecutor;
+        return Threads.virtualExecutor();
+    }
 
 }
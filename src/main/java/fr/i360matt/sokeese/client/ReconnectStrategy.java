@@ -0,0 +1,54 @@
+package fr.i360matt.sokeese.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Allows to choose how long the client waits before each new connection attempt.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @see ClientOptions#setReconnectStrategy(ReconnectStrategy)
+ */
+@FunctionalInterface
+public interface ReconnectStrategy {
+
+    /**
+     * Allows to compute the delay before a new connection attempt.
+     * @param attempt The number of failed attempts since the last login, from 1.
+     * @return The delay in milliseconds.
+     */
+    long getDelay (final int attempt);
+
+
+    /**
+     * Allows to wait the same delay before every attempt: all the clients of a restarted server come back together.
+     * @param delay The delay in milliseconds.
+     * @return The strategy.
+     */
+    static ReconnectStrategy fixed (final long delay) {
+        if (delay < 0)
+            throw new IllegalArgumentException("delay must not be negative");
+        return attempt -> delay;
+    }
+
+    /**
+     * Allows to double the delay after every failed attempt, up to a maximum, with a full jitter:
+     * the delay is drawn between 0 and this ceiling, so the clients of a restarted server are spread out
+     * and the first attempt after a disconnection is fast.
+     * @param base The ceiling of the first attempt in milliseconds.
+     * @param max The maximum ceiling in milliseconds.
+     * @return The strategy.
+     */
+    static ReconnectStrategy exponential (final long base, final long max) {
+        if (base <= 0 || max < base)
+            throw new IllegalArgumentException("base must be positive and max must not be lower than base");
+        return attempt -> {
+            long ceiling = base;
+            for (int i = 1; i < attempt && ceiling < max; i++)
+                ceiling <<= 1;
+            return ThreadLocalRandom.current().nextLong(Math.min(ceiling, max) + 1);
+        };
+    }
+
+}
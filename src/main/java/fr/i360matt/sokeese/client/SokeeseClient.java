@@ -1,23 +1,57 @@
 package fr.i360matt.sokeese.client;
 
 import fr.i360matt.sokeese.commons.events.ActionEvent;
+import fr.i360matt.sokeese.commons.events.FileEvent;
 import fr.i360matt.sokeese.commons.events.MessageEvent;
+import fr.i360matt.sokeese.commons.events.StreamEvent;
+import fr.i360matt.sokeese.commons.metrics.Counting;
+import fr.i360matt.sokeese.commons.metrics.Metrics;
 import fr.i360matt.sokeese.commons.modules.CatcherManager;
+import fr.i360matt.sokeese.commons.modules.ChunkWriter;
+import fr.i360matt.sokeese.commons.modules.FileReceiver;
+import fr.i360matt.sokeese.commons.modules.FileSender;
+import fr.i360matt.sokeese.commons.modules.ReplyFuture;
+import fr.i360matt.sokeese.commons.modules.ReplyOwner;
 import fr.i360matt.sokeese.commons.requests.Action;
 import fr.i360matt.sokeese.commons.requests.AuthResponse;
+import fr.i360matt.sokeese.commons.requests.Chunk;
+import fr.i360matt.sokeese.commons.requests.Credit;
+import fr.i360matt.sokeese.commons.requests.FileTransfer;
 import fr.i360matt.sokeese.commons.requests.Message;
 import fr.i360matt.sokeese.commons.requests.Reply;
+import fr.i360matt.sokeese.commons.transport.FileRegion;
+import fr.i360matt.sokeese.commons.transport.FrameBuffer;
+import fr.i360matt.sokeese.commons.transport.FramedChannel;
+import fr.i360matt.sokeese.commons.transport.Frames;
+import fr.i360matt.sokeese.commons.transport.Transport;
+import fr.i360matt.sokeese.utils.RingBuffer;
+import fr.i360matt.sokeese.utils.Threads;
 
+import javax.management.JMException;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -26,29 +60,31 @@ import java.util.function.Consumer;
  * The server must be of the same type and version as the client.
  *
  * @author 360matt
- * @version 1.4.0
+ * @version 1.13.0
  */
 public class SokeeseClient implements Closeable {
 
-    private final Object syncIn = new Object(); // instance object for synchronise:
-    private final Object syncOut = new Object(); // must be different out != in
-
     private final Login login;
     private final CatcherManager.CLIENT catcherManager;
     private final ClientOptions options;
+    private final Metrics metrics;
 
-    private boolean isEnabled = true;
-    private int isAvailable = -2;
+    private volatile boolean isEnabled = true;
+    private final Object pause = new Object(); // notified by close() to stop waiting before a new attempt
 
-    private Socket socket;
-    private ObjectOutputStream sender;
-    private ObjectInputStream receiver;
+    private final Connection[] connections;
+    private final long pool; // shared by the connections of a pooled client, 0 with a single connection
+    private final AtomicInteger running; // connections whose loop is not over
+    private final AtomicInteger next = new AtomicInteger(); // with the ROUND_ROBIN sharding
 
     protected final String host;
     protected final int port;
 
     final String prefix;
-    final Random random = new Random();
+    private final AtomicLong sequence = new AtomicLong(); // identifiers of the requests waiting for a reply, and of the streams
+    private final ConcurrentHashMap<Long, ChunkWriter> streams = new ConcurrentHashMap<>(); // streams sent, waiting for credits
+    private final ConcurrentHashMap<Long, FileSender> files = new ConcurrentHashMap<>(); // files being sent
+    private final Set<String> groups = ConcurrentHashMap.newKeySet(); // joined again by each connection after its login
 
 
     /**
@@ -76,154 +112,614 @@ public class SokeeseClient implements Closeable {
         this.port = port;
         this.login = login;
         this.options = options;
-        this.catcherManager = new CatcherManager.CLIENT();
+        this.metrics = new Metrics(this::getPendingReplies);
+        this.catcherManager = new CatcherManager.CLIENT(options, this.metrics);
+        if (options.getJmxName() != null) {
+            try {
+                this.metrics.register(options.getJmxName());
+            } catch (final JMException e) {
+                if (options.getDebug())
+                    e.printStackTrace();
+            }
+        }
 
         this.prefix = "[SokeeseClient " + this.host + ":" + this.port + "]";
 
-        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final int count = Math.max(1, options.getConnections());
+        long pool = 0;
+        while (count > 1 && pool == 0)
+            pool = ThreadLocalRandom.current().nextLong();
+        this.pool = pool;
 
-        final ExecutorService service = Executors.newSingleThreadExecutor();
-        service.execute(() -> {
-            int loop = 0;
+        this.connections = new Connection[count];
+        for (int i = 0; i < count; i++)
+            this.connections[i] = new Connection(i);
+        this.running = new AtomicInteger(count);
 
-            try {
-                while (this.isEnabled) {
-                    try (
-                            final Socket socket = new Socket(host, port);
-                            final ObjectOutputStream sender = new ObjectOutputStream(socket.getOutputStream());
-                            final ObjectInputStream receiver = new ObjectInputStream(socket.getInputStream())
-                    ) {
+        final CompletableFuture<?>[] started = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++)
+            started[i] = this.connections[i].start();
+
+        CompletableFuture.allOf(started).join(); // each connection has logged in, or has tried once
+    }
 
-                        this.isAvailable = -2;
 
-                        this.socket = socket;
-                        this.sender = sender;
-                        this.receiver = receiver;
+    /**
+     * Allows to choose the connection of a request:
+     * the requests of a same channel (or action name) always take the same connection and keep their order.
+     * @param obj The request.
+     * @return The connection.
+     */
+    private Connection select (final Object obj) {
+        if (obj instanceof Message)
+            return this.select(((Message) obj).getChannel());
+        if (obj instanceof Action)
+            return this.select(((Action) obj).getName());
+        if (obj instanceof Reply)
+            return this.select(((Reply) obj).getChannel());
+        return this.select((String) null);
+    }
 
+    /**
+     * Allows to choose the connection of a channel.
+     * @param channel The channel (or action name).
+     * @return The connection.
+     */
+    private Connection select (final String channel) {
+        final int count = this.connections.length;
+        if (count == 1)
+            return this.connections[0];
+        if (this.options.getSharding() == ClientOptions.Sharding.ROUND_ROBIN)
+            return this.connections[Math.floorMod(this.next.getAndIncrement(), count)];
 
-                        if (this.login()) {
-                            future.complete(null);
+        int hash = (channel != null) ? channel.hashCode() : 0;
+        hash ^= hash >>> 16;
+        return this.connections[Math.floorMod(hash, count)];
+    }
+
+    /**
+     * Allows to send a request on its connection, or to keep it until this connection is back.
+     * @param obj The request.
+     */
+    private void send (final Object obj) throws IOException {
+        this.select(obj).send(obj);
+    }
+
+    /**
+     * Allows to wait before a new connection attempt, close() stops the wait.
+     * @param delay The delay in milliseconds.
+     */
+    private void pause (final long delay) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        synchronized (this.pause) {
+            long remaining;
+            while (this.isEnabled && (remaining = deadline - System.nanoTime()) > 0)
+                TimeUnit.NANOSECONDS.timedWait(this.pause, remaining);
+        }
+    }
+
+    /**
+     * Allows to fail the reply event of a request which will never be sent.
+     * @param obj The request.
+     * @param cause The reason.
+     */
+    private void dropped (final Object obj, final IOException cause) {
+        this.metrics.dropped(obj);
+        if (obj instanceof Message && ((Message) obj).getIdRequest() != 0)
+            this.catcherManager.failReplyEvent(((Message) obj).getIdRequest(), cause);
+        if (this.options.getDebug())
+            System.err.println(this.prefix + " " + cause.getMessage() + ": " + obj);
+    }
+
+
+    /**
+     * One of the connections of the client: its socket, its reconnect loop and its offline buffer.
+     * The client has a single connection unless ClientOptions.setConnections() is used.
+     *
+     * The reply events of the requests written on a session have their own owner, failed once the session is lost.
+     * Those of the requests kept in the offline buffer belong to the next session, until it takes them at login.
+     */
+    private final class Connection {
+        private final Lock syncIn = new ReentrantLock(); // locks instead of monitors:
+        private final Lock syncOut = new ReentrantLock(); // a virtual thread blocked on I/O in a monitor would pin its carrier
+
+        private final int index;
+        private final String prefix;
+        private volatile int isAvailable = -2;
+        private final RingBuffer<Object> offline; // requests sent while disconnected, guards the switch to isAvailable = 0
+        private volatile ReplyOwner replies = new ReplyOwner(); // requests written on the current session, written under offline
+        private ReplyOwner buffered = new ReplyOwner(); // requests kept in the offline buffer, guarded by offline
 
-                            while (this.isEnabled) { // until close() is called or readObject() have throw an error
-                                try {
-                                    final Object obj;
-                                    synchronized (this.syncIn) {
-                                        obj = this.receiver.readObject(); // produces an error if class not found or if socket closed
-                                    }
-
-                                    if (obj instanceof Message)
-                                        this.catcherManager.handleMessage(this, (Message) obj);
-                                    else if (obj instanceof Action)
-                                        this.catcherManager.handleAction(this, (Action) obj);
-                                    else if (obj instanceof Reply)
-                                        this.catcherManager.handleReply((Reply) obj);
-                                } catch (final ClassNotFoundException ignored) { }
+        private volatile Socket socket;
+        private ObjectOutputStream sender;
+        private ObjectInputStream receiver;
+        private Counting.Output written; // bytes of the STREAM transport, guarded by syncOut
+        private Counting.Input read; // guarded by syncIn
+        private long size; // size on the wire of the last request read, guarded by syncIn
+        private FramedChannel framed; // only with the FRAMED transport
+        private final FrameBuffer outbound = new FrameBuffer(); // guarded by syncOut
+        private volatile int compression; // threshold accepted by the server at login, 0: no compression
+        private final FileReceiver received; // files received with the FRAMED transport, only used by the reading thread
+
+        private Connection (final int index) {
+            this.index = index;
+            this.prefix = (connections.length == 1) ? SokeeseClient.this.prefix : "[SokeeseClient " + host + ":" + port + " #" + index + "]";
+            this.offline = new RingBuffer<>(Math.max(0, options.getOfflineBufferSize()));
+            this.received = new FileReceiver(
+                    options.getFileDirectory(),
+                    options.getMaxFileReceptions(),
+                    catcherManager::hasFileEvent,
+                    (request, path, transferred) -> catcherManager.handleFile(SokeeseClient.this, request, path, transferred)
+            );
+        }
+
+        /**
+         * Allows to start the reconnect loop of this connection.
+         * @return Completed once the connection has logged in, or has failed its first attempt.
+         */
+        private CompletableFuture<Void> start () {
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+
+            final ExecutorService service = Threads.newExecutor(options.getVirtualThreads());
+            service.execute(() -> {
+                final ReconnectStrategy strategy = options.getEffectiveReconnectStrategy();
+                int attempt = 0; // failed attempts since the last login
+
+                try {
+                    while (isEnabled) {
+                        Closeable connection = null;
+                        try {
+                            connection = this.connect();
+                            this.isAvailable = -2;
+
+
+                            if (this.login()) {
+                                future.complete(null);
+                                attempt = 0;
+
+                                while (isEnabled) { // until close() is called or readObject() have throw an error
+                                    try {
+                                        final Object obj = this.read(); // produces an error if class not found or if socket closed
+                                        metrics.received(obj, this.size);
+
+                                        if (obj instanceof Message)
+                                            catcherManager.handleMessage(SokeeseClient.this, (Message) obj);
+                                        else if (obj instanceof Action)
+                                            catcherManager.handleAction(SokeeseClient.this, (Action) obj);
+                                        else if (obj instanceof Reply)
+                                            catcherManager.handleReply((Reply) obj);
+                                        else if (obj instanceof Chunk) {
+                                            final Chunk chunk = (Chunk) obj;
+                                            catcherManager.handleChunk(SokeeseClient.this, chunk, () -> {
+                                                if (!chunk.isLast())
+                                                    this.credit(chunk.getIdStream());
+                                            });
+                                        } else if (obj instanceof Credit) {
+                                            final ChunkWriter writer = streams.get(((Credit) obj).getIdStream());
+                                            if (writer != null)
+                                                writer.grant(((Credit) obj).getAmount());
+                                        } else if (obj instanceof FileTransfer) {
+                                            try {
+                                                this.received.open((FileTransfer) obj);
+                                            } catch (final IOException e) { // the file is skipped, not the connection
+                                                if (options.getDebug())
+                                                    e.printStackTrace();
+                                            }
+                                        }
+                                    } catch (final ClassNotFoundException ignored) { }
+                                }
                             }
+                            future.complete(null);
+
+                        } catch (final IOException e) {
+                            if (options.getDebug())
+                                e.printStackTrace();
+                        } finally { // if close() is called, an error will be raised because of readObject()
+                            this.release(connection);
                         }
-                        future.complete(null);
 
-                    } catch (final IOException e) {
-                        if (this.options.getDebug())
-                            e.printStackTrace();
-                    } // if close() is called, an error will be raised because of readObject()
+                        final int state;
+                        final ReplyOwner lost;
+                        synchronized (this.offline) {
+                            state = this.isAvailable;
+                            this.isAvailable = -2; // from now on, the requests wait in the offline buffer
+                            lost = this.replies;
+                        }
 
+                        if (state == 0) {
+                            // the requests written on this session will never be answered, those buffered from now on will be sent
+                            catcherManager.failReplyEvents(lost, new IOException("The connection is lost"));
+                            this.failStreams(new IOException("The connection is lost"));
+                            this.received.close();
+                            System.out.println(this.prefix + " Disconnected");
+                        } else if (state == 2)
+                            isEnabled = false;
 
-                    if (this.isAvailable == 0)
-                        System.out.println(this.prefix + " Disconnected");
-                    else if (this.isAvailable == 2)
-                        this.isEnabled = false;
+                        if (++attempt == options.maxRetry) { // never reached when maxRetry <= 0
+                            isEnabled = false;
+                            break;
+                        }
 
-                    if (++loop == this.options.maxRetry) {
-                        this.isEnabled = false;
-                        break;
+                        pause(strategy.getDelay(attempt));
                     }
-
-                    this.isAvailable = -2;
-                    TimeUnit.MILLISECONDS.sleep(this.options.retryDelay);
+                } catch (final Exception e) {
+                    if (options.getDebug())
+                        e.printStackTrace();
                 }
-            } catch (final Exception e) {
-                if (this.options.getDebug())
+                finally {
+                    SokeeseClient.this.close(); // a connection which gives up closes the whole client
+                    final List<Object> dropped;
+                    synchronized (this.offline) {
+                        dropped = this.offline.drain();
+                    }
+                    for (final Object obj : dropped)
+                        dropped(obj, new IOException("Dropped: the client is closed"));
+                    this.failStreams(new IOException("The client is closed"));
+                    this.received.close();
+                    if (running.decrementAndGet() == 0) {
+                        catcherManager.close();
+                        metrics.unregister();
+                    }
+                    future.complete(null); // the client gave up without login: free the constructor
+                }
+            });
+            service.shutdown();
+
+            return future;
+        }
+
+        /**
+         * Allows to close the socket of a connection attempt, whatever the transport.
+         * @param connection The socket or the channel, or null if the attempt failed before.
+         */
+        private void release (final Closeable connection) {
+            if (connection == null)
+                return;
+            try {
+                connection.close();
+            } catch (final IOException e) {
+                if (options.getDebug())
                     e.printStackTrace();
             }
-            finally {
-                this.catcherManager.close();
-              //  future.complete(null); // and we can free the constructor
+        }
+
+        /**
+         * Allows to open the connection with the chosen transport.
+         * @return The resource to close once the connection is lost.
+         */
+        private Closeable connect () throws IOException {
+            if (options.getTransport() == Transport.FRAMED) {
+                final SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+                channel.socket().setTcpNoDelay(true);
+
+                this.socket = channel.socket();
+                this.framed = new FramedChannel(channel);
+                this.compression = 0;
+                return channel;
             }
-        });
-        service.shutdown();
 
-        future.join();
-    }
+            final Socket socket = new Socket(host, port);
+            try {
+                this.socket = socket;
+                this.sender = new ObjectOutputStream(this.written = new Counting.Output(socket.getOutputStream()));
+                this.receiver = new ObjectInputStream(this.read = new Counting.Input(socket.getInputStream()));
+            } catch (final IOException e) {
+                socket.close();
+                throw e;
+            }
+            return socket;
+        }
+
+        /**
+         * Allows to wait for the next request sent by the server, whatever the transport.
+         * @return The request.
+         */
+        private Object read () throws IOException, ClassNotFoundException {
+            this.syncIn.lock();
+            try {
+                if (this.framed != null) {
+                    while (true) {
+                        final ByteBuffer payload = this.framed.read();
+                        this.size = this.framed.getSize();
+                        if (!this.framed.isSegment())
+                            return Frames.decode(options.getCodec(), payload);
+                        metrics.getTraffic().receivedBytes(this.size);
+                        this.received.write(payload); // written to its file, not returned
+                    }
+                }
+                final long before = this.read.getCount();
+                final Object obj = this.receiver.readObject();
+                this.size = this.read.getCount() - before;
+                return obj;
+            } finally {
+                this.syncIn.unlock();
+            }
+        }
 
+        /**
+         * Allows to write a request to the server, whatever the transport.
+         * @param obj The request.
+         */
+        private void write (final Object obj) throws IOException {
+            this.syncOut.lock();
+            try {
+                if (this.framed != null) {
+                    options.getCodec().encode(obj, this.outbound.reset());
+                    final ByteBuffer frame = Frames.compress(this.outbound.toFrame(), this.compression);
+                    final int size = frame.remaining();
+                    this.framed.write(frame);
+                    metrics.sent(obj, size);
+                } else {
+                    final long before = this.written.getCount();
+                    this.sender.writeObject(obj);
+                    if (obj instanceof Chunk)
+                        this.sender.reset(); // the stream must not keep a reference to every chunk sent
+                    this.sender.flush();
+                    metrics.sent(obj, this.written.getCount() - before);
+                }
+            } finally {
+                this.syncOut.unlock();
+            }
+        }
 
-    /**
-     * Allows to send the username & password and wait for the login to be validated
-     * @return if the connection is accepted by the server
-     */
-    private boolean login ()  {
-        try {
-            final Object res;
-            synchronized (this.syncOut) {
-                this.sender.writeUTF(this.login.username);
-                this.sender.writeUTF(this.login.password);
-                this.sender.flush();
+        /**
+         * Allows to write a segment of a file, only with the FRAMED transport.
+         * @param region The segment.
+         */
+        private void write (final FileRegion region) throws IOException {
+            this.syncOut.lock();
+            try {
+                this.framed.write(region);
+                metrics.getTraffic().sentBytes(region.getSize());
+            } finally {
+                this.syncOut.unlock();
+            }
+        }
 
-                res = this.receiver.readObject();
+        /**
+         * Allows to write many requests at once: a single gathering write, or a single flush.
+         * @param requests The requests, in their order.
+         */
+        private void write (final List<Object> requests) throws IOException {
+            this.syncOut.lock();
+            try {
+                if (this.framed != null) {
+                    final ByteBuffer[] frames = new ByteBuffer[requests.size()];
+                    final int[] sizes = new int[frames.length];
+                    for (int i = 0; i < frames.length; i++) {
+                        frames[i] = Frames.compress(Frames.encode(options.getCodec(), requests.get(i)), this.compression);
+                        sizes[i] = frames[i].remaining();
+                    }
+                    this.framed.write(frames);
+                    for (int i = 0; i < frames.length; i++)
+                        metrics.sent(requests.get(i), sizes[i]);
+                } else {
+                    for (final Object obj : requests) {
+                        final long before = this.written.getCount();
+                        this.sender.writeObject(obj);
+                        metrics.sent(obj, this.written.getCount() - before);
+                    }
+                    this.sender.flush();
+                }
+            } finally {
+                this.syncOut.unlock();
             }
+        }
 
-            if (!(res instanceof AuthResponse)) {
-                System.err.println(prefix + "Internal error in login phase");
-                this.isAvailable = 2;
+        /**
+         * Allows to send a request, or to keep it in the offline buffer while the connection is lost.
+         * @param obj The request.
+         */
+        private void send (final Object obj) throws IOException {
+            this.send(obj, null);
+        }
+
+        /**
+         * Allows to send a request waiting for its reply, or to keep it in the offline buffer while the connection is lost.
+         * @param obj The request.
+         * @param owner The owner of its reply event, see owner(), or null if no reply is expected.
+         * @throws IOException If its reply event was failed with a lost session: the request must not be sent anymore.
+         */
+        private void send (final Object obj, final ReplyOwner owner) throws IOException {
+            if (this.isAvailable != 0 && this.buffer(obj, owner))
+                return;
+            if (owner != null && owner != this.replies)
+                throw new IOException("The connection is lost");
+            this.write(obj);
+        }
+
+        /**
+         * Allows to choose the owner of the reply event of a request about to be sent.
+         * @return The owner of the current session if it is logged, else the owner of the next one.
+         */
+        private ReplyOwner owner () {
+            synchronized (this.offline) {
+                return (this.isAvailable == 0) ? this.replies : this.buffered;
             }
+        }
 
-            final AuthResponse authRes = (AuthResponse) res;
-            switch (authRes.code) {
-                case "OK":
-                    System.out.println(prefix + " Logged as '" + this.login.username + "'");
-                    this.isAvailable = 0;
-                    return true;
-                case "INVALID":
-                    System.err.println(prefix + " Invalid credential for '" + this.login.username + "'");
+        /**
+         * Allows to keep a request until the connection is back.
+         * A request whose reply event belongs to a lost session is dropped: its event is already failed.
+         * @param obj The request.
+         * @param owner The owner of its reply event, or null if no reply is expected.
+         * @return False if the connection is back meanwhile, the request must be written.
+         */
+        private boolean buffer (final Object obj, final ReplyOwner owner) {
+            Object dropped = null;
+            synchronized (this.offline) {
+                if (this.isAvailable == 0)
+                    return false;
+
+                if (!isEnabled || (owner != null && owner != this.buffered)) {
+                    dropped = obj;
+                } else if (!this.offline.offer(obj)) {
+                    if (options.getOfflineOverflow() == ClientOptions.Overflow.DROP_OLDEST && !this.offline.isEmpty()) {
+                        dropped = this.offline.poll();
+                        this.offline.offer(obj);
+                    } else {
+                        dropped = obj;
+                    }
+                }
+            }
+            if (dropped != null)
+                dropped(dropped, new IOException("Dropped: the client is not connected"));
+            return true;
+        }
+
+        /**
+         * Allows to send the requests kept while the connection was lost, in a single write.
+         * The connection is marked as available once the buffer is empty: no request can overtake them.
+         */
+        private void flushOffline () throws IOException {
+            while (true) {
+                final List<Object> requests;
+                synchronized (this.offline) {
+                    if (this.offline.isEmpty()) {
+                        this.replies = this.buffered; // the reply events of the buffered requests now belong to this session
+                        this.buffered = new ReplyOwner();
+                        this.isAvailable = 0;
+                        return;
+                    }
+                    requests = this.offline.drain();
+                }
+
+                try {
+                    this.write(requests);
+                } catch (final IOException e) {
+                    for (final Object obj : requests)
+                        dropped(obj, e);
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Allows to send the username & password and wait for the login to be validated
+         * @return if the connection is accepted by the server
+         */
+        private boolean login ()  {
+            try {
+                final Object res;
+                this.syncOut.lock();
+                try {
+                    if (this.framed != null) {
+                        this.framed.write(Frames.encodeLogin(login.username, login.password, options.getCodec(), options.getCompressionThreshold()));
+                    } else {
+                        this.sender.writeUTF(login.username);
+                        this.sender.writeUTF(login.password);
+                        this.sender.flush();
+                    }
+                } finally {
+                    this.syncOut.unlock();
+                }
+                res = this.read();
+
+                if (!(res instanceof AuthResponse)) {
+                    System.err.println(prefix + "Internal error in login phase");
                     this.isAvailable = 2;
-                    break;
-                case "MAX_GLOBAL_CLIENT":
-                    System.err.println(prefix + " Server can't accept other connection just now (MAX_GLOBAL_CLIENT) for '" + this.login.username + "'");
-                    this.isAvailable = 1;
-                    break;
-                case "MAX_SAME_CLIENT":
-                    System.err.println(prefix + " Max clients connected with same name '" + this.login.username + "'");
-                    this.isAvailable = 1;
-                    break;
-                default:
-                    System.err.println(prefix + " Internal error in login phase for '" + this.login.username + "'");
-                    this.isAvailable = 1;
+                }
+
+                final AuthResponse authRes = (AuthResponse) res;
+                switch (authRes.code) {
+                    case "OK":
+                        System.out.println(prefix + " Logged as '" + login.username + "'");
+                        this.compression = authRes.compression;
+                        if (pool != 0) { // the server delivers the requests sent to our name on a single connection of the pool
+                            final Action action = new Action();
+                            action.setName(Action.POOL);
+                            action.setContent(pool);
+                            this.write(action);
+                        }
+                        for (final String group : groups)
+                            this.write(group(Action.JOIN, group));
+                        this.flushOffline(); // sets isAvailable = 0
+                        return true;
+                    case "INVALID":
+                        System.err.println(prefix + " Invalid credential for '" + login.username + "'");
+                        this.isAvailable = 2;
+                        break;
+                    case "MAX_GLOBAL_CLIENT":
+                        System.err.println(prefix + " Server can't accept other connection just now (MAX_GLOBAL_CLIENT) for '" + login.username + "'");
+                        this.isAvailable = 1;
+                        break;
+                    case "MAX_SAME_CLIENT":
+                        System.err.println(prefix + " Max clients connected with same name '" + login.username + "'");
+                        this.isAvailable = 1;
+                        break;
+                    default:
+                        System.err.println(prefix + " Internal error in login phase for '" + login.username + "'");
+                        this.isAvailable = 1;
+                }
+            } catch (final Exception e) {
+                e.printStackTrace();
+            }
+            return false;
+        }
+
+        /**
+         * Allows to give a credit back to the sender of a stream, on the connection which received the chunk.
+         * @param id The identifier of the stream.
+         */
+        private void credit (final long id) {
+            if (this.isAvailable != 0)
+                return; // the stream is failed with the connection
+            final Credit credit = new Credit();
+            credit.setIdStream(id);
+            credit.setAmount(1);
+            try {
+                this.write(credit);
+            } catch (final IOException e) {
+                if (options.getDebug())
+                    e.printStackTrace();
+            }
+        }
+
+        /**
+         * Allows to stop the streams and the files sent on this connection.
+         * @param cause The cause given to their future.
+         */
+        private void failStreams (final IOException cause) {
+            final int count = connections.length;
+            for (final ChunkWriter writer : streams.values())
+                if (writer.getId() % count == this.index)
+                    writer.fail(cause);
+            for (final FileSender file : files.values())
+                if (file.getId() % count == this.index)
+                    file.fail(cause);
+        }
+
+        /**
+         * Allows to close the socket, the loop connects again unless the client is closed.
+         */
+        private void close () {
+            final Socket socket = this.socket;
+            if (socket == null)
+                return;
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                if (options.getDebug())
+                    e.printStackTrace();
             }
-        } catch (final Exception e) {
-            e.printStackTrace();
         }
-        return false;
     }
 
 
     /**
      * Sends a Message request to the server
-     * If the client is not connected, the request will be placed on a waiting list to be sent later.
+     * If the client is not connected, the request is kept in the offline buffer and sent after the next login.
      *
      * @param consumer The Message request consumer.
      *
      * @see Message
      */
     public final void sendMessage (final Consumer<Message> consumer) {
-        if (this.isAvailable != 0) return;
-
         final Message obj = new Message();
         consumer.accept(obj);
 
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(obj);
-                this.sender.flush();
-            }
+            this.send(obj);
         } catch (final IOException e) {
             // e.printStackTrace();
             if (this.options.getDebug())
@@ -233,23 +729,18 @@ public class SokeeseClient implements Closeable {
 
     /**
      * Sends a Action request to the server.
-     * If the client is not connected, the request will be placed on a waiting list to be sent later.
+     * If the client is not connected, the request is kept in the offline buffer and sent after the next login.
      *
      * @param consumer The Action request consumer.
      *
      * @see Action
      */
     public final void sendAction (final Consumer<Action> consumer) {
-        if (this.isAvailable != 0) return;
-
         final Action obj = new Action();
         consumer.accept(obj);
 
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(obj);
-                this.sender.flush();
-            }
+            this.send(obj);
         } catch (final IOException e) {
             // e.printStackTrace();
             if (this.options.getDebug())
@@ -259,7 +750,7 @@ public class SokeeseClient implements Closeable {
 
     /**
      * Sends a Message request to the server.
-     * If the client is not connected, the request will be placed on a waiting list to be sent later.
+     * If the client is not connected, the request is kept in the offline buffer and sent after the next login.
      *
      * @param obj The request which must be of the Message or Action type.
      *
@@ -268,12 +759,8 @@ public class SokeeseClient implements Closeable {
      * @see Reply
      */
     public final void sendMessage (final Message obj) {
-        if (this.isAvailable != 0) return;
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(obj);
-                this.sender.flush();
-            }
+            this.send(obj);
         } catch (final IOException e) {
             // e.printStackTrace();
             if (this.options.getDebug())
@@ -283,19 +770,15 @@ public class SokeeseClient implements Closeable {
 
     /**
      * Sends a Action request to the server.
-     * If the client is not connected, the request will be placed on a waiting list to be sent later.
+     * If the client is not connected, the request is kept in the offline buffer and sent after the next login.
      *
      * @param obj The request which must be of the Message or Action type.
      *
      * @see Action
      */
     public final void sendAction (final Action obj) {
-        if (this.isAvailable != 0) return;
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(obj);
-                this.sender.flush();
-            }
+            this.send(obj);
         } catch (final IOException e) {
             // e.printStackTrace();
             if (this.options.getDebug())
@@ -305,19 +788,15 @@ public class SokeeseClient implements Closeable {
 
     /**
      * Sends a Reply request to the server
-     * If the client is not connected, the request will be placed on a waiting list to be sent later.
+     * If the client is not connected, the request is kept in the offline buffer and sent after the next login.
      *
      * @param obj The Reply request.
      *
      * @see Reply
      */
     public void sendReply (final Reply obj) {
-        if (this.isAvailable != 0) return;
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(obj);
-                this.sender.flush();
-            }
+            this.send(obj);
         } catch (final IOException e) {
             // e.printStackTrace();
             if (this.options.getDebug())
@@ -329,7 +808,7 @@ public class SokeeseClient implements Closeable {
 
     /**
      * Sends a Message request to the server.
-     * If the client is not connected, the request will be placed on a waiting list to be sent later.
+     * If the client is not connected, the request is kept in the offline buffer and sent after the next login.
      *
      * This method also retrieves the response, which will be provided in a consumer.
      * In case of no response before the chosen delay, the consumer will be executed with the second type set to FALSE.
@@ -341,22 +820,18 @@ public class SokeeseClient implements Closeable {
      * @see Message
      */
     public final void sendMessage (final Consumer<Message> msgConsumer, final int delay, final BiConsumer<Reply, Boolean> eventConsumer) {
-        if (this.isAvailable != 0) return;
-        try {
-            final Message message = new Message();
-            msgConsumer.accept(message);
-
-            message.setIdRequest(random.nextLong());
+        final Message message = new Message();
+        msgConsumer.accept(message);
 
-            this.catcherManager.addReplyEvent(message.getIdRequest(), delay, eventConsumer);
+        try {
+            final Connection connection = this.select(message);
+            final ReplyOwner owner = this.waitReply(connection, message, delay, eventConsumer);
             // we save the reply-event
 
-            synchronized (this.syncOut) {
-                this.sender.writeObject(message);
-                this.sender.flush();
-            }
+            connection.send(message, owner);
 
         } catch (final IOException e) {
+            this.catcherManager.failReplyEvent(message.getIdRequest(), e); // no reply will come
             if (this.options.getDebug())
                 e.printStackTrace();
         }
@@ -364,7 +839,7 @@ public class SokeeseClient implements Closeable {
 
     /**
      * Sends a Message request to the server.
-     * If the client is not connected, the request will be placed on a waiting list to be sent later.
+     * If the client is not connected, the request is kept in the offline buffer and sent after the next login.
      *
      * This method also retrieves the response, which will be provided in a consumer.
      * In case of no response before the chosen delay, the consumer will be executed with the second type set to FALSE.
@@ -376,27 +851,44 @@ public class SokeeseClient implements Closeable {
      * @see Message
      */
     public final void sendMessage (final Message message, final int delay, final BiConsumer<Reply, Boolean> eventConsumer) {
-        if (this.isAvailable != 0) return;
         try {
-            message.setIdRequest(random.nextLong());
-
-            this.catcherManager.addReplyEvent(message.getIdRequest(), delay, eventConsumer);
+            final Connection connection = this.select(message);
+            final ReplyOwner owner = this.waitReply(connection, message, delay, eventConsumer);
             // we save the reply-event
 
-            synchronized (this.syncOut) {
-                this.sender.writeObject(message);
-                this.sender.flush();
-            }
+            connection.send(message, owner);
 
         } catch (final IOException e) {
+            this.catcherManager.failReplyEvent(message.getIdRequest(), e); // no reply will come
             if (this.options.getDebug())
                 e.printStackTrace();
         }
     }
 
+    /**
+     * Allows to record a reply event under a new identifier, given to the request.
+     * The identifiers are increasing: they never collide with a request in flight, and are never 0.
+     * The remainder of the identifier by the number of connections is the connection sending the request.
+     * @param connection The connection which will send the request.
+     * @param message The request.
+     * @param delay The maximum amount of time to wait.
+     * @param eventConsumer The callback defined by the developer.
+     * @return The owner of the event, to give to Connection.send().
+     */
+    private ReplyOwner waitReply (final Connection connection, final Message message, final int delay, final BiConsumer<Reply, Boolean> eventConsumer) {
+        final ReplyOwner owner = connection.owner();
+        final int count = this.connections.length;
+        long id;
+        do {
+            id = this.sequence.incrementAndGet() * count + connection.index;
+        } while (id == 0 || !this.catcherManager.addReplyEvent(id, delay, eventConsumer, owner));
+        message.setIdRequest(id);
+        return owner;
+    }
+
     /**
      * Sends a Message request to the server.
-     * If the client is not connected, the request will be placed on a waiting list to be sent later.
+     * If the client is not connected, the request is kept in the offline buffer and sent after the next login.
      *
      * This method also retrieves the response, which will be provided in a consumer.
      * The default time is 200ms.
@@ -414,7 +906,7 @@ public class SokeeseClient implements Closeable {
 
     /**
      * Sends a Message request to the server.
-     * If the client is not connected, the request will be placed on a waiting list to be sent later.
+     * If the client is not connected, the request is kept in the offline buffer and sent after the next login.
      *
      * This method also retrieves the response, which will be provided in a consumer.
      * The default time is 200ms.
@@ -432,10 +924,256 @@ public class SokeeseClient implements Closeable {
         this.sendMessage(message, 200, eventConsumer);
     }
 
+    /**
+     * Sends a Message request to the server and retrieves its response as a future.
+     * The future completes exceptionally with a TimeoutException after the delay,
+     * or with an IOException if the request is dropped or if the connection is lost before the response.
+     *
+     * @param message The message request.
+     * @param delay The maximum amount of time to wait for the response.
+     * @param executor The executor completing the future, or null to complete it on the thread receiving the response.
+     * @return The future of the response.
+     *
+     * @see Message
+     * @see Reply
+     */
+    public final CompletableFuture<Reply> request (final Message message, final int delay, final Executor executor) {
+        final ReplyFuture pending = new ReplyFuture(delay, executor);
+        if (!this.isEnabled) {
+            pending.fail(new IOException("The client is closed"));
+            return pending.getFuture();
+        }
+
+        final Connection connection = this.select(message);
+        final ReplyOwner owner = this.waitReply(connection, message, delay, pending);
+        try {
+            connection.send(message, owner);
+        } catch (final IOException e) {
+            this.catcherManager.failReplyEvent(message.getIdRequest(), e);
+        }
+        return pending.getFuture();
+    }
+
+    /**
+     * Sends a Message request to the server and retrieves its response as a future.
+     *
+     * @param msgConsumer The message request consumer.
+     * @param delay The maximum amount of time to wait for the response.
+     * @param executor The executor completing the future, or null to complete it on the thread receiving the response.
+     * @return The future of the response.
+     *
+     * @see #request(Message, int, Executor)
+     */
+    public final CompletableFuture<Reply> request (final Consumer<Message> msgConsumer, final int delay, final Executor executor) {
+        final Message message = new Message();
+        msgConsumer.accept(message);
+        return this.request(message, delay, executor);
+    }
+
+    /**
+     * Sends a Message request to the server and retrieves its response as a future,
+     * completed on the thread receiving the response.
+     *
+     * @param message The message request.
+     * @param delay The maximum amount of time to wait for the response.
+     * @return The future of the response.
+     *
+     * @see #request(Message, int, Executor)
+     */
+    public final CompletableFuture<Reply> request (final Message message, final int delay) {
+        return this.request(message, delay, null);
+    }
+
+    /**
+     * Sends a Message request to the server and retrieves its response as a future,
+     * completed on the thread receiving the response.
+     *
+     * @param msgConsumer The message request consumer.
+     * @param delay The maximum amount of time to wait for the response.
+     * @return The future of the response.
+     *
+     * @see #request(Message, int, Executor)
+     */
+    public final CompletableFuture<Reply> request (final Consumer<Message> msgConsumer, final int delay) {
+        return this.request(msgConsumer, delay, null);
+    }
+
+    /**
+     * Sends a stream to the server, in chunks on a channel.
+     * The chunks are read and written by a dedicated thread, one at a time: the other requests are sent between them.
+     * The server gives a credit back for each chunk handled, the stream waits once the window of credits is spent.
+     * Streams are not kept while the client is disconnected.
+     *
+     * @param channel The channel of the stream.
+     * @param input The bytes to send, the input is closed once sent.
+     * @param delay The maximum amount of time to wait for a credit.
+     * @return Completed once the last chunk is sent, exceptionally with a TimeoutException if the server stops
+     *         giving credits, or with an IOException if the connection is lost.
+     *
+     * @see Chunk
+     */
+    public final CompletableFuture<Void> stream (final String channel, final InputStream input, final int delay) {
+        final Connection connection = this.select(channel); // every chunk of a stream takes the same connection
+        final long id = this.sequence.incrementAndGet() * this.connections.length + connection.index;
+
+        final ChunkWriter writer = new ChunkWriter(id, channel, input, this.options.getStreamChunkSize(), this.options.getStreamWindow(), delay, chunk -> {
+            if (connection.isAvailable != 0)
+                throw new IOException("The connection is lost");
+            connection.write(chunk);
+        });
+        if (!this.isEnabled)
+            writer.fail(new IOException("The client is closed"));
+
+        this.streams.put(id, writer);
+        writer.getFuture().whenComplete((ignored, e) -> this.streams.remove(id));
+
+        final ExecutorService service = Threads.newExecutor(this.options.getVirtualThreads());
+        service.execute(writer);
+        service.shutdown();
+
+        return writer.getFuture();
+    }
+
+    /**
+     * Sends bytes to the server as a stream, in chunks on a channel.
+     *
+     * @param channel The channel of the stream.
+     * @param data The bytes to send.
+     * @param delay The maximum amount of time to wait for a credit.
+     * @return Completed once the last chunk is sent.
+     *
+     * @see #stream(String, InputStream, int)
+     */
+    public final CompletableFuture<Void> stream (final String channel, final byte[] data, final int delay) {
+        return this.stream(channel, new ByteArrayInputStream(data), delay);
+    }
+
+    /**
+     * Sends a file to the server on a channel, only with the FRAMED transport.
+     * The segments are written by a dedicated thread straight from the file to the socket,
+     * one at a time: the other requests are sent between them.
+     * The server writes them to a temporary file, followed by its 'FILE' events.
+     * Files are not kept while the client is disconnected.
+     *
+     * @param channel The channel of the transfer.
+     * @param path The file, its size must not change during the transfer.
+     * @return Completed once the last segment is written, exceptionally with an IOException if the file
+     *         cannot be read or if the connection is lost, or with an UnsupportedOperationException with the STREAM transport.
+     *
+     * @see FileTransfer
+     */
+    public final CompletableFuture<Void> sendFile (final String channel, final Path path) {
+        final CompletableFuture<Void> failed = new CompletableFuture<>();
+        if (this.options.getTransport() != Transport.FRAMED) {
+            failed.completeExceptionally(new UnsupportedOperationException("File transfers need the FRAMED transport"));
+            return failed;
+        }
+
+        final Connection connection = this.select(channel); // every segment of a file takes the same connection
+        final long id = this.sequence.incrementAndGet() * this.connections.length + connection.index;
+        final FileSender file;
+        try {
+            file = new FileSender(id, channel, path, this.options.getFileSegmentSize());
+        } catch (final IOException e) {
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        if (!this.isEnabled)
+            file.fail(new IOException("The client is closed"));
+
+        this.files.put(id, file);
+        file.getFuture().whenComplete((ignored, e) -> this.files.remove(id));
+
+        final ExecutorService service = Threads.newExecutor(this.options.getVirtualThreads());
+        service.execute(() -> {
+            boolean started = false; // a segment cut in the middle breaks the framing of the connection
+            try {
+                if (connection.isAvailable != 0)
+                    throw new IOException("The connection is lost");
+                connection.write(file.getRequest(false));
+
+                FileRegion region;
+                while (!file.getFuture().isDone() && (region = file.next(null)) != null) {
+                    if (connection.isAvailable != 0)
+                        throw new IOException("The connection is lost");
+                    started = true;
+                    connection.write(region);
+                    started = false;
+                }
+                file.complete();
+            } catch (final IOException e) {
+                if (file.fail(e) && connection.isAvailable == 0) {
+                    if (started) {
+                        connection.close();
+                    } else try {
+                        connection.write(file.getRequest(true));
+                    } catch (final IOException ignored) { }
+                }
+            }
+        });
+        service.shutdown();
+
+        return file.getFuture();
+    }
+
+    /**
+     * Allows to join a group: the requests sent to '#group' are received by this client.
+     * The server must allow the GROUP level, the group is joined again after each reconnection.
+     * Each connection of a pooled client joins, the server delivers the requests on only one of them.
+     *
+     * @param group The name of the group, without '#'.
+     */
+    public final void joinGroup (final String group) {
+        this.groups.add(group);
+        this.sendGroup(Action.JOIN, group);
+    }
+
+    /**
+     * Allows to leave a group.
+     *
+     * @param group The name of the group, without '#'.
+     */
+    public final void leaveGroup (final String group) {
+        this.groups.remove(group);
+        this.sendGroup(Action.LEAVE, group);
+    }
+
+    /**
+     * Allows to retrieve the groups joined by this client.
+     *
+     * @return A read-only live view of the names of the groups, without '#'.
+     */
+    public final Set<String> getGroups () {
+        return Collections.unmodifiableSet(this.groups);
+    }
+
+    /**
+     * Allows to send a join or a leave on every connection, kept until the connection is back if needed.
+     * @param name Action.JOIN or Action.LEAVE.
+     * @param group The name of the group.
+     */
+    private void sendGroup (final String name, final String group) {
+        for (final Connection connection : this.connections) {
+            try {
+                connection.send(group(name, group));
+            } catch (final IOException e) {
+                if (this.options.getDebug())
+                    e.printStackTrace();
+            }
+        }
+    }
+
+    private static Action group (final String name, final String group) {
+        final Action action = new Action();
+        action.setName(name);
+        action.setContent(group);
+        return action;
+    }
+
     /**
      * Allows to register an event for the reception of a MESSAGE request on a certain channel
      *
-     * @param channel The name of the channel that will be listened to.
+     * @param channel The name of the channel that will be listened to, or a pattern: 'orders.*' (one segment), 'metrics.>' (the next segments).
      * @param consumer The consumer which will be executed for each reception.
      *
      * @see MessageEvent.CLIENT
@@ -447,7 +1185,7 @@ public class SokeeseClient implements Closeable {
     /**
      * Allows to register an event for the reception of a ACTION request on a certain name
      *
-     * @param name The name of the action that will be listened to.
+     * @param name The name of the action that will be listened to, or a pattern: 'orders.*' (one segment), 'metrics.>' (the next segments).
      * @param consumer The consumer which will be executed for each reception.
      *
      * @see ActionEvent.CLIENT
@@ -456,6 +1194,49 @@ public class SokeeseClient implements Closeable {
         this.catcherManager.addActionEvent(name, consumer);
     }
 
+    /**
+     * Allows to register an event for the reception of the chunks of the streams sent on a certain channel.
+     * The consumer is executed once per chunk, in order, and the next chunks are only granted once it returns.
+     *
+     * @param channel The name of the channel that will be listened to, or a pattern: 'orders.*' (one segment), 'metrics.>' (the next segments).
+     * @param consumer The consumer which will be executed for each chunk.
+     *
+     * @see StreamEvent.CLIENT
+     */
+    public final void onStream (final String channel, final Consumer<StreamEvent.CLIENT> consumer) {
+        this.catcherManager.addStreamEvent(channel, consumer);
+    }
+
+    /**
+     * Allows to register an event following the files sent on a certain channel, only with the FRAMED transport.
+     * The files of a channel without event are not written to disk.
+     *
+     * @param channel The name of the channel that will be listened to, or a pattern: 'orders.*' (one segment), 'metrics.>' (the next segments).
+     * @param consumer The consumer which will be executed when a file is opened, for each segment written, and at its end.
+     *
+     * @see FileEvent.CLIENT
+     */
+    public final void onFile (final String channel, final Consumer<FileEvent.CLIENT> consumer) {
+        this.catcherManager.addFileEvent(channel, consumer);
+    }
+
+
+    /**
+     * Allows to retrieve the metrics of the client: requests and bytes of all its connections, in total and per channel,
+     * dropped requests, replies waiting, round trips and execution time of the events.
+     * @return The metrics.
+     */
+    public final Metrics getMetrics () {
+        return this.metrics;
+    }
+
+    /**
+     * Allows to retrieve the number of requests sent which are waiting for their reply.
+     * @return The number of requests.
+     */
+    public final int getPendingReplies () {
+        return this.catcherManager.getPendingReplies();
+    }
 
     /**
      * Used to retrieve the option of the current session.
@@ -468,19 +1249,18 @@ public class SokeeseClient implements Closeable {
     /**
      * Allows the client to be closed.
      *
-     * The connection to the server is closed.
+     * The connections to the server are closed.
      * All services stop.
      * All local data related to the session is deleted (credentials, events)
      */
     @Override
     public void close () {
         this.isEnabled = false;
-        try {
-            this.socket.close();
-        } catch (final IOException e) {
-            if (this.options.getDebug())
-                e.printStackTrace();
+        synchronized (this.pause) {
+            this.pause.notifyAll();
         }
+        for (final Connection connection : this.connections)
+            connection.close();
     }
 
     /**
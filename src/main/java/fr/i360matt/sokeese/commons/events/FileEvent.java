@@ -0,0 +1,241 @@
+package fr.i360matt.sokeese.commons.events;
+
+
+import fr.i360matt.sokeese.client.SokeeseClient;
+import fr.i360matt.sokeese.commons.requests.FileTransfer;
+import fr.i360matt.sokeese.server.ClientLogged;
+
+import java.nio.file.Path;
+
+/**
+ * Instances of this class represent the progress of a file being received.
+ * The events of a file are executed in their order: once when the file is opened,
+ * once per segment written, the last one is done or aborted.
+ *
+ * @version 1.0.0
+ * @see FileTransfer
+ */
+public final class FileEvent {
+
+    public static final class CLIENT {
+        private final FileTransfer request;
+        private final SokeeseClient client;
+        private final Path path;
+        private final long transferred;
+
+        /**
+         * Allow to instantiate a new event from a client instance and a 'FILE' request instance.
+         * @param client A client instance.
+         * @param request A request instance.
+         * @param path The file written on disk.
+         * @param transferred The number of bytes written so far.
+         */
+        public CLIENT (final SokeeseClient client, final FileTransfer request, final Path path, final long transferred) {
+            this.request = request;
+            this.client = client;
+            this.path = path;
+            this.transferred = transferred;
+        }
+
+        /**
+         * Retrieve the received 'FILE' request
+         * @return The received request
+         */
+        public final FileTransfer getRequest () {
+            return this.request;
+        }
+
+        /**
+         * Retrieve the client which receives the file.
+         * @return The client instance.
+         */
+        public final SokeeseClient getClient () {
+            return this.client;
+        }
+
+        /**
+         * Shortcut to retrieve the identifier of the transfer.
+         * @return The stream ID.
+         */
+        public final long getIdStream () {
+            return this.request.getIdStream();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the channel.
+         * @return The channel name.
+         */
+        public final String getChannel () {
+            return this.request.getChannel();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the sender.
+         * @return The sender name.
+         */
+        public final String getSender () {
+            return this.request.getSender();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the file, as known by the sender.
+         * @return The file name.
+         */
+        public final String getName () {
+            return this.request.getName();
+        }
+
+        /**
+         * Shortcut to retrieve the number of bytes of the file.
+         * @return The size.
+         */
+        public final long getSize () {
+            return this.request.getSize();
+        }
+
+        /**
+         * Retrieve the temporary file in which the bytes are written.
+         * Once the transfer is done, it can be moved; once it is aborted, it is already deleted.
+         * @return The path of the file.
+         */
+        public final Path getPath () {
+            return this.path;
+        }
+
+        /**
+         * Retrieve the number of bytes written so far.
+         * @return The number of bytes.
+         */
+        public final long getTransferred () {
+            return this.transferred;
+        }
+
+        /**
+         * Allows to know if the whole file is written and closed.
+         * @return If the transfer is done.
+         */
+        public final boolean isDone () {
+            return !this.request.isAborted() && this.transferred == this.request.getSize();
+        }
+
+        /**
+         * Allows to know if the transfer is aborted, by the sender or because the connection is lost.
+         * @return If the transfer is aborted.
+         */
+        public final boolean isAborted () {
+            return this.request.isAborted();
+        }
+    }
+
+
+    public static final class SERVER {
+        private final FileTransfer request;
+        private final ClientLogged instance;
+        private final Path path;
+        private final long transferred;
+
+        /**
+         * Allow to instantiate a new event from a server instance and a 'FILE' request instance.
+         * @param instance A client-session instance.
+         * @param request A request instance.
+         * @param path The file written on disk.
+         * @param transferred The number of bytes written so far.
+         */
+        public SERVER (final ClientLogged instance, final FileTransfer request, final Path path, final long transferred) {
+            this.request = request;
+            this.instance = instance;
+            this.path = path;
+            this.transferred = transferred;
+        }
+
+        /**
+         * Retrieve the received 'FILE' request
+         * @return The received request
+         */
+        public final FileTransfer getRequest () {
+            return this.request;
+        }
+
+        /**
+         * Retrieve the session which sends the file.
+         * @return The client-session instance.
+         */
+        public final ClientLogged getClient () {
+            return this.instance;
+        }
+
+        /**
+         * Shortcut to retrieve the identifier of the transfer.
+         * @return The stream ID.
+         */
+        public final long getIdStream () {
+            return this.request.getIdStream();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the channel.
+         * @return The channel name.
+         */
+        public final String getChannel () {
+            return this.request.getChannel();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the sender.
+         * @return The sender name.
+         */
+        public final String getSender () {
+            return this.request.getSender();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the file, as known by the sender.
+         * @return The file name.
+         */
+        public final String getName () {
+            return this.request.getName();
+        }
+
+        /**
+         * Shortcut to retrieve the number of bytes of the file.
+         * @return The size.
+         */
+        public final long getSize () {
+            return this.request.getSize();
+        }
+
+        /**
+         * Retrieve the temporary file in which the bytes are written.
+         * Once the transfer is done, it can be moved; once it is aborted, it is already deleted.
+         * @return The path of the file.
+         */
+        public final Path getPath () {
+            return this.path;
+        }
+
+        /**
+         * Retrieve the number of bytes written so far.
+         * @return The number of bytes.
+         */
+        public final long getTransferred () {
+            return this.transferred;
+        }
+
+        /**
+         * Allows to know if the whole file is written and closed.
+         * @return If the transfer is done.
+         */
+        public final boolean isDone () {
+            return !this.request.isAborted() && this.transferred == this.request.getSize();
+        }
+
+        /**
+         * Allows to know if the transfer is aborted, by the sender or because the connection is lost.
+         * @return If the transfer is aborted.
+         */
+        public final boolean isAborted () {
+            return this.request.isAborted();
+        }
+    }
+
+}
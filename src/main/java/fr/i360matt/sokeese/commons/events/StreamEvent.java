@@ -0,0 +1,178 @@
+package fr.i360matt.sokeese.commons.events;
+
+
+import fr.i360matt.sokeese.client.SokeeseClient;
+import fr.i360matt.sokeese.commons.requests.Chunk;
+import fr.i360matt.sokeese.server.ClientLogged;
+
+/**
+ * Instances of this class represent the reception of a chunk of a stream.
+ * The events of a stream are executed once per chunk, in their order:
+ * the sender can send a new chunk each time the handlers of a chunk are over.
+ *
+ * @version 1.0.0
+ * @see Chunk
+ */
+public final class StreamEvent {
+
+    public static final class CLIENT {
+        private final Chunk chunk;
+        private final SokeeseClient client;
+
+        /**
+         * Allow to instantiate a new event from a client instance and a 'CHUNK' request instance.
+         * @param client A client instance.
+         * @param chunk A request instance.
+         */
+        public CLIENT (final SokeeseClient client, final Chunk chunk) {
+            this.chunk = chunk;
+            this.client = client;
+        }
+
+        /**
+         * Retrieve the received 'CHUNK' request
+         * @return The received request
+         */
+        public final Chunk getRequest () {
+            return this.chunk;
+        }
+
+        /**
+         * Retrieve the client which receives the stream.
+         * @return The client instance.
+         */
+        public final SokeeseClient getClient () {
+            return this.client;
+        }
+
+        /**
+         * Shortcut to retrieve the identifier of the stream, shared by all its chunks.
+         * @return The stream ID.
+         */
+        public final long getIdStream () {
+            return this.chunk.getIdStream();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the channel.
+         * @return The channel name.
+         */
+        public final String getChannel () {
+            return this.chunk.getChannel();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the sender.
+         * @return The sender name.
+         */
+        public final String getSender () {
+            return this.chunk.getSender();
+        }
+
+        /**
+         * Shortcut to retrieve the bytes of the chunk.
+         * @return The bytes, null if the stream is aborted.
+         */
+        public final byte[] getData () {
+            return this.chunk.getData();
+        }
+
+        /**
+         * Shortcut to know if this chunk is the last one of its stream.
+         * @return If it is the last one.
+         */
+        public final boolean isLast () {
+            return this.chunk.isLast();
+        }
+
+        /**
+         * Shortcut to know if the sender has aborted the stream.
+         * @return If the stream is aborted.
+         */
+        public final boolean isAborted () {
+            return this.chunk.isAborted();
+        }
+    }
+
+
+    public static final class SERVER {
+        private final Chunk chunk;
+        private final ClientLogged instance;
+
+        /**
+         * Allow to instantiate a new event from a server instance and a 'CHUNK' request instance.
+         * @param instance A client-session instance.
+         * @param chunk A request instance.
+         */
+        public SERVER (final ClientLogged instance, final Chunk chunk) {
+            this.chunk = chunk;
+            this.instance = instance;
+        }
+
+        /**
+         * Retrieve the received 'CHUNK' request
+         * @return The received request
+         */
+        public final Chunk getRequest () {
+            return this.chunk;
+        }
+
+        /**
+         * Retrieve the session which sends the stream.
+         * @return The client-session instance.
+         */
+        public final ClientLogged getClient () {
+            return this.instance;
+        }
+
+        /**
+         * Shortcut to retrieve the identifier of the stream, shared by all its chunks.
+         * It is unique for the session of the sender only.
+         * @return The stream ID.
+         */
+        public final long getIdStream () {
+            return this.chunk.getIdStream();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the channel.
+         * @return The channel name.
+         */
+        public final String getChannel () {
+            return this.chunk.getChannel();
+        }
+
+        /**
+         * Shortcut to retrieve the name of the sender.
+         * @return The sender name.
+         */
+        public final String getSender () {
+            return this.chunk.getSender();
+        }
+
+        /**
+         * Shortcut to retrieve the bytes of the chunk.
+         * @return The bytes, null if the stream is aborted.
+         */
+        public final byte[] getData () {
+            return this.chunk.getData();
+        }
+
+        /**
+         * Shortcut to know if this chunk is the last one of its stream.
+         * @return If it is the last one.
+         */
+        public final boolean isLast () {
+            return this.chunk.isLast();
+        }
+
+        /**
+         * Shortcut to know if the sender has aborted the stream.
+         * @return If the stream is aborted.
+         */
+        public final boolean isAborted () {
+            return this.chunk.isAborted();
+        }
+    }
+
+}
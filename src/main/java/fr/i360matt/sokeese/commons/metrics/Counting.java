@@ -0,0 +1,86 @@
+package fr.i360matt.sokeese.commons.metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Allows to count the bytes of the STREAM transport, under its object streams.
+ * The count is a plain field: each stream must be used by a single thread at a time, like the object streams.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @see Traffic
+ */
+public final class Counting {
+
+    private Counting () { }
+
+    public static final class Input extends FilterInputStream {
+        private long count;
+
+        public Input (final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read () throws IOException {
+            final int read = this.in.read();
+            if (read >= 0)
+                this.count++;
+            return read;
+        }
+
+        @Override
+        public int read (final byte[] b, final int off, final int len) throws IOException {
+            final int read = this.in.read(b, off, len);
+            if (read > 0)
+                this.count += read;
+            return read;
+        }
+
+        @Override
+        public long skip (final long n) throws IOException {
+            final long skipped = this.in.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+
+        /**
+         * @return The number of bytes read so far.
+         */
+        public long getCount () {
+            return this.count;
+        }
+    }
+
+    public static final class Output extends FilterOutputStream {
+        private long count;
+
+        public Output (final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write (final int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write (final byte[] b, final int off, final int len) throws IOException {
+            this.out.write(b, off, len); // FilterOutputStream would write them one by one
+            this.count += len;
+        }
+
+        /**
+         * @return The number of bytes written so far.
+         */
+        public long getCount () {
+            return this.count;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package fr.i360matt.sokeese.commons.metrics;
+
+import fr.i360matt.sokeese.commons.requests.Action;
+import fr.i360matt.sokeese.commons.requests.Chunk;
+import fr.i360matt.sokeese.commons.requests.FileTransfer;
+import fr.i360matt.sokeese.commons.requests.Message;
+import fr.i360matt.sokeese.commons.requests.Reply;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Allows to follow the activity of a server or of a client:
+ * the requests and bytes in and out, in total and per channel (or action name),
+ * the round trips of the requests waiting for a reply, and the execution time of the handlers.
+ *
+ * The recording happens on the hot path: it takes neither lock nor allocation,
+ * except once for the first request of a channel.
+ * Only the first MAX_CHANNELS channels are counted separately, the next ones are only in the totals.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @see Traffic
+ * @see LatencyHistogram
+ */
+public final class Metrics implements MetricsMXBean {
+    public static final int MAX_CHANNELS = 1024; // a client sending random channel names must not fill the memory
+
+    private final Traffic traffic = new Traffic();
+    private final ConcurrentHashMap<String, Traffic> channels = new ConcurrentHashMap<>();
+    private final LatencyHistogram roundTrips = new LatencyHistogram();
+    private final LatencyHistogram handlers = new LatencyHistogram();
+    private final IntSupplier pending;
+    private volatile ObjectName registered;
+
+
+    /**
+     * @param pending Retrieves the number of requests waiting for a reply.
+     */
+    public Metrics (final IntSupplier pending) {
+        this.pending = pending;
+    }
+
+    /**
+     * Allows to count a request received.
+     * @param request The request.
+     * @param bytes Its size on the wire, 0 if unknown.
+     */
+    public void received (final Object request, final long bytes) {
+        this.traffic.received(bytes);
+        final Traffic channel = this.channel(channelOf(request));
+        if (channel != null)
+            channel.received(bytes);
+    }
+
+    /**
+     * Allows to count a request sent.
+     * @param request The request.
+     * @param bytes Its size on the wire, 0 if unknown.
+     */
+    public void sent (final Object request, final long bytes) {
+        this.traffic.sent(bytes);
+        final Traffic channel = this.channel(channelOf(request));
+        if (channel != null)
+            channel.sent(bytes);
+    }
+
+    /**
+     * Allows to count a request transmitted to other clients by the server.
+     * @param request The request.
+     */
+    public void forwarded (final Object request) {
+        this.traffic.forwarded();
+        final Traffic channel = this.channel(channelOf(request));
+        if (channel != null)
+            channel.forwarded();
+    }
+
+    /**
+     * Allows to count a request which will never be sent.
+     * @param request The request, or null if it is only known as bytes.
+     */
+    public void dropped (final Object request) {
+        this.traffic.dropped();
+        final Traffic channel = this.channel(channelOf(request));
+        if (channel != null)
+            channel.dropped();
+    }
+
+    private Traffic channel (final String name) {
+        if (name == null)
+            return null;
+        final Traffic traffic = this.channels.get(name);
+        if (traffic != null || this.channels.size() >= MAX_CHANNELS)
+            return traffic;
+        return this.channels.computeIfAbsent(name, ignored -> new Traffic());
+    }
+
+    /**
+     * Allows to retrieve the channel of a request: its channel, or its name for an action.
+     * @param request The request.
+     * @return The channel, or null for the other requests.
+     */
+    public static String channelOf (final Object request) {
+        if (request instanceof Message)
+            return ((Message) request).getChannel();
+        if (request instanceof Action)
+            return ((Action) request).getName();
+        if (request instanceof Reply)
+            return ((Reply) request).getChannel();
+        if (request instanceof Chunk)
+            return ((Chunk) request).getChannel();
+        if (request instanceof FileTransfer)
+            return ((FileTransfer) request).getChannel();
+        return null;
+    }
+
+    /**
+     * Allows to retrieve the counters of all the requests.
+     * @return The counters.
+     */
+    public Traffic getTraffic () {
+        return this.traffic;
+    }
+
+    /**
+     * Allows to retrieve the counters of a channel, or of an action name.
+     * @param name The name of the channel.
+     * @return The counters, or null if nothing was counted on this channel.
+     */
+    public Traffic getTraffic (final String name) {
+        return this.channels.get(name);
+    }
+
+    /**
+     * Allows to retrieve the round trips of the requests sent with a reply callback or as a future,
+     * from the sending to the reception of their reply. The expired requests are not recorded.
+     * @return The durations.
+     */
+    public LatencyHistogram getRoundTrips () {
+        return this.roundTrips;
+    }
+
+    /**
+     * Allows to retrieve the execution time of the handlers of each request (onMessage, onAction, onStream, onFile),
+     * all the handlers of a request being measured at once.
+     * @return The durations.
+     */
+    public LatencyHistogram getHandlerTimes () {
+        return this.handlers;
+    }
+
+    /**
+     * Allows to register these metrics in the MBean server of the JVM.
+     * @param name The name of the MBean, for example "fr.i360matt.sokeese:type=Server,name=main".
+     * @throws JMException If the name is invalid or already taken.
+     */
+    public void register (final String name) throws JMException {
+        final ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.registered = objectName;
+    }
+
+    /**
+     * Allows to remove these metrics from the MBean server, if they are registered.
+     */
+    public void unregister () {
+        final ObjectName objectName = this.registered;
+        if (objectName == null)
+            return;
+        this.registered = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (final JMException ignored) { }
+    }
+
+
+    @Override
+    public long getMessagesIn () {
+        return this.traffic.getMessagesIn();
+    }
+    @Override
+    public long getMessagesOut () {
+        return this.traffic.getMessagesOut();
+    }
+    @Override
+    public long getBytesIn () {
+        return this.traffic.getBytesIn();
+    }
+    @Override
+    public long getBytesOut () {
+        return this.traffic.getBytesOut();
+    }
+    @Override
+    public long getForwarded () {
+        return this.traffic.getForwarded();
+    }
+    @Override
+    public long getDropped () {
+        return this.traffic.getDropped();
+    }
+    @Override
+    public int getPendingReplies () {
+        return this.pending.getAsInt();
+    }
+    @Override
+    public String[] getChannels () {
+        return this.channels.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public long getRoundTripCount () {
+        return this.roundTrips.getCount();
+    }
+    @Override
+    public double getRoundTripMean () {
+        return this.roundTrips.getMean() / 1000;
+    }
+    @Override
+    public long getRoundTripP50 () {
+        return micros(this.roundTrips.getPercentile(50));
+    }
+    @Override
+    public long getRoundTripP99 () {
+        return micros(this.roundTrips.getPercentile(99));
+    }
+    @Override
+    public long getRoundTripP999 () {
+        return micros(this.roundTrips.getPercentile(99.9));
+    }
+    @Override
+    public long getRoundTripMax () {
+        return micros(this.roundTrips.getMax());
+    }
+
+    @Override
+    public long getHandlerCount () {
+        return this.handlers.getCount();
+    }
+    @Override
+    public double getHandlerMean () {
+        return this.handlers.getMean() / 1000;
+    }
+    @Override
+    public long getHandlerP50 () {
+        return micros(this.handlers.getPercentile(50));
+    }
+    @Override
+    public long getHandlerP99 () {
+        return micros(this.handlers.getPercentile(99));
+    }
+    @Override
+    public long getHandlerP999 () {
+        return micros(this.handlers.getPercentile(99.9));
+    }
+    @Override
+    public long getHandlerMax () {
+        return micros(this.handlers.getMax());
+    }
+
+    /**
+     * Allows to forget the recorded durations, the counters keep growing.
+     */
+    @Override
+    public void reset () {
+        this.roundTrips.reset();
+        this.handlers.reset();
+    }
+
+    private static long micros (final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
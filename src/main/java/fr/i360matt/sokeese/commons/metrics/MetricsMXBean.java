@@ -0,0 +1,38 @@
+package fr.i360matt.sokeese.commons.metrics;
+
+/**
+ * The metrics of a server or of a client, as seen by JMX (jconsole, VisualVM, ...).
+ * The durations are in microseconds.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @see Metrics
+ */
+public interface MetricsMXBean {
+
+    long getMessagesIn ();
+    long getMessagesOut ();
+    long getBytesIn ();
+    long getBytesOut ();
+    long getForwarded ();
+    long getDropped ();
+    int getPendingReplies ();
+    String[] getChannels ();
+
+    long getRoundTripCount ();
+    double getRoundTripMean ();
+    long getRoundTripP50 ();
+    long getRoundTripP99 ();
+    long getRoundTripP999 ();
+    long getRoundTripMax ();
+
+    long getHandlerCount ();
+    double getHandlerMean ();
+    long getHandlerP50 ();
+    long getHandlerP99 ();
+    long getHandlerP999 ();
+    long getHandlerMax ();
+
+    void reset ();
+}
@@ -0,0 +1,92 @@
+package fr.i360matt.sokeese.commons.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Allows to count the requests and the bytes of a server, of a session, or of a channel.
+ * The counters can be incremented from many threads without lock nor allocation.
+ *
+ * The bytes are those of the wire: the frames with the FRAMED transport (compressed or not),
+ * the serialized objects with the STREAM transport.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @see Metrics
+ */
+public final class Traffic {
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+
+    /**
+     * Allows to count a request received.
+     * @param bytes Its size on the wire, 0 if unknown.
+     */
+    public void received (final long bytes) {
+        this.messagesIn.increment();
+        this.bytesIn.add(bytes);
+    }
+
+    /**
+     * Allows to count a request sent.
+     * @param bytes Its size on the wire, 0 if unknown.
+     */
+    public void sent (final long bytes) {
+        this.messagesOut.increment();
+        this.bytesOut.add(bytes);
+    }
+
+    /**
+     * Allows to count bytes received outside of a request, like the segments of a file.
+     * @param bytes The number of bytes.
+     */
+    public void receivedBytes (final long bytes) {
+        this.bytesIn.add(bytes);
+    }
+
+    /**
+     * Allows to count bytes sent outside of a request, like the segments of a file.
+     * @param bytes The number of bytes.
+     */
+    public void sentBytes (final long bytes) {
+        this.bytesOut.add(bytes);
+    }
+
+    /**
+     * Allows to count a request received by the server and transmitted to other clients.
+     */
+    public void forwarded () {
+        this.forwarded.increment();
+    }
+
+    /**
+     * Allows to count a request which will never be sent: slow client, or offline buffer full.
+     */
+    public void dropped () {
+        this.dropped.increment();
+    }
+
+    public long getMessagesIn () {
+        return this.messagesIn.sum();
+    }
+    public long getMessagesOut () {
+        return this.messagesOut.sum();
+    }
+    public long getBytesIn () {
+        return this.bytesIn.sum();
+    }
+    public long getBytesOut () {
+        return this.bytesOut.sum();
+    }
+    public long getForwarded () {
+        return this.forwarded.sum();
+    }
+    public long getDropped () {
+        return this.dropped.sum();
+    }
+}
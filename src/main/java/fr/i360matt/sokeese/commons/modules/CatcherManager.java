@@ -1,35 +1,70 @@
 package fr.i360matt.sokeese.commons.modules;
 
 
+import fr.i360matt.sokeese.client.ClientOptions;
 import fr.i360matt.sokeese.client.SokeeseClient;
 import fr.i360matt.sokeese.commons.events.ActionEvent;
+import fr.i360matt.sokeese.commons.events.FileEvent;
 import fr.i360matt.sokeese.commons.events.MessageEvent;
+import fr.i360matt.sokeese.commons.events.StreamEvent;
+import fr.i360matt.sokeese.commons.metrics.Metrics;
 import fr.i360matt.sokeese.commons.requests.Action;
+import fr.i360matt.sokeese.commons.requests.Chunk;
+import fr.i360matt.sokeese.commons.requests.FileTransfer;
 import fr.i360matt.sokeese.commons.requests.Message;
 import fr.i360matt.sokeese.commons.requests.Reply;
 import fr.i360matt.sokeese.server.ClientLogged;
-import fr.i360matt.sokeese.utils.ExpirableCallback;
+import fr.i360matt.sokeese.server.ServerOptions;
+import fr.i360matt.sokeese.utils.StripedExecutor;
 
 import java.io.Closeable;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.LongPredicate;
 
 /**
  * Allows to ensure the recording of events and to apply them.
+ * Handlers can be registered while requests are dispatched from other threads, under a name or a pattern of segments (see HandlerTable).
+ * The 'MESSAGE', 'ACTION', 'STREAM' and 'FILE' events can be handled on an executor, in order per sender or per channel.
+ * With metrics, the execution time of the events and the round trips of the replies are recorded.
  *
  * @author 360matt
- * @version 1.0.0
+ * @version 1.12.0
  */
 public final class CatcherManager {
 
     public final static class CLIENT implements Closeable {
-        private final Map<String, Set<Consumer<MessageEvent.CLIENT>>> messageEvents = new HashMap<>();
-        private final Map<String, Set<Consumer<ActionEvent.CLIENT>>> actionEvents = new HashMap<>();
-        private final ExpirableCallback<Long, BiConsumer<Reply, Boolean>> replyEvents = new ExpirableCallback<>();
+        private final HandlerTable<Consumer<MessageEvent.CLIENT>> messageEvents = new HandlerTable<>();
+        private final HandlerTable<Consumer<ActionEvent.CLIENT>> actionEvents = new HandlerTable<>();
+        private final HandlerTable<Consumer<StreamEvent.CLIENT>> streamEvents = new HandlerTable<>();
+        private final HandlerTable<Consumer<FileEvent.CLIENT>> fileEvents = new HandlerTable<>();
+        private final ReplyTable replyEvents;
+        private final StripedExecutor dispatcher; // null: the events are handled by the thread reading the requests
+        private final DispatchOrder order;
+        private final Metrics metrics; // null: nothing is recorded
+
+        /**
+         * Allows to create the events manager with the default options, the events are handled by the thread reading the requests.
+         */
+        public CLIENT () {
+            this(new ClientOptions(), null);
+        }
+
+        /**
+         * Allows to create the events manager of a client.
+         * @param options The options of the client: the timing wheel of the reply events, the executor and the order of the events, the debug mode.
+         *                Without executor, the events are handled by the thread reading the requests (the expired reply events on a shared executor).
+         * @param metrics Records the round trips of the replies and the execution time of the events, or null.
+         */
+        public CLIENT (final ClientOptions options, final Metrics metrics) {
+            final Executor executor = options.getEffectiveDispatchExecutor();
+            this.replyEvents = new ReplyTable(options.getTimingWheel(), executor, (metrics != null) ? metrics.getRoundTrips() : null);
+            this.dispatcher = (executor != null) ? new StripedExecutor(executor, StripedExecutor.DEFAULT_LANES, options.getDebug()) : null;
+            this.order = options.getDispatchOrder();
+            this.metrics = metrics;
+        }
 
         /**
          * Allows to empty the entire event list
@@ -38,43 +73,62 @@ public final class CatcherManager {
         public final void close () {
             this.messageEvents.clear();
             this.actionEvents.clear();
+            this.streamEvents.clear();
+            this.fileEvents.clear();
             this.replyEvents.close();
         }
 
         /**
          * Allows to record an event of type 'MESSAGE' which will listen to the chosen channel
-         * @param name The name of the chosen channel.
+         * @param name The name of the chosen channel, or a pattern ('orders.*', 'metrics.eu.>').
          * @param event The content of the event in a consumer.
          *
          * @see MessageEvent.CLIENT
          */
         public final void addMessageEvent (final String name, final Consumer<MessageEvent.CLIENT> event) {
-            Set<Consumer<MessageEvent.CLIENT>> candidate = messageEvents.get(name);
-            if (candidate != null) {
-                candidate.add(event);
-            } else {
-                candidate = new HashSet<>();
-                candidate.add(event);
-                messageEvents.put(name, candidate);
-            }
+            this.messageEvents.add(name, event);
         }
 
         /**
          * Allows to record an event of type 'ACTION' which will listen to the chosen action name.
-         * @param name The name of the action.
+         * @param name The name of the action, or a pattern ('orders.*', 'metrics.eu.>').
          * @param event The content of the event in a consumer.
          *
          * @see ActionEvent.CLIENT
          */
         public final void addActionEvent (final String name, final Consumer<ActionEvent.CLIENT> event) {
-            Set<Consumer<ActionEvent.CLIENT>> candidate = actionEvents.get(name);
-            if (candidate != null) {
-                candidate.add(event);
-            } else {
-                candidate = new HashSet<>();
-                candidate.add(event);
-                actionEvents.put(name, candidate);
-            }
+            this.actionEvents.add(name, event);
+        }
+
+        /**
+         * Allows to record an event of type 'STREAM' which will receive the chunks of the streams sent on the chosen channel.
+         * @param name The name of the chosen channel, or a pattern ('orders.*', 'metrics.eu.>').
+         * @param event The content of the event in a consumer.
+         *
+         * @see StreamEvent.CLIENT
+         */
+        public final void addStreamEvent (final String name, final Consumer<StreamEvent.CLIENT> event) {
+            this.streamEvents.add(name, event);
+        }
+
+        /**
+         * Allows to record an event of type 'FILE' which will follow the files sent on the chosen channel.
+         * @param name The name of the chosen channel, or a pattern ('orders.*', 'metrics.eu.>').
+         * @param event The content of the event in a consumer.
+         *
+         * @see FileEvent.CLIENT
+         */
+        public final void addFileEvent (final String name, final Consumer<FileEvent.CLIENT> event) {
+            this.fileEvents.add(name, event);
+        }
+
+        /**
+         * Allows to know if the files sent on a channel are listened to, the others are not written to disk.
+         * @param name The name of the channel.
+         * @return True if an event of type 'FILE' listens to it.
+         */
+        public final boolean hasFileEvent (final String name) {
+            return this.fileEvents.get(name).length != 0;
         }
 
         /**
@@ -82,11 +136,64 @@ public final class CatcherManager {
          * @param id The identifier of the expected response.
          * @param delay The expiration time.
          * @param event The content of the event in the form of a consumer.
+         * @return False if an event already listens for this ID.
          *
          * @see Reply
          */
-        public final void addReplyEvent (final long id, final int delay, final BiConsumer<Reply, Boolean> event) {
-            replyEvents.put(id, event, delay);
+        public final boolean addReplyEvent (final long id, final int delay, final BiConsumer<Reply, Boolean> event) {
+            return this.replyEvents.put(id, event, delay);
+        }
+
+        /**
+         * Allows to record a single-use event of type 'REPLY' on behalf of an owner, such as the connection sending the request.
+         * @param id The identifier of the expected response.
+         * @param delay The expiration time.
+         * @param event The content of the event in the form of a consumer.
+         * @param owner The owner of the event, its events can be failed together. If it is closed, the event is failed at once.
+         * @return False if an event already listens for this ID.
+         *
+         * @see #failReplyEvents(ReplyOwner, Throwable)
+         */
+        public final boolean addReplyEvent (final long id, final int delay, final BiConsumer<Reply, Boolean> event, final ReplyOwner owner) {
+            return this.replyEvents.put(id, event, delay, owner);
+        }
+
+        /**
+         * Allows to fail a single-use event of type 'REPLY' whose request could not be sent.
+         * @param id The identifier of the expected response.
+         * @param cause The cause, given to a ReplyFuture. The other events are executed with the second type set to FALSE.
+         */
+        public final void failReplyEvent (final long id, final Throwable cause) {
+            final BiConsumer<Reply, Boolean> candidate = this.replyEvents.remove(id);
+            if (candidate != null)
+                ReplyTable.fail(candidate, cause);
+        }
+
+        /**
+         * Allows to fail the single-use events of type 'REPLY' of an owner, only its events are visited.
+         * The owner is closed: its next events are failed as soon as they are recorded.
+         * @param owner The owner of the events to fail, such as a lost connection.
+         * @param cause The cause, given to a ReplyFuture. The other events are executed with the second type set to FALSE.
+         */
+        public final void failReplyEvents (final ReplyOwner owner, final Throwable cause) {
+            this.replyEvents.failOwner(owner, cause);
+        }
+
+        /**
+         * Allows to know how many events of type 'REPLY' are waiting for their response.
+         * @return The number of events.
+         */
+        public final int getPendingReplies () {
+            return this.replyEvents.size();
+        }
+
+        /**
+         * Allows to know how many events of type 'REPLY' whose identifier matches a filter are waiting for their response.
+         * @param filter The filter of the identifiers.
+         * @return The number of events.
+         */
+        public final int getPendingReplies (final LongPredicate filter) {
+            return this.replyEvents.count(filter);
         }
 
         /**
@@ -96,12 +203,26 @@ public final class CatcherManager {
          *
          * @see Message
          */
+        @SuppressWarnings("unchecked")
         public final void handleMessage (final SokeeseClient client, final Message message) {
-            final Set<Consumer<MessageEvent.CLIENT>> candidates = messageEvents.get(message.getChannel());
-            if (candidates != null) {
-                for (final Consumer<MessageEvent.CLIENT> consumer : candidates)
-                    consumer.accept(new MessageEvent.CLIENT(client, message));
-            }
+            final Object[] candidates = this.messageEvents.get(message.getChannel());
+            if (candidates.length == 0)
+                return;
+
+            final MessageEvent.CLIENT event = new MessageEvent.CLIENT(client, message);
+            final Runnable task = () -> {
+                final long start = System.nanoTime();
+                try {
+                    for (final Object consumer : candidates)
+                        ((Consumer<MessageEvent.CLIENT>) consumer).accept(event);
+                } finally {
+                    timed(this.metrics, start);
+                }
+            };
+            if (this.dispatcher == null)
+                task.run();
+            else
+                this.dispatcher.execute((this.order == DispatchOrder.SENDER) ? message.getSender() : message.getChannel(), task);
         }
 
         /**
@@ -111,12 +232,87 @@ public final class CatcherManager {
          *
          * @see Action
          */
+        @SuppressWarnings("unchecked")
         public final void handleAction (final SokeeseClient client, final Action action) {
-            final Set<Consumer<ActionEvent.CLIENT>> candidates = actionEvents.get(action.getName());
-            if (candidates != null) {
-                for (final Consumer<ActionEvent.CLIENT> consumer : candidates)
-                    consumer.accept(new ActionEvent.CLIENT(client, action));
-            }
+            final Object[] candidates = this.actionEvents.get(action.getName());
+            if (candidates.length == 0)
+                return;
+
+            final ActionEvent.CLIENT event = new ActionEvent.CLIENT(client, action);
+            final Runnable task = () -> {
+                final long start = System.nanoTime();
+                try {
+                    for (final Object consumer : candidates)
+                        ((Consumer<ActionEvent.CLIENT>) consumer).accept(event);
+                } finally {
+                    timed(this.metrics, start);
+                }
+            };
+            if (this.dispatcher == null)
+                task.run();
+            else // the actions are always sent by the server, without sender: they keep their order per name
+                this.dispatcher.execute(action.getName(), task);
+        }
+
+        /**
+         * Allows to send a 'CHUNK' request to events that listen to the same channel.
+         * The chunks of a stream are handled in their order, like the messages of a same sender or channel.
+         * @param client An instance of the client.
+         * @param chunk The chunk request that must be taken into account by the events.
+         * @param handled Executed once the events are over, even without event: gives a credit back to the sender.
+         *
+         * @see Chunk
+         */
+        @SuppressWarnings("unchecked")
+        public final void handleChunk (final SokeeseClient client, final Chunk chunk, final Runnable handled) {
+            final Object[] candidates = this.streamEvents.get(chunk.getChannel());
+            final StreamEvent.CLIENT event = (candidates.length != 0) ? new StreamEvent.CLIENT(client, chunk) : null;
+            final Runnable task = () -> {
+                final long start = System.nanoTime();
+                try {
+                    for (final Object consumer : candidates)
+                        ((Consumer<StreamEvent.CLIENT>) consumer).accept(event);
+                } finally {
+                    timed(this.metrics, start);
+                    handled.run();
+                }
+            };
+            if (this.dispatcher == null)
+                task.run();
+            else
+                this.dispatcher.execute((this.order == DispatchOrder.SENDER) ? chunk.getSender() : chunk.getChannel(), task);
+        }
+
+        /**
+         * Allows to tell the progress of a file to the events that listen to the same channel.
+         * The events of a file are handled in their order, like the messages of a same sender or channel.
+         * @param client An instance of the client.
+         * @param request The request announcing the file.
+         * @param path The file written on disk.
+         * @param transferred The number of bytes written so far.
+         *
+         * @see FileTransfer
+         */
+        @SuppressWarnings("unchecked")
+        public final void handleFile (final SokeeseClient client, final FileTransfer request, final Path path, final long transferred) {
+            final Object[] candidates = this.fileEvents.get(request.getChannel());
+            if (candidates.length == 0)
+                return;
+
+            final FileEvent.CLIENT event = new FileEvent.CLIENT(client, request, path, transferred);
+            final Runnable task = () -> {
+                final long start = System.nanoTime();
+                try {
+                    for (final Object consumer : candidates)
+                        ((Consumer<FileEvent.CLIENT>) consumer).accept(event);
+                } finally {
+                    timed(this.metrics, start);
+                }
+            };
+            if (this.dispatcher == null)
+                task.run();
+            else
+                this.dispatcher.execute((this.order == DispatchOrder.SENDER) ? request.getSender() : request.getChannel(), task);
         }
 
         /**
@@ -126,11 +322,9 @@ public final class CatcherManager {
          * @see Reply
          */
         public final void handleReply (final Reply reply) {
-            final BiConsumer<Reply, Boolean> candidate = replyEvents.get(reply.getIdRequest());
-            if (candidate != null) {
+            final BiConsumer<Reply, Boolean> candidate = this.replyEvents.answer(reply.getIdRequest());
+            if (candidate != null)
                 candidate.accept(reply, true);
-                replyEvents.remove(reply.getIdRequest());
-            }
         }
     }
 
@@ -138,9 +332,35 @@ public final class CatcherManager {
 
 
     public final static class SERVER implements Closeable {
-        private final Map<String, Set<BiConsumer<MessageEvent.SERVER, ClientLogged>>> messageEvents = new HashMap<>();
-        private final Map<String, Set<BiConsumer<ActionEvent.SERVER, ClientLogged>>> actionEvents = new HashMap<>();
-        private final ExpirableCallback<Long, BiConsumer<Reply, Boolean>> replyEvents = new ExpirableCallback<>();
+        private final HandlerTable<BiConsumer<MessageEvent.SERVER, ClientLogged>> messageEvents = new HandlerTable<>();
+        private final HandlerTable<BiConsumer<ActionEvent.SERVER, ClientLogged>> actionEvents = new HandlerTable<>();
+        private final HandlerTable<BiConsumer<StreamEvent.SERVER, ClientLogged>> streamEvents = new HandlerTable<>();
+        private final HandlerTable<BiConsumer<FileEvent.SERVER, ClientLogged>> fileEvents = new HandlerTable<>();
+        private final ReplyTable replyEvents;
+        private final StripedExecutor dispatcher; // null: the events are handled by the thread reading the requests
+        private final DispatchOrder order;
+        private final Metrics metrics; // null: nothing is recorded
+
+        /**
+         * Allows to create the events manager with the default options, the events are handled by the thread reading the requests.
+         */
+        public SERVER () {
+            this(new ServerOptions(), null);
+        }
+
+        /**
+         * Allows to create the events manager of a server.
+         * @param options The options of the server: the timing wheel of the reply events, the executor and the order of the events, the debug mode.
+         *                Without executor, the events are handled by the thread reading the requests (the expired reply events on a shared executor).
+         * @param metrics Records the round trips of the replies and the execution time of the events, or null.
+         */
+        public SERVER (final ServerOptions options, final Metrics metrics) {
+            final Executor executor = options.getEffectiveDispatchExecutor();
+            this.replyEvents = new ReplyTable(options.getTimingWheel(), executor, (metrics != null) ? metrics.getRoundTrips() : null);
+            this.dispatcher = (executor != null) ? new StripedExecutor(executor, StripedExecutor.DEFAULT_LANES, options.getDebug()) : null;
+            this.order = options.getDispatchOrder();
+            this.metrics = metrics;
+        }
 
         /**
          * Allows to empty the entire event list
@@ -149,43 +369,62 @@ public final class CatcherManager {
         public final void close () {
             this.messageEvents.clear();
             this.actionEvents.clear();
+            this.streamEvents.clear();
+            this.fileEvents.clear();
             this.replyEvents.close();
         }
 
         /**
          * Allows to record an event of type 'MESSAGE' which will listen to the chosen channel
-         * @param name The name of the chosen channel.
+         * @param name The name of the chosen channel, or a pattern ('orders.*', 'metrics.eu.>').
          * @param event The content of the event in a consumer.
          *
          * @see MessageEvent.SERVER
          */
         public final void addMessageEvent (final String name, final BiConsumer<MessageEvent.SERVER, ClientLogged> event) {
-            Set<BiConsumer<MessageEvent.SERVER, ClientLogged>> candidate = messageEvents.get(name);
-            if (candidate != null) {
-                candidate.add(event);
-            } else {
-                candidate = new HashSet<>();
-                candidate.add(event);
-                messageEvents.put(name, candidate);
-            }
+            this.messageEvents.add(name, event);
         }
 
         /**
          * Allows to record an event of type 'ACTION' which will listen to the chosen action name.
-         * @param name The name of the action.
+         * @param name The name of the action, or a pattern ('orders.*', 'metrics.eu.>').
          * @param event The content of the event in a consumer.
          *
          * @see ActionEvent.SERVER
          */
         public final void addActionEvent (final String name, final BiConsumer<ActionEvent.SERVER, ClientLogged> event) {
-            Set<BiConsumer<ActionEvent.SERVER, ClientLogged>> candidate = actionEvents.get(name);
-            if (candidate != null) {
-                candidate.add(event);
-            } else {
-                candidate = new HashSet<>();
-                candidate.add(event);
-                actionEvents.put(name, candidate);
-            }
+            this.actionEvents.add(name, event);
+        }
+
+        /**
+         * Allows to record an event of type 'STREAM' which will receive the chunks of the streams sent on the chosen channel.
+         * @param name The name of the chosen channel, or a pattern ('orders.*', 'metrics.eu.>').
+         * @param event The content of the event in a consumer.
+         *
+         * @see StreamEvent.SERVER
+         */
+        public final void addStreamEvent (final String name, final BiConsumer<StreamEvent.SERVER, ClientLogged> event) {
+            this.streamEvents.add(name, event);
+        }
+
+        /**
+         * Allows to record an event of type 'FILE' which will follow the files sent on the chosen channel.
+         * @param name The name of the chosen channel, or a pattern ('orders.*', 'metrics.eu.>').
+         * @param event The content of the event in a consumer.
+         *
+         * @see FileEvent.SERVER
+         */
+        public final void addFileEvent (final String name, final BiConsumer<FileEvent.SERVER, ClientLogged> event) {
+            this.fileEvents.add(name, event);
+        }
+
+        /**
+         * Allows to know if the files sent on a channel are listened to, the others are not written to disk.
+         * @param name The name of the channel.
+         * @return True if an event of type 'FILE' listens to it.
+         */
+        public final boolean hasFileEvent (final String name) {
+            return this.fileEvents.get(name).length != 0;
         }
 
         /**
@@ -193,11 +432,73 @@ public final class CatcherManager {
          * @param id The identifier of the expected response.
          * @param delay The expiration time.
          * @param event The content of the event in the form of a consumer.
+         * @return False if an event already listens for this ID.
          *
          * @see Reply
          */
-        public final void addReplyEvent (final long id, final int delay, final BiConsumer<Reply, Boolean> event) {
-            replyEvents.put(id, event, delay);
+        public final boolean addReplyEvent (final long id, final int delay, final BiConsumer<Reply, Boolean> event) {
+            return this.replyEvents.put(id, event, delay);
+        }
+
+        /**
+         * Allows to record a single-use event of type 'REPLY' on behalf of an owner, such as the session receiving the request.
+         * @param id The identifier of the expected response.
+         * @param delay The expiration time.
+         * @param event The content of the event in the form of a consumer.
+         * @param owner The owner of the event, its events can be failed together. If it is closed, the event is failed at once.
+         * @return False if an event already listens for this ID.
+         *
+         * @see #failReplyEvents(ReplyOwner, Throwable)
+         */
+        public final boolean addReplyEvent (final long id, final int delay, final BiConsumer<Reply, Boolean> event, final ReplyOwner owner) {
+            return this.replyEvents.put(id, event, delay, owner);
+        }
+
+        /**
+         * Allows to fail a single-use event of type 'REPLY' whose request could not be sent.
+         * @param id The identifier of the expected response.
+         * @param cause The cause, given to a ReplyFuture. The other events are executed with the second type set to FALSE.
+         */
+        public final void failReplyEvent (final long id, final Throwable cause) {
+            final BiConsumer<Reply, Boolean> candidate = this.replyEvents.remove(id);
+            if (candidate != null)
+                ReplyTable.fail(candidate, cause);
+        }
+
+        /**
+         * Allows to fail the single-use events of type 'REPLY' which will never receive their response.
+         * @param filter The filter of the identifiers of the events to fail.
+         * @param cause The cause, given to a ReplyFuture. The other events are executed with the second type set to FALSE.
+         */
+        public final void failReplyEvents (final LongPredicate filter, final Throwable cause) {
+            this.replyEvents.failIf(filter, cause);
+        }
+
+        /**
+         * Allows to fail the single-use events of type 'REPLY' of an owner, only its events are visited.
+         * The owner is closed: its next events are failed as soon as they are recorded.
+         * @param owner The owner of the events to fail.
+         * @param cause The cause, given to a ReplyFuture. The other events are executed with the second type set to FALSE.
+         */
+        public final void failReplyEvents (final ReplyOwner owner, final Throwable cause) {
+            this.replyEvents.failOwner(owner, cause);
+        }
+
+        /**
+         * Allows to know how many events of type 'REPLY' are waiting for their response.
+         * @return The number of events.
+         */
+        public final int getPendingReplies () {
+            return this.replyEvents.size();
+        }
+
+        /**
+         * Allows to know how many events of type 'REPLY' whose identifier matches a filter are waiting for their response.
+         * @param filter The filter of the identifiers.
+         * @return The number of events.
+         */
+        public final int getPendingReplies (final LongPredicate filter) {
+            return this.replyEvents.count(filter);
         }
 
         /**
@@ -207,12 +508,26 @@ public final class CatcherManager {
          *
          * @see Message
          */
+        @SuppressWarnings("unchecked")
         public final void handleMessage (final Message message, final ClientLogged client) {
-            final Set<BiConsumer<MessageEvent.SERVER, ClientLogged>> candidates = messageEvents.get(message.getChannel());
-            if (candidates != null) {
-                for (final BiConsumer<MessageEvent.SERVER, ClientLogged> consumer : candidates)
-                    consumer.accept(new MessageEvent.SERVER(client, message), client);
-            }
+            final Object[] candidates = this.messageEvents.get(message.getChannel());
+            if (candidates.length == 0)
+                return;
+
+            final MessageEvent.SERVER event = new MessageEvent.SERVER(client, message);
+            final Runnable task = () -> {
+                final long start = System.nanoTime();
+                try {
+                    for (final Object consumer : candidates)
+                        ((BiConsumer<MessageEvent.SERVER, ClientLogged>) consumer).accept(event, client);
+                } finally {
+                    timed(this.metrics, start);
+                }
+            };
+            if (this.dispatcher == null)
+                task.run();
+            else
+                this.dispatcher.execute((this.order == DispatchOrder.SENDER) ? client : message.getChannel(), task);
         }
 
         /**
@@ -222,12 +537,87 @@ public final class CatcherManager {
          *
          * @see Action
          */
+        @SuppressWarnings("unchecked")
         public final void handleAction (final Action action, final ClientLogged client) {
-            final Set<BiConsumer<ActionEvent.SERVER, ClientLogged>> candidates = actionEvents.get(action.getName());
-            if (candidates != null) {
-                for (final BiConsumer<ActionEvent.SERVER, ClientLogged> consumer : candidates)
-                    consumer.accept(new ActionEvent.SERVER(client, action), client);
-            }
+            final Object[] candidates = this.actionEvents.get(action.getName());
+            if (candidates.length == 0)
+                return;
+
+            final ActionEvent.SERVER event = new ActionEvent.SERVER(client, action);
+            final Runnable task = () -> {
+                final long start = System.nanoTime();
+                try {
+                    for (final Object consumer : candidates)
+                        ((BiConsumer<ActionEvent.SERVER, ClientLogged>) consumer).accept(event, client);
+                } finally {
+                    timed(this.metrics, start);
+                }
+            };
+            if (this.dispatcher == null)
+                task.run();
+            else
+                this.dispatcher.execute((this.order == DispatchOrder.SENDER) ? client : action.getName(), task);
+        }
+
+        /**
+         * Allows to send a 'CHUNK' request to events that listen to the same channel.
+         * The chunks of a stream are handled in their order, like the messages of a same sender or channel.
+         * @param chunk The chunk request that must be taken into account by the events.
+         * @param client An instance of the client.
+         * @param handled Executed once the events are over, even without event: gives a credit back to the sender.
+         *
+         * @see Chunk
+         */
+        @SuppressWarnings("unchecked")
+        public final void handleChunk (final Chunk chunk, final ClientLogged client, final Runnable handled) {
+            final Object[] candidates = this.streamEvents.get(chunk.getChannel());
+            final StreamEvent.SERVER event = (candidates.length != 0) ? new StreamEvent.SERVER(client, chunk) : null;
+            final Runnable task = () -> {
+                final long start = System.nanoTime();
+                try {
+                    for (final Object consumer : candidates)
+                        ((BiConsumer<StreamEvent.SERVER, ClientLogged>) consumer).accept(event, client);
+                } finally {
+                    timed(this.metrics, start);
+                    handled.run();
+                }
+            };
+            if (this.dispatcher == null)
+                task.run();
+            else
+                this.dispatcher.execute((this.order == DispatchOrder.SENDER) ? client : chunk.getChannel(), task);
+        }
+
+        /**
+         * Allows to tell the progress of a file to the events that listen to the same channel.
+         * The events of a file are handled in their order, like the messages of a same sender or channel.
+         * @param request The request announcing the file.
+         * @param path The file written on disk.
+         * @param transferred The number of bytes written so far.
+         * @param client An instance of the client.
+         *
+         * @see FileTransfer
+         */
+        @SuppressWarnings("unchecked")
+        public final void handleFile (final FileTransfer request, final Path path, final long transferred, final ClientLogged client) {
+            final Object[] candidates = this.fileEvents.get(request.getChannel());
+            if (candidates.length == 0)
+                return;
+
+            final FileEvent.SERVER event = new FileEvent.SERVER(client, request, path, transferred);
+            final Runnable task = () -> {
+                final long start = System.nanoTime();
+                try {
+                    for (final Object consumer : candidates)
+                        ((BiConsumer<FileEvent.SERVER, ClientLogged>) consumer).accept(event, client);
+                } finally {
+                    timed(this.metrics, start);
+                }
+            };
+            if (this.dispatcher == null)
+                task.run();
+            else
+                this.dispatcher.execute((this.order == DispatchOrder.SENDER) ? client : request.getChannel(), task);
         }
 
         /**
@@ -237,13 +627,21 @@ public final class CatcherManager {
          * @see Reply
          */
         public final void handleReply (final Reply reply) {
-            final BiConsumer<Reply, Boolean> candidate = replyEvents.get(reply.getIdRequest());
-            if (candidate != null) {
+            final BiConsumer<Reply, Boolean> candidate = this.replyEvents.answer(reply.getIdRequest());
+            if (candidate != null)
                 candidate.accept(reply, true);
-                replyEvents.remove(reply.getIdRequest());
-            }
         }
     }
 
 
+    /**
+     * Allows to record the execution time of the events of a request.
+     * @param metrics The metrics, or null.
+     * @param start The time before the first event, from System.nanoTime().
+     */
+    private static void timed (final Metrics metrics, final long start) {
+        if (metrics != null)
+            metrics.getHandlerTimes().record(System.nanoTime() - start);
+    }
+
 }
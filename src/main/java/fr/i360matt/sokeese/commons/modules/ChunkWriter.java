@@ -0,0 +1,143 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.commons.requests.Chunk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Allows to send a stream as chunks, with a credit-based flow control.
+ * The writer starts with a window of credits and spends one per chunk,
+ * the receiver gives one back each time a chunk is handled: a slow receiver slows the sender down
+ * instead of piling the chunks up in the buffers.
+ *
+ * Each chunk is written on its own, the other requests of the connection are written between them.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @see Chunk
+ */
+public final class ChunkWriter implements Runnable {
+
+    /**
+     * Writes a chunk on the connection of the stream.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void write (final Chunk chunk) throws IOException;
+    }
+
+    private final long id;
+    private final String channel;
+    private final InputStream input;
+    private final int chunkSize;
+    private final int delay;
+    private final Sink sink;
+
+    private final Semaphore credits;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private volatile Throwable failure;
+
+
+    /**
+     * @param id The identifier of the stream.
+     * @param channel The channel of the stream.
+     * @param input The bytes to send, closed once sent.
+     * @param chunkSize The maximum number of bytes of a chunk.
+     * @param window The number of chunks which can be sent before the first credit.
+     * @param delay The maximum time to wait for a credit, in milliseconds.
+     * @param sink Writes the chunks.
+     */
+    public ChunkWriter (final long id, final String channel, final InputStream input, final int chunkSize, final int window, final int delay, final Sink sink) {
+        this.id = id;
+        this.channel = channel;
+        this.input = input;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.delay = delay;
+        this.sink = sink;
+        this.credits = new Semaphore(Math.max(1, window));
+    }
+
+    /**
+     * Allows to send the chunks, returns once the stream is over.
+     */
+    @Override
+    public void run () {
+        int index = 0;
+        try (final InputStream input = this.input) {
+            final byte[] buffer = new byte[this.chunkSize];
+            boolean last = false;
+            while (!last) {
+                int length = 0;
+                int read = 0;
+                while (length < buffer.length && (read = input.read(buffer, length, buffer.length - length)) >= 0)
+                    length += read;
+                last = read < 0;
+
+                if (!this.credits.tryAcquire(this.delay, TimeUnit.MILLISECONDS))
+                    throw new TimeoutException("No credit after " + this.delay + "ms");
+                if (this.failure != null)
+                    throw this.failure;
+
+                final Chunk chunk = this.chunk(index++, last);
+                chunk.setData(Arrays.copyOf(buffer, length)); // may wait in a queue: the buffer is reused
+                this.sink.write(chunk);
+            }
+            this.future.complete(null);
+        } catch (final Throwable e) {
+            this.future.completeExceptionally(e);
+            try {
+                this.sink.write(this.chunk(index, true)); // no data: aborted
+            } catch (final IOException ignored) { }
+        }
+    }
+
+    private Chunk chunk (final int index, final boolean last) {
+        final Chunk chunk = new Chunk();
+        chunk.setIdStream(this.id);
+        chunk.setChannel(this.channel);
+        chunk.setIndex(index);
+        chunk.setLast(last);
+        return chunk;
+    }
+
+    /**
+     * Allows to send more chunks.
+     * @param amount The number of chunks.
+     */
+    public void grant (final int amount) {
+        if (amount > 0)
+            this.credits.release(amount);
+    }
+
+    /**
+     * Allows to stop the stream, for example when its connection is lost.
+     * @param cause The cause given to the future.
+     */
+    public void fail (final Throwable cause) {
+        this.failure = cause;
+        this.credits.release(); // wakes the writer up
+    }
+
+    /**
+     * Allows to retrieve the identifier of the stream.
+     * @return The stream ID.
+     */
+    public long getId () {
+        return this.id;
+    }
+
+    /**
+     * Allows to retrieve the future of the stream.
+     * @return Completed once the last chunk is written, or exceptionally if the stream is aborted.
+     */
+    public CompletableFuture<Void> getFuture () {
+        return this.future;
+    }
+}
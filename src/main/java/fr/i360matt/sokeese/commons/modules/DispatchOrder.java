@@ -0,0 +1,24 @@
+package fr.i360matt.sokeese.commons.modules;
+
+/**
+ * Allows to choose which events keep their order when they are dispatched on an executor.
+ * The events with the same key are handled one after the other, the others in parallel.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @see CatcherManager
+ */
+public enum DispatchOrder {
+
+    /**
+     * The requests of a same sender are handled in their order of arrival.
+     */
+    SENDER,
+
+    /**
+     * The requests of a same channel (or action name) are handled in their order of arrival.
+     */
+    CHANNEL
+
+}
@@ -0,0 +1,164 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.commons.requests.FileTransfer;
+import fr.i360matt.sokeese.commons.transport.FileRegion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Allows to receive the files sent on a connection, their segments are written to disk as they arrive.
+ * Each file is written to a new temporary file, the listener is told of its progress:
+ * once when it is opened, once per segment, then once when it is aborted.
+ *
+ * Only the thread reading the connection opens and writes the files.
+ * A file announced again under an identifier being received, or beyond the maximum of files received at once,
+ * is skipped like the files of a channel without listener: nothing is written to disk for it.
+ *
+ * @author 360matt
+ * @version 1.1.0
+ *
+ * @see FileSender
+ */
+public final class FileReceiver implements Closeable {
+
+    /**
+     * Told of the progress of a file.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void progress (final FileTransfer request, final Path path, final long transferred);
+    }
+
+    private final Path directory;
+    private final Predicate<String> accepted;
+    private final Listener listener;
+    private final int maxFiles;
+    private final ConcurrentHashMap<Long, Receiving> files = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param directory The directory of the received files, null for the default temporary directory.
+     * @param maxFiles The maximum of files received at once, the next ones are skipped. 0 or less: no limit.
+     * @param accepted Tells if the files of a channel must be received, the others are skipped.
+     * @param listener Told of the progress of the files.
+     */
+    public FileReceiver (final Path directory, final int maxFiles, final Predicate<String> accepted, final Listener listener) {
+        this.directory = directory;
+        this.maxFiles = maxFiles;
+        this.accepted = accepted;
+        this.listener = listener;
+    }
+
+    /**
+     * Allows to start, or to abort, the reception of a file.
+     * @param request The request announcing the file.
+     */
+    public void open (final FileTransfer request) throws IOException {
+        if (request.isAborted()) {
+            final Receiving receiving = this.files.remove(request.getIdStream());
+            if (receiving != null)
+                this.abort(receiving, request);
+            return;
+        }
+        if (request.getSize() < 0 || !this.accepted.test(request.getChannel()))
+            return;
+        if (this.files.containsKey(request.getIdStream()) || (this.maxFiles > 0 && this.files.size() >= this.maxFiles))
+            return; // its segments are skipped too, or written to the file already received under this identifier
+
+        final Path path = (this.directory != null)
+                ? Files.createTempFile(this.directory, "sokeese-", ".part")
+                : Files.createTempFile("sokeese-", ".part");
+        final Receiving receiving = new Receiving(request, path, FileChannel.open(path, StandardOpenOption.WRITE));
+        if (request.getSize() == 0) {
+            receiving.file.close();
+        } else if (this.files.putIfAbsent(request.getIdStream(), receiving) != null) {
+            receiving.file.close(); // announced twice at once: the first one is kept
+            Files.deleteIfExists(path);
+            return;
+        }
+        this.listener.progress(request, path, 0);
+    }
+
+    /**
+     * Allows to write a segment to its file, the segments of an unknown transfer are skipped.
+     * @param payload The payload of the segment: the identifier of the transfer then the bytes.
+     */
+    public void write (final ByteBuffer payload) throws IOException {
+        if (payload.remaining() < FileRegion.PREFIX)
+            throw new IOException("Invalid segment");
+        final long id = payload.getLong();
+        final Receiving receiving = this.files.get(id);
+        if (receiving == null)
+            return;
+
+        try {
+            if (receiving.transferred + payload.remaining() > receiving.request.getSize())
+                throw new IOException("The file is longer than announced");
+            while (payload.hasRemaining())
+                receiving.transferred += receiving.file.write(payload, receiving.transferred);
+        } catch (final IOException e) {
+            this.files.remove(id);
+            this.abort(receiving, aborted(receiving.request));
+            return;
+        }
+
+        if (receiving.transferred == receiving.request.getSize()) {
+            this.files.remove(id);
+            receiving.file.close();
+        }
+        this.listener.progress(receiving.request, receiving.path, receiving.transferred);
+    }
+
+    /**
+     * Allows to abort the files being received, once the connection is lost.
+     */
+    @Override
+    public void close () {
+        for (final Long id : this.files.keySet()) {
+            final Receiving receiving = this.files.remove(id);
+            if (receiving != null)
+                this.abort(receiving, aborted(receiving.request));
+        }
+    }
+
+    private void abort (final Receiving receiving, final FileTransfer request) {
+        try {
+            receiving.file.close();
+            Files.deleteIfExists(receiving.path);
+        } catch (final IOException ignored) { }
+        this.listener.progress(request, receiving.path, receiving.transferred);
+    }
+
+    private static FileTransfer aborted (final FileTransfer request) {
+        final FileTransfer copy = new FileTransfer();
+        copy.setIdStream(request.getIdStream());
+        copy.setSender(request.getSender());
+        copy.setChannel(request.getChannel());
+        copy.setName(request.getName());
+        copy.setSize(request.getSize());
+        copy.setAborted(true);
+        return copy;
+    }
+
+
+    private static final class Receiving {
+        private final FileTransfer request;
+        private final Path path;
+        private final FileChannel file;
+        private long transferred;
+
+        private Receiving (final FileTransfer request, final Path path, final FileChannel file) {
+            this.request = request;
+            this.path = path;
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.commons.requests.FileTransfer;
+import fr.i360matt.sokeese.commons.transport.FileRegion;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Allows to send a file as segments written straight from the file to the socket.
+ * The file is announced by a FileTransfer request, then its segments are given one at a time:
+ * the other requests of the connection are written between them.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @see FileTransfer
+ * @see FileRegion
+ */
+public final class FileSender {
+
+    private final long id;
+    private final String channel;
+    private final String name;
+    private final FileChannel file;
+    private final long size;
+    private final int segmentSize;
+
+    private long position; // only used by the writer of the segments
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+
+    /**
+     * Allows to open the file to send.
+     * @param id The identifier of the transfer.
+     * @param channel The channel of the transfer.
+     * @param path The file, its size must not change during the transfer.
+     * @param segmentSize The maximum number of bytes of a segment.
+     */
+    public FileSender (final long id, final String channel, final Path path, final int segmentSize) throws IOException {
+        this.id = id;
+        this.channel = channel;
+        this.name = String.valueOf(path.getFileName());
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = this.file.size();
+        this.segmentSize = Math.max(1, Math.min(segmentSize, 16 * 1024 * 1024));
+    }
+
+    /**
+     * Allows to create the request announcing the file.
+     * @param aborted True for the request telling the receiver that no segment will follow.
+     * @return The request.
+     */
+    public FileTransfer getRequest (final boolean aborted) {
+        final FileTransfer request = new FileTransfer();
+        request.setIdStream(this.id);
+        request.setChannel(this.channel);
+        request.setName(this.name);
+        request.setSize(this.size);
+        request.setAborted(aborted);
+        return request;
+    }
+
+    /**
+     * Allows to retrieve the next segment of the file.
+     * @param written Executed once the segment is written, may be null.
+     * @return The segment, null once the whole file is given.
+     */
+    public FileRegion next (final Runnable written) {
+        if (this.position >= this.size)
+            return null;
+        final int length = (int) Math.min(this.segmentSize, this.size - this.position);
+        final FileRegion region = new FileRegion(this.id, this.file, this.position, length, written);
+        this.position += length;
+        return region;
+    }
+
+    /**
+     * Allows to end the transfer once the last segment is written.
+     */
+    public void complete () {
+        this.closeFile();
+        this.future.complete(null);
+    }
+
+    /**
+     * Allows to stop the transfer, for example when its connection is lost.
+     * @param cause The cause given to the future.
+     * @return False if the transfer was already over.
+     */
+    public boolean fail (final Throwable cause) {
+        this.closeFile();
+        return this.future.completeExceptionally(cause);
+    }
+
+    private void closeFile () {
+        try {
+            this.file.close();
+        } catch (final IOException ignored) { }
+    }
+
+    /**
+     * Allows to retrieve the identifier of the transfer.
+     * @return The stream ID.
+     */
+    public long getId () {
+        return this.id;
+    }
+
+    /**
+     * Allows to retrieve the future of the transfer.
+     * @return Completed once the last segment is written, or exceptionally if the transfer is aborted.
+     */
+    public CompletableFuture<Void> getFuture () {
+        return this.future;
+    }
+}
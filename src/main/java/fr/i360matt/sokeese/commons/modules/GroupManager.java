@@ -0,0 +1,301 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.server.ClientLogged;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Allows to list the sessions that joined each group of the server.
+ * A request sent to '#name' is delivered to the members of the group 'name'.
+ *
+ * Each session member of a group holds a dense slot, a slot is reused once its session has left all its groups.
+ * The members of a group are a bitset over these slots, updated in place:
+ * a join or a leave sets or clears one bit, whatever the size of the group,
+ * and sending to a group is one lookup then a loop over the words of its bitset, without lock nor allocation.
+ * A slot may be reused while a request is sent: each session found is checked to still hold its slot
+ * and to still be a member, so the new owner of a slot never receives the requests of a group it has not joined.
+ *
+ * @author 360matt
+ * @version 1.2.0
+ *
+ * @see ClientLogged#joinGroup(String)
+ */
+public class GroupManager implements Closeable {
+
+    /**
+     * The prefix of the recipients naming a group.
+     */
+    public static final String PREFIX = "#";
+
+    private static final int INITIAL_SLOTS = 64;
+
+    /**
+     * Visits the members of a group, see forEachMember().
+     * @param <A> The argument given to every member.
+     * @param <S> The state passed from a member to the next one.
+     */
+    @FunctionalInterface
+    public interface Visitor<A, S> {
+        S visit (final ClientLogged member, final A argument, final S state);
+    }
+
+    private final ConcurrentHashMap<String, Group> groups = new ConcurrentHashMap<>(); // by recipient: '#name'
+    private volatile ClientLogged[] sessions = new ClientLogged[INITIAL_SLOTS]; // by slot, written under the lock
+
+    private final Lock lock = new ReentrantLock(); // the joins and the leaves, one at a time
+    private final ConcurrentHashMap<ClientLogged, Integer> slots = new ConcurrentHashMap<>(); // written under the lock, read by the senders
+    private int[] joined = new int[INITIAL_SLOTS]; // groups joined by the session of each slot, guarded by the lock
+    private int[] free = new int[INITIAL_SLOTS]; // slots to reuse, guarded by the lock
+    private int freeCount;
+    private int nextSlot;
+    private volatile boolean closed = false;
+
+    /**
+     * Allows to know whether a recipient names a group.
+     * @param recipient The recipient of a request.
+     * @return If it starts with '#'.
+     */
+    public static boolean isGroup (final String recipient) {
+        return recipient.startsWith(PREFIX);
+    }
+
+    /**
+     * Allows to add a session to a group, the group is created by its first member.
+     * The limit is checked and the session added atomically, even if many sessions join at once.
+     * @param client The session.
+     * @param group The name of the group, without '#'.
+     * @param maxMembers The maximum number of sessions in the group.
+     * @return If the session is a member of the group, false if the group is full.
+     */
+    public final boolean join (final ClientLogged client, final String group, final int maxMembers) {
+        this.lock.lock();
+        try {
+            if (this.closed)
+                return false;
+
+            final String name = PREFIX + group;
+            Group current = this.groups.get(name);
+            Integer slot = this.slots.get(client);
+            if (current != null && slot != null && current.contains(slot))
+                return true;
+            if (((current != null) ? current.size : 0) >= maxMembers)
+                return false;
+
+            if (slot == null)
+                slot = this.allocate(client);
+            if (current == null) {
+                current = new Group();
+                this.groups.put(name, current);
+            }
+            current.add(slot);
+            this.joined[slot]++;
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Allows to remove a session from a group, the group is deleted with its last member.
+     * @param client The session.
+     * @param group The name of the group, without '#'.
+     * @return If the session was a member of the group.
+     */
+    public final boolean leave (final ClientLogged client, final String group) {
+        this.lock.lock();
+        try {
+            final String name = PREFIX + group;
+            final Group current = this.groups.get(name);
+            final Integer slot = this.slots.get(client);
+            if (current == null || slot == null || !current.contains(slot))
+                return false;
+
+            current.remove(slot);
+            if (current.size == 0)
+                this.groups.remove(name);
+            if (--this.joined[slot] == 0)
+                this.release(client, slot);
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Allows to give a slot to a session joining its first group, under the lock.
+     * @param client The session.
+     * @return The slot.
+     */
+    private int allocate (final ClientLogged client) {
+        final int slot = (this.freeCount > 0) ? this.free[--this.freeCount] : this.nextSlot++;
+        ClientLogged[] sessions = this.sessions;
+        if (slot >= sessions.length) {
+            sessions = Arrays.copyOf(sessions, sessions.length * 2);
+            this.joined = Arrays.copyOf(this.joined, sessions.length);
+            this.sessions = sessions;
+        }
+        sessions[slot] = client; // published by the bit set afterwards
+        this.slots.put(client, slot);
+        return slot;
+    }
+
+    /**
+     * Allows to free the slot of a session which has left its last group, under the lock.
+     * @param client The session.
+     * @param slot Its slot.
+     */
+    private void release (final ClientLogged client, final int slot) {
+        this.sessions[slot] = null;
+        this.slots.remove(client);
+        if (this.freeCount == this.free.length)
+            this.free = Arrays.copyOf(this.free, this.free.length * 2);
+        this.free[this.freeCount++] = slot;
+    }
+
+    /**
+     * Allows to visit the members of a group to deliver a request, on the hot path.
+     * A session joining or leaving meanwhile may be visited or not.
+     * @param recipient The recipient of the request: '#name'.
+     * @param argument Given to every member, such as the request.
+     * @param state Given to the first member, then the state returned by each member is given to the next one.
+     * @param visitor Called for each member.
+     * @param <A> The type of the argument.
+     * @param <S> The type of the state.
+     * @return The state returned by the last member, the initial state without member.
+     */
+    public final <A, S> S forEachMember (final String recipient, final A argument, S state, final Visitor<A, S> visitor) {
+        final Group group = this.groups.get(recipient);
+        if (group == null)
+            return state;
+
+        final AtomicLongArray bits = group.bits;
+        for (int i = 0; i < bits.length(); i++) {
+            long word = bits.get(i);
+            if (word == 0)
+                continue;
+            final ClientLogged[] sessions = this.sessions; // read after the bits: holds the sessions of their slots
+            while (word != 0) {
+                final int slot = (i << 6) | Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                final ClientLogged member = (slot < sessions.length) ? sessions[slot] : null;
+                if (member != null && this.isMember(group, member, slot))
+                    state = visitor.visit(member, argument, state);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Allows to check a session read from its slot during a visit, the slot may have been reused meanwhile.
+     * The slot is checked before the bit: a bit set after a new session took the slot is the bit of that session.
+     * @param group The visited group.
+     * @param member The session read from the slot, maybe from an older array.
+     * @param slot The slot.
+     * @return If the session still holds the slot and the slot is still in the group.
+     */
+    private boolean isMember (final Group group, final ClientLogged member, final int slot) {
+        final Integer current = this.slots.get(member);
+        return current != null && current == slot && group.contains(slot);
+    }
+
+    /**
+     * Allows to retrieve the members of a group.
+     * @param group The name of the group, without '#'.
+     * @return A read-only snapshot of the members at this time.
+     */
+    public final List<ClientLogged> getMembers (final String group) {
+        final List<ClientLogged> members = this.forEachMember(PREFIX + group, null, new ArrayList<>(), (member, ignored, list) -> {
+            list.add(member);
+            return list;
+        });
+        return Collections.unmodifiableList(members);
+    }
+
+    /**
+     * Allows you to know how many sessions are members of a group.
+     * @param group The name of the group, without '#'.
+     * @return The number of members, 0 if the group does not exist.
+     */
+    public final int getMemberCount (final String group) {
+        final Group current = this.groups.get(PREFIX + group);
+        return (current != null) ? current.size : 0;
+    }
+
+    /**
+     * Allows to retrieve the names of the groups having at least one member.
+     * @return The names, without '#'.
+     */
+    public final Set<String> getGroups () {
+        return this.groups.keySet().stream().map(name -> name.substring(PREFIX.length())).collect(Collectors.toSet());
+    }
+
+    /**
+     * Allows to find out if a group has at least one member.
+     * @param group The name of the group, without '#'.
+     * @return Whether the group exists or not.
+     */
+    public final boolean exist (final String group) {
+        return this.groups.containsKey(PREFIX + group);
+    }
+
+    /**
+     * Allows to delete all the groups.
+     */
+    @Override
+    public void close () {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.groups.clear();
+            this.slots.clear();
+            this.sessions = new ClientLogged[0];
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+
+    /**
+     * The members of a group: one bit per slot, written under the lock of the manager.
+     */
+    private static final class Group {
+        private volatile AtomicLongArray bits = new AtomicLongArray(1); // replaced by a larger one when needed
+        private volatile int size;
+
+        private boolean contains (final int slot) {
+            final AtomicLongArray bits = this.bits;
+            final int index = slot >>> 6;
+            return index < bits.length() && (bits.get(index) & (1L << slot)) != 0;
+        }
+
+        private void add (final int slot) {
+            final int index = slot >>> 6;
+            AtomicLongArray bits = this.bits;
+            if (index >= bits.length()) {
+                final AtomicLongArray larger = new AtomicLongArray(Math.max(index + 1, bits.length() * 2));
+                for (int i = 0; i < bits.length(); i++)
+                    larger.set(i, bits.get(i));
+                this.bits = bits = larger;
+            }
+            bits.set(index, bits.get(index) | (1L << slot));
+            this.size++;
+        }
+
+        private void remove (final int slot) {
+            final AtomicLongArray bits = this.bits;
+            final int index = slot >>> 6;
+            bits.set(index, bits.get(index) & ~(1L << slot));
+            this.size--;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allows to store the handlers of each channel (or action name) for the CatcherManager.
+ * Handlers are registered rarely and looked up for every request, so each channel
+ * holds an immutable array which is replaced on registration (copy-on-write):
+ * a lookup never locks and a dispatch is a plain loop over the array.
+ *
+ * A name can also be a pattern of segments separated by '.':
+ * '*' matches exactly one segment ('orders.*' matches 'orders.new', not 'orders.eu.new'),
+ * '>' as last segment matches one or more segments ('metrics.eu.>' matches 'metrics.eu.cpu' and 'metrics.eu.cpu.max').
+ * The patterns are stored in a trie of segments, so matching a channel walks its segments
+ * whatever the number of patterns registered. The handlers found for a channel are kept,
+ * so the next requests of this channel only cost a lookup, as without pattern.
+ * They are kept in two generations: a channel found in the older one moves to the recent one,
+ * and the older one is forgotten once the recent one is full. The channels used often stay,
+ * a flow of channels used once (such as one per request) only replaces the others little by little.
+ *
+ * @author 360matt
+ * @version 1.2.0
+ *
+ * @see CatcherManager
+ */
+final class HandlerTable<T> {
+    private static final Object[] EMPTY = new Object[0];
+    private static final int MAX_MATCHES = 4096; // channels whose handlers are kept, in two generations of half
+
+    private final ConcurrentHashMap<String, Object[]> handlers = new ConcurrentHashMap<>();
+
+    private final Lock patternsLock = new ReentrantLock(); // the trie is written by one registration at a time
+    private volatile Node patterns; // null until a pattern is registered: the exact lookup alone
+    private volatile Matches matches = new Matches(); // replaced at each registration
+
+    /**
+     * Allows to register a handler, a handler already registered under this name is ignored.
+     * @param name The name of the channel or the action, or a pattern with '*' and '>' segments.
+     * @param handler The handler.
+     * @throws IllegalArgumentException If '>' is not the last segment of the pattern.
+     */
+    void add (final String name, final T handler) {
+        if (isPattern(name)) {
+            this.addPattern(name, handler);
+        } else {
+            this.handlers.compute(name, (key, current) -> append(current, handler));
+        }
+        if (this.patterns != null)
+            this.matches = new Matches(); // the lookups started before may keep the previous one
+    }
+
+    private static boolean isPattern (final String name) {
+        return name.equals("*") || name.equals(">")
+                || name.startsWith("*.") || name.endsWith(".*") || name.contains(".*.")
+                || name.startsWith(">.") || name.endsWith(".>") || name.contains(".>.");
+    }
+
+    private static Object[] append (final Object[] current, final Object handler) {
+        if (current == null)
+            return new Object[] { handler };
+        for (final Object candidate : current)
+            if (candidate.equals(handler))
+                return current;
+
+        final Object[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = handler;
+        return updated;
+    }
+
+    private void addPattern (final String pattern, final T handler) {
+        final String[] segments = pattern.split("\\.", -1);
+        this.patternsLock.lock();
+        try {
+            Node node = (this.patterns != null) ? this.patterns : new Node();
+            final Node root = node;
+            for (int i = 0; i < segments.length; i++) {
+                final String segment = segments[i];
+                if (segment.equals(">")) {
+                    if (i != segments.length - 1)
+                        throw new IllegalArgumentException("'>' must be the last segment: " + pattern);
+                    node.rest = append(node.rest, handler);
+                    this.patterns = root;
+                    return;
+                }
+                if (segment.equals("*")) {
+                    if (node.any == null)
+                        node.any = new Node();
+                    node = node.any;
+                } else {
+                    node = node.children.computeIfAbsent(segment, key -> new Node());
+                }
+            }
+            node.handlers = append(node.handlers, handler);
+            this.patterns = root;
+        } finally {
+            this.patternsLock.unlock();
+        }
+    }
+
+    /**
+     * Allows to retrieve the handlers of a name, the returned array must not be modified.
+     * The handlers registered under this exact name come first, then those of the matching patterns.
+     * @param name The name of the channel or the action.
+     * @return The handlers, an empty array if there are none.
+     */
+    Object[] get (final String name) {
+        if (name == null)
+            return EMPTY;
+        final Node root = this.patterns;
+        if (root == null) {
+            final Object[] current = this.handlers.get(name);
+            return (current != null) ? current : EMPTY;
+        }
+
+        final Matches matches = this.matches;
+        Object[] found = matches.get(name);
+        if (found == null) {
+            found = this.match(root, name);
+            matches.put(name, found);
+        }
+        return found;
+    }
+
+    private Object[] match (final Node root, final String name) {
+        final Object[] exact = this.handlers.get(name);
+        final List<Object> found = new ArrayList<>();
+        if (exact != null)
+            found.addAll(Arrays.asList(exact));
+        match(root, name, 0, found);
+
+        if (found.isEmpty())
+            return EMPTY;
+        return (exact != null && found.size() == exact.length) ? exact : found.toArray();
+    }
+
+    /**
+     * Allows to collect the handlers of the patterns matching the segments of a name from a node of the trie.
+     * Each node is followed by its exact segment and by '*', so the walk depends on the number of segments only.
+     * @param node The node of the segments already matched.
+     * @param name The name.
+     * @param from The start of the next segment, beyond the length once all segments are matched.
+     * @param found The handlers found.
+     */
+    private static void match (final Node node, final String name, final int from, final List<Object> found) {
+        if (from > name.length()) {
+            found.addAll(Arrays.asList(node.handlers));
+            return;
+        }
+        found.addAll(Arrays.asList(node.rest)); // '>' takes this segment and the next ones
+
+        int end = name.indexOf('.', from);
+        if (end < 0)
+            end = name.length();
+        final Node child = node.children.get(name.substring(from, end));
+        if (child != null)
+            match(child, name, end + 1, found);
+        final Node any = node.any;
+        if (any != null)
+            match(any, name, end + 1, found);
+    }
+
+    /**
+     * Allows to remove every handler.
+     */
+    void clear () {
+        this.handlers.clear();
+        this.patternsLock.lock();
+        try {
+            this.patterns = null;
+            this.matches = new Matches();
+        } finally {
+            this.patternsLock.unlock();
+        }
+    }
+
+
+    /**
+     * The handlers found for the channels, in two generations approximating the least recently used channels.
+     * The lookups never lock, the generations are swapped by one thread at a time.
+     */
+    private static final class Matches {
+        private final Lock rotation = new ReentrantLock();
+        private volatile ConcurrentHashMap<String, Object[]> recent = new ConcurrentHashMap<>();
+        private volatile ConcurrentHashMap<String, Object[]> older = new ConcurrentHashMap<>();
+
+        private Object[] get (final String name) {
+            final Object[] found = this.recent.get(name);
+            if (found != null)
+                return found;
+            final Object[] old = this.older.get(name);
+            if (old != null)
+                this.put(name, old); // still used: kept with the recent ones
+            return old;
+        }
+
+        private void put (final String name, final Object[] found) {
+            final ConcurrentHashMap<String, Object[]> recent = this.recent;
+            recent.put(name, found);
+            if (recent.size() >= MAX_MATCHES / 2 && this.rotation.tryLock()) {
+                try {
+                    if (this.recent == recent) { // not swapped meanwhile
+                        this.older = recent;
+                        this.recent = new ConcurrentHashMap<>();
+                    }
+                } finally {
+                    this.rotation.unlock();
+                }
+            }
+        }
+
+        private int size () {
+            return this.recent.size() + this.older.size();
+        }
+    }
+
+    /**
+     * Allows to know how many channels have their handlers kept, at most about 4096.
+     * @return The number of channels, counted twice when in both generations.
+     */
+    int cached () {
+        return this.matches.size();
+    }
+
+    /**
+     * A node of the trie: the patterns whose segments lead to it.
+     */
+    private static final class Node {
+        private final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>();
+        private volatile Node any; // the next segment is '*'
+        private volatile Object[] rest = EMPTY; // the handlers of the patterns ending with '>' here
+        private volatile Object[] handlers = EMPTY; // the handlers of the patterns ending here
+    }
+}
@@ -0,0 +1,78 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.commons.requests.Reply;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * Reply event which completes a CompletableFuture instead of calling a developer callback.
+ * The future completes with the reply, or exceptionally with a TimeoutException after the delay,
+ * or with the cause of the disconnection.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @see CatcherManager
+ */
+public final class ReplyFuture implements BiConsumer<Reply, Boolean> {
+    private final CompletableFuture<Reply> future = new CompletableFuture<>();
+    private final int delay;
+    private final Executor executor;
+
+    /**
+     * @param delay The maximum waiting time, only used in the message of the TimeoutException.
+     * @param executor The executor which completes the future, or null to complete it on the thread receiving the reply.
+     */
+    public ReplyFuture (final int delay, final Executor executor) {
+        this.delay = delay;
+        this.executor = executor;
+    }
+
+    /**
+     * Allows to retrieve the future.
+     * @return The future completed by the reply.
+     */
+    public CompletableFuture<Reply> getFuture () {
+        return this.future;
+    }
+
+    /**
+     * Called by the CatcherManager with the reply, or with (null, false) once the delay has expired.
+     */
+    @Override
+    public void accept (final Reply reply, final Boolean received) {
+        if (received)
+            this.complete(reply, null);
+        else
+            this.complete(null, new TimeoutException("No reply after " + this.delay + "ms"));
+    }
+
+    /**
+     * Allows to complete the future exceptionally.
+     * @param cause The cause, for example the disconnection.
+     */
+    public void fail (final Throwable cause) {
+        this.complete(null, cause);
+    }
+
+    private void complete (final Reply reply, final Throwable cause) {
+        if (this.executor != null) {
+            try {
+                this.executor.execute(() -> this.completeNow(reply, cause));
+                return;
+            } catch (final RejectedExecutionException ignored) { } // completes here instead of never
+        }
+        this.completeNow(reply, cause);
+    }
+
+    private void completeNow (final Reply reply, final Throwable cause) {
+        if (cause != null)
+            this.future.completeExceptionally(cause);
+        else
+            this.future.complete(reply);
+    }
+}
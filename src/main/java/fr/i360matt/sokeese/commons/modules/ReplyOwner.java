@@ -0,0 +1,125 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allows to follow the reply events recorded for a same owner, such as a session of the server or a connection of the client:
+ * they can be counted and failed together without scanning the events of the other owners.
+ * The events of an owner are linked through their own nodes, following them allocates nothing.
+ *
+ * Once closed, the owner refuses the new events: they are failed as soon as they are recorded.
+ *
+ * @author 360matt
+ * @version 1.1.0
+ *
+ * @see CatcherManager.SERVER#failReplyEvents(ReplyOwner, Throwable)
+ */
+public final class ReplyOwner {
+    private final Lock lock = new ReentrantLock();
+    private ReplyTable.Pending head; // guarded by the lock
+    private int size;
+    private boolean closed;
+
+    /**
+     * Allows to link an event to this owner, once it is recorded in the table.
+     * @param pending The node of the event.
+     * @return False if the owner is closed, or if the event is already removed from the table: the node is not linked then.
+     */
+    final boolean link (final ReplyTable.Pending pending) {
+        this.lock.lock();
+        try {
+            if (this.closed || pending.released)
+                return false;
+            pending.ownedPrev = null;
+            pending.ownedNext = this.head;
+            if (this.head != null)
+                this.head.ownedPrev = pending;
+            this.head = pending;
+            pending.owned = true;
+            this.size++;
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Allows to unlink an event removed from the table, it is ignored if the owner already released it.
+     * @param pending The node of the event.
+     */
+    final void unlink (final ReplyTable.Pending pending) {
+        this.lock.lock();
+        try {
+            pending.released = true; // answered before being linked: it must not be linked afterwards
+            if (!pending.owned)
+                return;
+            if (pending.ownedPrev == null)
+                this.head = pending.ownedNext;
+            else
+                pending.ownedPrev.ownedNext = pending.ownedNext;
+            if (pending.ownedNext != null)
+                pending.ownedNext.ownedPrev = pending.ownedPrev;
+            pending.ownedPrev = null;
+            pending.ownedNext = null;
+            pending.owned = false;
+            this.size--;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Allows to close the owner and to release all its events at once.
+     * @return The events linked until now, they must still be removed from the table.
+     */
+    final List<ReplyTable.Pending> close () {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            final List<ReplyTable.Pending> released = new ArrayList<>(this.size);
+            ReplyTable.Pending pending = this.head;
+            while (pending != null) {
+                final ReplyTable.Pending next = pending.ownedNext;
+                pending.ownedPrev = null;
+                pending.ownedNext = null;
+                pending.owned = false;
+                released.add(pending);
+                pending = next;
+            }
+            this.head = null;
+            this.size = 0;
+            return released;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Allows to know how many events of this owner are waiting for their response.
+     * @return The number of events.
+     */
+    public final int size () {
+        this.lock.lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Allows to know if the events of this owner have been failed.
+     * @return True once closed.
+     */
+    public final boolean isClosed () {
+        this.lock.lock();
+        try {
+            return this.closed;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.commons.metrics.LatencyHistogram;
+import fr.i360matt.sokeese.commons.requests.Reply;
+import fr.i360matt.sokeese.utils.Threads;
+import fr.i360matt.sokeese.utils.TimingWheel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Allows to correlate the replies with the requests waiting for them.
+ * The identifiers are primitive longs stored in open addressing tables (linear probing),
+ * split in stripes locked separately. The slot of an identifier holds a single node
+ * which is both the callback and its timeout in the wheel: nothing is boxed.
+ *
+ * The identifier 0 means "no reply expected", it can not be stored.
+ * Every stored callback is called exactly once: with its reply, after its delay, or when it is failed.
+ * The thread removing the node from its stripe owns the callback, whatever the state of its timeout.
+ * The node also keeps the time of the request, to record the round trip once the reply arrives.
+ *
+ * The wheel is shared by many clients and servers: its thread only removes the expired node from its stripe,
+ * the callback is then called on the executor of the owner, so a slow callback never delays the other timeouts.
+ *
+ * A callback can also be linked to a ReplyOwner, to fail the callbacks of a session without scanning the others.
+ * The stripes shrink once mostly empty, the tables stay small after a burst of requests.
+ *
+ * @author 360matt
+ * @version 1.5.0
+ *
+ * @see CatcherManager
+ */
+final class ReplyTable implements Closeable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final TimingWheel wheel;
+    private final Executor executor;
+    private final LatencyHistogram roundTrips; // null: not recorded
+    private final Stripe[] stripes;
+    private final int shift;
+    private volatile boolean closed;
+
+
+    /**
+     * Allows to create the table.
+     * @param wheel The wheel used to expire the callbacks, or null to use the wheel shared by the whole JVM.
+     * @param executor The executor calling the expired callbacks, or null to use the executor shared by the callbacks.
+     * @param roundTrips Records the delay between each request and its reply, or null.
+     */
+    ReplyTable (final TimingWheel wheel, final Executor executor, final LatencyHistogram roundTrips) {
+        this.executor = (executor != null) ? executor : Threads.callbackExecutor();
+        this.roundTrips = roundTrips;
+        if (wheel == null) {
+            this.wheel = TimingWheel.shared();
+        } else if (wheel.retain()) {
+            this.wheel = wheel;
+        } else {
+            throw new IllegalStateException("The wheel is closed");
+        }
+
+        int count = 1;
+        while (count < Runtime.getRuntime().availableProcessors() * 2)
+            count <<= 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++)
+            this.stripes[i] = new Stripe();
+        this.shift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Allows to wait for the reply of a request.
+     * @param id The identifier of the request, different from 0.
+     * @param callback Called with (reply, true) when the reply arrives, or with (null, false) on the executor after the delay.
+     * @param delay The delay in milliseconds.
+     * @return False if a callback is already waiting for this identifier, nothing is recorded then.
+     */
+    boolean put (final long id, final BiConsumer<Reply, Boolean> callback, final int delay) {
+        return this.put(id, callback, delay, null);
+    }
+
+    /**
+     * Allows to wait for the reply of a request, on behalf of an owner.
+     * @param id The identifier of the request, different from 0.
+     * @param callback Called with (reply, true) when the reply arrives, or with (null, false) on the executor after the delay.
+     * @param delay The delay in milliseconds.
+     * @param owner The owner of the callback, or null. The callback is failed at once if the owner is closed.
+     * @return False if a callback is already waiting for this identifier, nothing is recorded then.
+     */
+    boolean put (final long id, final BiConsumer<Reply, Boolean> callback, final int delay, final ReplyOwner owner) {
+        if (id == 0)
+            throw new IllegalArgumentException("The identifier 0 can not wait for a reply");
+        if (this.closed) {
+            fail(callback, new IOException("Closed before the request"));
+            return true;
+        }
+
+        final Pending pending = new Pending(this, id, callback, owner);
+        final long hash = mix(id);
+        if (!this.stripe(hash).put(id, hash, pending))
+            return false;
+
+        // linked once in its stripe: an owner closed before the link, or a table closed meanwhile, can not miss it
+        if ((owner != null && !owner.link(pending)) || this.closed) {
+            if (this.stripe(hash).remove(id, hash, pending) != null) {
+                release(pending);
+                fail(callback, new IOException("Closed before the request"));
+            }
+            return true;
+        }
+
+        try {
+            this.wheel.schedule(pending, delay);
+        } catch (final IllegalStateException e) { // closed meanwhile
+            if (this.stripe(hash).remove(id, hash, pending) != null) {
+                release(pending);
+                fail(callback, new IOException("Closed before the request", e));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Allows to remove the callback waiting for an identifier, its timeout is cancelled.
+     * @param id The identifier of the request.
+     * @return The callback, or null if nothing was waiting (or already expired).
+     */
+    BiConsumer<Reply, Boolean> remove (final long id) {
+        if (id == 0)
+            return null;
+
+        final long hash = mix(id);
+        final Pending pending = this.stripe(hash).remove(id, hash, null);
+        if (pending == null)
+            return null;
+        release(pending);
+        pending.cancel();
+        return pending.callback;
+    }
+
+    /**
+     * Allows to remove the callback waiting for an identifier because its reply has arrived,
+     * the round trip is recorded.
+     * @param id The identifier of the request.
+     * @return The callback, or null if nothing was waiting (or already expired).
+     */
+    BiConsumer<Reply, Boolean> answer (final long id) {
+        if (id == 0)
+            return null;
+
+        final long hash = mix(id);
+        final Pending pending = this.stripe(hash).remove(id, hash, null);
+        if (pending == null)
+            return null;
+        release(pending);
+        pending.cancel();
+        if (this.roundTrips != null)
+            this.roundTrips.record(System.nanoTime() - pending.start);
+        return pending.callback;
+    }
+
+    /**
+     * Allows to fail the callbacks whose identifier matches a filter, without waiting for their delay.
+     * @param filter The filter of the identifiers.
+     * @param cause Given to the ReplyFuture, the other callbacks are called with (null, false).
+     */
+    void failIf (final LongPredicate filter, final Throwable cause) {
+        for (final Stripe stripe : this.stripes) {
+            final List<Pending> removed = new ArrayList<>();
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.keys.length; i++) {
+                    final long id = stripe.keys[i];
+                    if (id != 0 && filter.test(id))
+                        removed.add(stripe.values[i]);
+                }
+                for (final Pending pending : removed)
+                    stripe.remove(pending.id, mix(pending.id), pending);
+            }
+            for (final Pending pending : removed) { // removed from the stripe here: the callback is ours
+                release(pending);
+                pending.cancel();
+                fail(pending.callback, cause);
+            }
+        }
+    }
+
+    /**
+     * Allows to fail the callbacks of an owner, without waiting for their delay.
+     * Only the callbacks of this owner are visited, the owner is closed: its next callbacks are failed at once.
+     * @param owner The owner.
+     * @param cause Given to the ReplyFuture, the other callbacks are called with (null, false).
+     */
+    void failOwner (final ReplyOwner owner, final Throwable cause) {
+        for (final Pending pending : owner.close()) {
+            final long hash = mix(pending.id);
+            if (this.stripe(hash).remove(pending.id, hash, pending) != null) { // else answered or expired meanwhile
+                pending.cancel();
+                fail(pending.callback, cause);
+            }
+        }
+    }
+
+    /**
+     * Allows to unlink a callback removed from its stripe from its owner.
+     * @param pending The node of the callback.
+     */
+    private static void release (final Pending pending) {
+        if (pending.owner != null)
+            pending.owner.unlink(pending);
+    }
+
+    /**
+     * Allows to fail a callback which will never receive its reply.
+     * @param callback The callback.
+     * @param cause Given to a ReplyFuture, the other callbacks are called with (null, false).
+     */
+    static void fail (final BiConsumer<Reply, Boolean> callback, final Throwable cause) {
+        if (callback instanceof ReplyFuture)
+            ((ReplyFuture) callback).fail(cause);
+        else
+            callback.accept(null, false);
+    }
+
+    /**
+     * Allows to know how many callbacks are waiting.
+     * @return The number of callbacks.
+     */
+    int size () {
+        int size = 0;
+        for (final Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Allows to know how many callbacks whose identifier matches a filter are waiting.
+     * @param filter The filter of the identifiers.
+     * @return The number of callbacks.
+     */
+    int count (final LongPredicate filter) {
+        int count = 0;
+        for (final Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                for (final long id : stripe.keys)
+                    if (id != 0 && filter.test(id))
+                        count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Allows to fail every callback, the wheel is released.
+     */
+    @Override
+    public void close () {
+        if (this.closed)
+            return;
+        this.closed = true;
+
+        final IOException cause = new IOException("Closed before the reply");
+        for (final Stripe stripe : this.stripes) {
+            final Pending[] values;
+            synchronized (stripe) {
+                values = stripe.values;
+                stripe.clear();
+            }
+            for (final Pending pending : values) {
+                if (pending == null)
+                    continue;
+                release(pending);
+                pending.cancel(); // may be expiring: it will not find itself in the stripe
+                fail(pending.callback, cause);
+            }
+        }
+        this.wheel.release();
+    }
+
+    private Stripe stripe (final long hash) {
+        return this.stripes[(int) (hash >>> this.shift)];
+    }
+
+    /**
+     * Finalizer of MurmurHash3: the identifiers can be sequential, their bits must be spread.
+     */
+    private static long mix (long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+
+    /**
+     * A callback waiting for its reply, it is also its own timeout in the wheel
+     * and its own link in the list of its owner.
+     */
+    static final class Pending extends TimingWheel.Timeout {
+        private final ReplyTable table;
+        private final long id;
+        private final BiConsumer<Reply, Boolean> callback;
+        private final ReplyOwner owner; // null: not followed
+        private final long start = System.nanoTime();
+        Pending ownedPrev; // guarded by the lock of the owner
+        Pending ownedNext;
+        boolean owned;
+        boolean released; // removed from the table, never linked again
+
+        private Pending (final ReplyTable table, final long id, final BiConsumer<Reply, Boolean> callback, final ReplyOwner owner) {
+            this.table = table;
+            this.id = id;
+            this.callback = callback;
+            this.owner = owner;
+        }
+
+        @Override
+        protected void expire () {
+            final long hash = mix(this.id);
+            if (this.table.stripe(hash).remove(this.id, hash, this) == null)
+                return;
+            release(this);
+            try {
+                this.table.executor.execute(this::timedOut);
+            } catch (final RejectedExecutionException e) {
+                this.timedOut(); // the executor is shut down: the callback must still be called once
+            }
+        }
+
+        private void timedOut () {
+            this.callback.accept(null, false);
+        }
+    }
+
+    /**
+     * Open addressing table with linear probing, guarded by its own monitor.
+     * A key of 0 marks an empty slot, the removals shift the following keys back instead of leaving tombstones.
+     * The capacity doubles beyond half full and halves below an eighth, never under the initial capacity.
+     */
+    private static final class Stripe {
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private Pending[] values = new Pending[INITIAL_CAPACITY];
+        private int size;
+
+        private synchronized boolean put (final long id, final long hash, final Pending pending) {
+            if ((this.size + 1) * 2 > this.keys.length)
+                this.resize(this.keys.length * 2);
+
+            final int mask = this.keys.length - 1;
+            int index = (int) hash & mask;
+            while (this.keys[index] != 0) {
+                if (this.keys[index] == id)
+                    return false;
+                index = (index + 1) & mask;
+            }
+            this.keys[index] = id;
+            this.values[index] = pending;
+            this.size++;
+            return true;
+        }
+
+        /**
+         * @param expected The node to remove, or null to remove any node of this identifier.
+         */
+        private synchronized Pending remove (final long id, final long hash, final Pending expected) {
+            final int mask = this.keys.length - 1;
+            int index = (int) hash & mask;
+            while (this.keys[index] != id) {
+                if (this.keys[index] == 0)
+                    return null;
+                index = (index + 1) & mask;
+            }
+
+            final Pending pending = this.values[index];
+            if (expected != null && pending != expected)
+                return null;
+
+            // backward shift: move back the following keys which can not be reached anymore
+            int hole = index;
+            int next = (hole + 1) & mask;
+            while (this.keys[next] != 0) {
+                final int ideal = (int) mix(this.keys[next]) & mask;
+                if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                    this.keys[hole] = this.keys[next];
+                    this.values[hole] = this.values[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            this.keys[hole] = 0;
+            this.values[hole] = null;
+            this.size--;
+            if (this.keys.length > INITIAL_CAPACITY && this.size * 8 < this.keys.length)
+                this.resize(this.keys.length / 2);
+            return pending;
+        }
+
+        private void resize (final int capacity) {
+            final long[] oldKeys = this.keys;
+            final Pending[] oldValues = this.values;
+            this.keys = new long[capacity];
+            this.values = new Pending[capacity];
+
+            final int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0)
+                    continue;
+                int index = (int) mix(oldKeys[i]) & mask;
+                while (this.keys[index] != 0)
+                    index = (index + 1) & mask;
+                this.keys[index] = oldKeys[i];
+                this.values[index] = oldValues[i];
+            }
+        }
+
+        private void clear () {
+            this.keys = new long[INITIAL_CAPACITY];
+            this.values = new Pending[INITIAL_CAPACITY];
+            this.size = 0;
+        }
+    }
+}
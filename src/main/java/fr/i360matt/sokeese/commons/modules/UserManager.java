@@ -3,26 +3,33 @@ package fr.i360matt.sokeese.commons.modules;
 import fr.i360matt.sokeese.server.ClientLogged;
 
 import java.io.Closeable;
-import java.util.*;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Allows to list the connected users to the server.
+ * Sessions connect and disconnect from many threads at once, so every structure is concurrent:
+ * the returned sets are read-only live views, they are never copied.
  *
  * @author 360matt
- * @version 1.1.0
+ * @version 1.2.0
  */
 public class UserManager implements Closeable {
-    private Map<String, ClientLogged> single = new HashMap<>();
-    private Map<String, Set<ClientLogged>> multiple = new HashMap<>();
+    private final ConcurrentHashMap<String, Sessions> users = new ConcurrentHashMap<>();
+    private final Set<ClientLogged> all = ConcurrentHashMap.newKeySet();
+    private final Set<ClientLogged> allView = Collections.unmodifiableSet(this.all);
 
-    private int count = 0;
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile boolean closed = false;
 
     /**
      * Allows you to know how many clients are connected to the server
      * @return number of clients are connected to the server
      */
     public final int getCount () {
-        return this.count;
+        return this.count.get();
     }
 
     /**
@@ -30,36 +37,52 @@ public class UserManager implements Closeable {
      * @return number of user's clients are connected to the server
      */
     public final int getUserCount (final String name) {
-        if (this.single == null) return 0;
-        if (this.single.containsKey(name)) {
-            return 1;
-        } else {
-            final Set<ClientLogged> cl = this.multiple.get(name);
-            if (cl != null)
-                return cl.size();
-            return 0;
-        }
+        final Sessions sessions = this.users.get(name);
+        return (sessions != null) ? sessions.set.size() : 0;
     }
 
     /**
-     * Allows to add the connected customer to his name.
-     * If a client with the same name already exists,
-     * We place the two clients with the same name in the multiple Map.
+     * Allows to add the connected customer to his name, without any limit.
      * @param client An instance of the client.
      */
     public final void addUser (final ClientLogged client) {
-        if (this.single == null) return;
-        final ClientLogged probably = this.single.get(client.getName());
-        if (probably == null)
-            this.single.put(client.getName(), client);
-        else {
-            final Set<ClientLogged> newList = new HashSet<>();
-            newList.add(probably);
-            newList.add(client);
-            this.multiple.put(client.getName(), newList);
-            this.single.remove(client.getName());
+        this.addUser(client, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Allows to add the connected customer to his name if the limits are respected.
+     * The limits are checked and the client added atomically, even if many clients log in at once.
+     * @param client An instance of the client.
+     * @param maxClients The maximum number of connected clients.
+     * @param maxSameClient The maximum number of connected clients with the same name.
+     * @return "OK", "MAX_GLOBAL_CLIENT" or "MAX_SAME_CLIENT".
+     */
+    public final String addUser (final ClientLogged client, final int maxClients, final int maxSameClient) {
+        if (this.closed)
+            return "MAX_GLOBAL_CLIENT";
+
+        int current;
+        do { // reserve a place
+            current = this.count.get();
+            if (current >= maxClients)
+                return "MAX_GLOBAL_CLIENT";
+        } while (!this.count.compareAndSet(current, current + 1));
+
+        final boolean[] added = new boolean[1];
+        this.users.compute(client.getName(), (name, sessions) -> {
+            if (sessions == null)
+                sessions = new Sessions();
+            if (sessions.set.size() < maxSameClient)
+                added[0] = sessions.set.add(client);
+            return sessions.set.isEmpty() ? null : sessions;
+        });
+
+        if (!added[0]) {
+            this.count.decrementAndGet(); // release the place
+            return "MAX_SAME_CLIENT";
         }
-        this.count++;
+        this.all.add(client);
+        return "OK";
     }
 
     /**
@@ -67,13 +90,12 @@ public class UserManager implements Closeable {
      * @param name The name of the user to delete.
      */
     public final void removeUser (final String name) {
-        if (this.single == null) return;
-        if (this.single.containsKey(name)) {
-            this.single.remove(name);
-            this.count--;
-        } else {
-            this.count -= this.multiple.get(name).size();
-            this.multiple.remove(name);
+        final Sessions sessions = this.users.remove(name);
+        if (sessions != null) {
+            for (final ClientLogged client : sessions.set) {
+                if (this.all.remove(client))
+                    this.count.decrementAndGet();
+            }
         }
     }
 
@@ -82,16 +104,15 @@ public class UserManager implements Closeable {
      * @param client The reference of the user to be deleted.
      */
     public final void removeUser (final ClientLogged client) {
-        if (this.single == null) return;
-        if (client.getName() != null) {
-            if (this.single.containsValue(client)) {
-                this.single.remove(client.getName());
-                this.count--;
-            } else if (multiple.containsKey(client.getName())) {
-                this.multiple.get(client.getName()).remove(client);
-                this.count--;
-            }
-        }
+        if (client.getName() == null)
+            return;
+
+        this.users.computeIfPresent(client.getName(), (name, sessions) -> {
+            sessions.set.remove(client);
+            return sessions.set.isEmpty() ? null : sessions;
+        });
+        if (this.all.remove(client))
+            this.count.decrementAndGet();
     }
 
     /**
@@ -99,58 +120,34 @@ public class UserManager implements Closeable {
      * @param name The name of the user to log out.
      */
     public final void disconnect (final String name) {
-        if (this.single == null) return;
-        final ClientLogged probably;
-        if ((probably = this.single.get(name)) != null)
-            probably.close();
-        else {
-            final Set<ClientLogged> probably2;
-            if ((probably2 = this.multiple.get(name)) != null)
-                probably2.forEach(ClientLogged::close);
-        }
+        final Sessions sessions = this.users.get(name);
+        if (sessions != null)
+            sessions.set.forEach(ClientLogged::close);
     }
 
     /**
      * Allows to disconnect all users
      */
     public final void disconnectAll () {
-        if (this.single == null) return;
-        this.single.values().forEach(ClientLogged::close);
-        this.multiple.values().forEach(clients -> {
-            clients.forEach(ClientLogged::close);
-        });
+        this.all.forEach(ClientLogged::close);
     }
 
     /**
      * Allows to retrieve all the references of a logged in user
      * @param name User name.
-     * @return The list containing the active references of the searched user.
+     * @return A read-only live view of the active references of the searched user.
      */
     public final Set<ClientLogged> getUser (final String name) {
-        if (this.single != null) {
-            final ClientLogged probably;
-            if ((probably = this.single.get(name)) != null)
-                return new HashSet<>(Collections.singletonList(probably));
-            else {
-                final Set<ClientLogged> probably2;
-                if ((probably2 = this.multiple.get(name)) != null)
-                    return probably2;
-            }
-        }
-        return new HashSet<>();
+        final Sessions sessions = this.users.get(name);
+        return (sessions != null) ? sessions.view : Collections.emptySet();
     }
 
     /**
      * Allows to retrieve all the references of connected users
-     * @return The list containing all the references of connected users.
+     * @return A read-only live view of all the references of connected users.
      */
     public final Set<ClientLogged> getAllUsers () {
-        if (this.single != null) {
-            final Set<ClientLogged> res = new HashSet<>(single.values());
-            this.multiple.values().forEach(res::addAll);
-            return res;
-        }
-        return new HashSet<>();
+        return this.allView;
     }
 
     /**
@@ -159,7 +156,7 @@ public class UserManager implements Closeable {
      * @return Whether the user is online or not.
      */
     public final boolean exist (final String name) {
-        return this.single != null && (this.single.containsKey(name) || this.multiple.containsKey(name));
+        return this.users.containsKey(name);
     }
 
     /**
@@ -167,8 +164,19 @@ public class UserManager implements Closeable {
      */
     @Override
     public void close () {
+        this.closed = true;
         this.disconnectAll();
-        this.single = null;
-        this.multiple = null;
+        this.users.clear();
+        this.all.clear();
+        this.count.set(0);
+    }
+
+
+    /**
+     * The sessions sharing the same name, with their read-only view created once.
+     */
+    private static final class Sessions {
+        private final Set<ClientLogged> set = ConcurrentHashMap.newKeySet();
+        private final Set<ClientLogged> view = Collections.unmodifiableSet(this.set);
     }
-}
\ No newline at end of file
+}
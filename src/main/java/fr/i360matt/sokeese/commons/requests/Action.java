@@ -9,11 +9,24 @@ import java.util.function.Consumer;
  * Structure of an Action request.
  * Serializable.
  *
- * @version 1.1.0
+ * @version 1.2.0
  */
 public final class Action implements Serializable {
     private static final long serialVersionUID = 6244110737592708919L;
 
+    /**
+     * Reserved name: sent by each connection of a pooled client with the identifier of its pool.
+     * It is handled by the server itself, never by the events.
+     */
+    public static final String POOL = "sokeese:pool";
+
+    /**
+     * Reserved names: sent by a client to join or leave the group named by the content.
+     * They are handled by the server itself, never by the events.
+     */
+    public static final String JOIN = "sokeese:join";
+    public static final String LEAVE = "sokeese:leave";
+
     protected String name;
     protected Object content;
 
@@ -6,10 +6,11 @@ import java.io.Serializable;
  * Structure of an Authentification Response request.
  * Serializable.
  *
- * @version 1.1.0
+ * @version 1.2.0
  */
 public final class AuthResponse implements Serializable {
     private static final long serialVersionUID = 3700388399416501217L;
 
     public String code;
+    public int compression; // threshold accepted by the server with the FRAMED transport, 0: no compression
 }
@@ -0,0 +1,130 @@
+package fr.i360matt.sokeese.commons.requests;
+
+import java.io.Serializable;
+
+/**
+ * Structure of a Chunk request: a piece of a stream.
+ * Serializable.
+ *
+ * The chunks of a stream are numbered from 0, the last one is marked as such.
+ * A last chunk without data means that the sender has aborted the stream.
+ *
+ * @version 1.0.0
+ */
+public final class Chunk implements Serializable {
+    private static final long serialVersionUID = -2851391587211304738L;
+
+    protected long idStream;
+
+    protected String sender;
+    protected String channel;
+
+    protected int index;
+    protected byte[] data;
+    protected boolean last;
+
+
+    /**
+     * This method, used in the internal API, allows to assign the stream of the chunk.
+     * @param idStream Stream ID.
+     */
+    public final void setIdStream (final long idStream) {
+        this.idStream = idStream;
+    }
+
+    /**
+     * Allows to retrieve the stream of the chunk.
+     * @return Stream ID.
+     */
+    public final long getIdStream () {
+        return this.idStream;
+    }
+
+    /**
+     * Allows to define the sender's name.
+     * @param sender The sender's name.
+     */
+    public final void setSender (final String sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * Allows to retrieve the sender's name.
+     * @return The sender's name.
+     */
+    public final String getSender () {
+        return this.sender;
+    }
+
+    /**
+     * Allows to define the channel of the stream.
+     * @param channel The channel.
+     */
+    public final void setChannel (final String channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Allows to retrieve the channel of the stream.
+     * @return The channel.
+     */
+    public final String getChannel () {
+        return this.channel;
+    }
+
+    /**
+     * Allows to define the position of the chunk in the stream.
+     * @param index The position, from 0.
+     */
+    public final void setIndex (final int index) {
+        this.index = index;
+    }
+
+    /**
+     * Allows to retrieve the position of the chunk in the stream.
+     * @return The position, from 0.
+     */
+    public final int getIndex () {
+        return this.index;
+    }
+
+    /**
+     * Allows to define the bytes of the chunk.
+     * @param data The bytes, null only for an aborted stream.
+     */
+    public final void setData (final byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Allows to retrieve the bytes of the chunk.
+     * @return The bytes, null if the stream is aborted.
+     */
+    public final byte[] getData () {
+        return this.data;
+    }
+
+    /**
+     * Allows to mark the chunk as the last one of its stream.
+     * @param last If it is the last one.
+     */
+    public final void setLast (final boolean last) {
+        this.last = last;
+    }
+
+    /**
+     * Allows to know if the chunk is the last one of its stream.
+     * @return If it is the last one.
+     */
+    public final boolean isLast () {
+        return this.last;
+    }
+
+    /**
+     * Allows to know if the sender has aborted the stream, no chunk will follow.
+     * @return If the stream is aborted.
+     */
+    public final boolean isAborted () {
+        return this.last && this.data == null;
+    }
+}
@@ -0,0 +1,50 @@
+package fr.i360matt.sokeese.commons.requests;
+
+import java.io.Serializable;
+
+/**
+ * Structure of a Credit request: allows the sender of a stream to send more chunks.
+ * It is sent back by the receiver once the chunks are handled.
+ * Serializable.
+ *
+ * @version 1.0.0
+ */
+public final class Credit implements Serializable {
+    private static final long serialVersionUID = 5106473313585286407L;
+
+    protected long idStream;
+    protected int amount;
+
+
+    /**
+     * Allows to define the stream receiving the credit.
+     * @param idStream Stream ID.
+     */
+    public final void setIdStream (final long idStream) {
+        this.idStream = idStream;
+    }
+
+    /**
+     * Allows to retrieve the stream receiving the credit.
+     * @return Stream ID.
+     */
+    public final long getIdStream () {
+        return this.idStream;
+    }
+
+    /**
+     * Allows to define the number of chunks which can be sent.
+     * @param amount The number of chunks.
+     */
+    public final void setAmount (final int amount) {
+        this.amount = amount;
+    }
+
+    /**
+     * Allows to retrieve the number of chunks which can be sent.
+     * @return The number of chunks.
+     */
+    public final int getAmount () {
+        return this.amount;
+    }
+}
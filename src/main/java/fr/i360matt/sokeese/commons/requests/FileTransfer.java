@@ -0,0 +1,123 @@
+package fr.i360matt.sokeese.commons.requests;
+
+import java.io.Serializable;
+
+/**
+ * Structure of a FileTransfer request: announces a file, whose bytes follow as raw segments.
+ * Serializable.
+ *
+ * The segments are not requests: they are written from the file to the socket without being copied
+ * by the sender, then written to a file by the receiver.
+ * The request is sent again, marked as aborted, if the sender stops before the end of the file.
+ *
+ * @version 1.0.0
+ */
+public final class FileTransfer implements Serializable {
+    private static final long serialVersionUID = -4017250911652368834L;
+
+    protected long idStream;
+
+    protected String sender;
+    protected String channel;
+
+    protected String name;
+    protected long size;
+    protected boolean aborted;
+
+
+    /**
+     * This method, used in the internal API, allows to assign the identifier of the transfer.
+     * @param idStream Stream ID.
+     */
+    public final void setIdStream (final long idStream) {
+        this.idStream = idStream;
+    }
+
+    /**
+     * Allows to retrieve the identifier of the transfer.
+     * @return Stream ID.
+     */
+    public final long getIdStream () {
+        return this.idStream;
+    }
+
+    /**
+     * Allows to define the sender's name.
+     * @param sender The sender's name.
+     */
+    public final void setSender (final String sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * Allows to retrieve the sender's name.
+     * @return The sender's name.
+     */
+    public final String getSender () {
+        return this.sender;
+    }
+
+    /**
+     * Allows to define the channel of the transfer.
+     * @param channel The channel.
+     */
+    public final void setChannel (final String channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Allows to retrieve the channel of the transfer.
+     * @return The channel.
+     */
+    public final String getChannel () {
+        return this.channel;
+    }
+
+    /**
+     * Allows to define the name of the file, as known by the sender.
+     * @param name The file name.
+     */
+    public final void setName (final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Allows to retrieve the name of the file, as known by the sender.
+     * @return The file name.
+     */
+    public final String getName () {
+        return this.name;
+    }
+
+    /**
+     * Allows to define the number of bytes of the file.
+     * @param size The size.
+     */
+    public final void setSize (final long size) {
+        this.size = size;
+    }
+
+    /**
+     * Allows to retrieve the number of bytes of the file.
+     * @return The size.
+     */
+    public final long getSize () {
+        return this.size;
+    }
+
+    /**
+     * Allows to mark the transfer as aborted.
+     * @param aborted If the transfer is aborted.
+     */
+    public final void setAborted (final boolean aborted) {
+        this.aborted = aborted;
+    }
+
+    /**
+     * Allows to know if the sender has aborted the transfer, no segment will follow.
+     * @return If the transfer is aborted.
+     */
+    public final boolean isAborted () {
+        return this.aborted;
+    }
+}
@@ -0,0 +1,311 @@
+package fr.i360matt.sokeese.commons.transport;
+
+import fr.i360matt.sokeese.commons.requests.Action;
+import fr.i360matt.sokeese.commons.requests.AuthResponse;
+import fr.i360matt.sokeese.commons.requests.Chunk;
+import fr.i360matt.sokeese.commons.requests.Credit;
+import fr.i360matt.sokeese.commons.requests.FileTransfer;
+import fr.i360matt.sokeese.commons.requests.Message;
+import fr.i360matt.sokeese.commons.requests.Reply;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of the BINARY codec.
+ *
+ * Payload layout (varlong = unsigned LEB128, string = varlong length + 1 then UTF-8 bytes, 0 for null):
+ *   MESSAGE / REPLY : type, idRequest (varlong), recipient, sender, channel, content
+ *   ACTION          : type, name, content
+ *   AUTH_RESPONSE   : type, code, compression (varlong)
+ *   CHUNK           : type, idStream (varlong), sender, channel, index (varlong), flags, [data length (varlong), data]
+ *   CREDIT          : type, idStream (varlong), amount (varlong)
+ *   FILE            : type, idStream (varlong), sender, channel, name, size (varlong), aborted (byte)
+ *
+ * A content is a tag byte followed by its value, see the VALUE_ constants.
+ *
+ * The payloads come from the network: every length is checked against the rest of the payload before allocating,
+ * and a malformed payload is reported as an IOException, which closes the session.
+ *
+ * @author 360matt
+ * @version 1.3.0
+ *
+ * @see Codec#BINARY
+ */
+final class BinaryCodec {
+
+    static final byte MESSAGE = 1;
+    static final byte ACTION = 2;
+    static final byte REPLY = 3;
+    static final byte AUTH_RESPONSE = 4;
+    static final byte CHUNK = 5;
+    static final byte CREDIT = 6;
+    static final byte FILE = 7;
+
+    static final byte CHUNK_LAST = 1; // flags of a chunk
+    static final byte CHUNK_DATA = 2;
+
+    static final byte VALUE_NULL = 0;
+    static final byte VALUE_STRING = 1;
+    static final byte VALUE_INT = 2; // zigzag varlong
+    static final byte VALUE_LONG = 3; // zigzag varlong
+    static final byte VALUE_DOUBLE = 4; // 8 bytes
+    static final byte VALUE_TRUE = 5;
+    static final byte VALUE_FALSE = 6;
+    static final byte VALUE_BYTES = 7; // varlong length then bytes
+    static final byte VALUE_MAP = 8; // varlong size then key / value pairs
+    static final byte VALUE_LIST = 9; // varlong size then values
+    static final byte VALUE_SERIALIZED = 127; // 4-byte length then Java serialization
+
+    private static final int MAX_DEPTH = 64; // nested maps and lists, deeper payloads are refused
+
+    private BinaryCodec () { }
+
+    static void encode (final Object obj, final FrameBuffer out) throws IOException {
+        if (obj instanceof Message) {
+            final Message message = (Message) obj;
+            out.write(MESSAGE);
+            out.writeVarLong(message.getIdRequest());
+            out.writeString(message.getRecipient());
+            out.writeString(message.getSender());
+            out.writeString(message.getChannel());
+            writeValue(message.getContent(), out);
+        } else if (obj instanceof Reply) {
+            final Reply reply = (Reply) obj;
+            out.write(REPLY);
+            out.writeVarLong(reply.getIdRequest());
+            out.writeString(reply.getRecipient());
+            out.writeString(reply.getSender());
+            out.writeString(reply.getChannel());
+            writeValue(reply.getContent(), out);
+        } else if (obj instanceof Action) {
+            final Action action = (Action) obj;
+            out.write(ACTION);
+            out.writeString(action.getName());
+            writeValue(action.getContent(), out);
+        } else if (obj instanceof AuthResponse) {
+            out.write(AUTH_RESPONSE);
+            out.writeString(((AuthResponse) obj).code);
+            out.writeVarLong(((AuthResponse) obj).compression);
+        } else if (obj instanceof Chunk) {
+            final Chunk chunk = (Chunk) obj;
+            final byte[] data = chunk.getData();
+            out.write(CHUNK);
+            out.writeVarLong(chunk.getIdStream());
+            out.writeString(chunk.getSender());
+            out.writeString(chunk.getChannel());
+            out.writeVarLong(chunk.getIndex());
+            out.write((chunk.isLast() ? CHUNK_LAST : 0) | (data != null ? CHUNK_DATA : 0));
+            if (data != null) {
+                out.writeVarLong(data.length);
+                out.write(data, 0, data.length);
+            }
+        } else if (obj instanceof Credit) {
+            final Credit credit = (Credit) obj;
+            out.write(CREDIT);
+            out.writeVarLong(credit.getIdStream());
+            out.writeVarLong(credit.getAmount());
+        } else if (obj instanceof FileTransfer) {
+            final FileTransfer transfer = (FileTransfer) obj;
+            out.write(FILE);
+            out.writeVarLong(transfer.getIdStream());
+            out.writeString(transfer.getSender());
+            out.writeString(transfer.getChannel());
+            out.writeString(transfer.getName());
+            out.writeVarLong(transfer.getSize());
+            out.write(transfer.isAborted() ? 1 : 0);
+        } else {
+            throw new IOException("Unsupported request type: " + obj.getClass().getName());
+        }
+    }
+
+    static Object decode (final ByteBuffer payload) throws IOException, ClassNotFoundException {
+        try {
+            return decodeRequest(payload);
+        } catch (final IllegalArgumentException | BufferUnderflowException | IndexOutOfBoundsException | ClassCastException e) {
+            throw new IOException("Malformed payload", e);
+        }
+    }
+
+    private static Object decodeRequest (final ByteBuffer payload) throws IOException, ClassNotFoundException {
+        final byte type = payload.get();
+        switch (type) {
+            case MESSAGE: {
+                final Message message = new Message();
+                message.setIdRequest(FrameBuffer.readVarLong(payload));
+                message.setRecipient(FrameBuffer.readString(payload));
+                message.setSender(FrameBuffer.readString(payload));
+                message.setChannel(FrameBuffer.readString(payload));
+                message.setContent(readValue(payload, 0));
+                return message;
+            }
+            case REPLY: {
+                final Reply reply = new Reply();
+                reply.setIdRequest(FrameBuffer.readVarLong(payload));
+                reply.setRecipient(FrameBuffer.readString(payload));
+                reply.setSender(FrameBuffer.readString(payload));
+                reply.setChannel(FrameBuffer.readString(payload));
+                reply.setContent(readValue(payload, 0));
+                return reply;
+            }
+            case ACTION: {
+                final Action action = new Action();
+                action.setName(FrameBuffer.readString(payload));
+                action.setContent(readValue(payload, 0));
+                return action;
+            }
+            case AUTH_RESPONSE: {
+                final AuthResponse response = new AuthResponse();
+                response.code = FrameBuffer.readString(payload);
+                if (payload.hasRemaining())
+                    response.compression = (int) FrameBuffer.readVarLong(payload);
+                return response;
+            }
+            case CHUNK: {
+                final Chunk chunk = new Chunk();
+                chunk.setIdStream(FrameBuffer.readVarLong(payload));
+                chunk.setSender(FrameBuffer.readString(payload));
+                chunk.setChannel(FrameBuffer.readString(payload));
+                chunk.setIndex((int) FrameBuffer.readVarLong(payload));
+                final byte flags = payload.get();
+                chunk.setLast((flags & CHUNK_LAST) != 0);
+                if ((flags & CHUNK_DATA) != 0) {
+                    final byte[] data = new byte[FrameBuffer.readLength(payload, FrameBuffer.readVarLong(payload))];
+                    payload.get(data);
+                    chunk.setData(data);
+                }
+                return chunk;
+            }
+            case CREDIT: {
+                final Credit credit = new Credit();
+                credit.setIdStream(FrameBuffer.readVarLong(payload));
+                credit.setAmount((int) FrameBuffer.readVarLong(payload));
+                return credit;
+            }
+            case FILE: {
+                final FileTransfer transfer = new FileTransfer();
+                transfer.setIdStream(FrameBuffer.readVarLong(payload));
+                transfer.setSender(FrameBuffer.readString(payload));
+                transfer.setChannel(FrameBuffer.readString(payload));
+                transfer.setName(FrameBuffer.readString(payload));
+                transfer.setSize(FrameBuffer.readVarLong(payload));
+                transfer.setAborted(payload.get() != 0);
+                return transfer;
+            }
+            default:
+                throw new IOException("Unknown request type: " + type);
+        }
+    }
+
+
+    private static void writeValue (final Object value, final FrameBuffer out) throws IOException {
+        if (value == null) {
+            out.write(VALUE_NULL);
+        } else if (value instanceof String) {
+            out.write(VALUE_STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Integer) {
+            out.write(VALUE_INT);
+            out.writeVarLong(zigzag((Integer) value));
+        } else if (value instanceof Long) {
+            out.write(VALUE_LONG);
+            out.writeVarLong(zigzag((Long) value));
+        } else if (value instanceof Double) {
+            out.write(VALUE_DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+        } else if (value instanceof byte[]) {
+            final byte[] bytes = (byte[]) value;
+            out.write(VALUE_BYTES);
+            out.writeVarLong(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        } else if (value.getClass() == HashMap.class) { // exact types only: decoding gives them back
+            final Map<?, ?> map = (Map<?, ?>) value;
+            out.write(VALUE_MAP);
+            out.writeVarLong(map.size());
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(entry.getKey(), out);
+                writeValue(entry.getValue(), out);
+            }
+        } else if (value.getClass() == ArrayList.class) {
+            final List<?> list = (List<?>) value;
+            out.write(VALUE_LIST);
+            out.writeVarLong(list.size());
+            for (final Object element : list)
+                writeValue(element, out);
+        } else {
+            out.write(VALUE_SERIALIZED);
+            final int position = out.reserveInt();
+            final ObjectOutputStream stream = new ObjectOutputStream(out);
+            stream.writeObject(value);
+            stream.flush();
+            out.patchInt(position, out.position() - position - 4);
+        }
+    }
+
+    private static Object readValue (final ByteBuffer payload, final int depth) throws IOException, ClassNotFoundException {
+        if (depth > MAX_DEPTH)
+            throw new IOException("Too many nested values");
+        final byte tag = payload.get();
+        switch (tag) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return FrameBuffer.readString(payload);
+            case VALUE_INT:
+                return (int) unzigzag(FrameBuffer.readVarLong(payload));
+            case VALUE_LONG:
+                return unzigzag(FrameBuffer.readVarLong(payload));
+            case VALUE_DOUBLE:
+                return Double.longBitsToDouble(payload.getLong());
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_BYTES: {
+                final byte[] bytes = new byte[FrameBuffer.readLength(payload, FrameBuffer.readVarLong(payload))];
+                payload.get(bytes);
+                return bytes;
+            }
+            case VALUE_MAP: {
+                final int size = FrameBuffer.readLength(payload, FrameBuffer.readVarLong(payload)); // at least 1 byte per value
+                final Map<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < size; i++)
+                    map.put(readValue(payload, depth + 1), readValue(payload, depth + 1));
+                return map;
+            }
+            case VALUE_LIST: {
+                final int size = FrameBuffer.readLength(payload, FrameBuffer.readVarLong(payload)); // at least 1 byte per value
+                final List<Object> list = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(payload, depth + 1));
+                return list;
+            }
+            case VALUE_SERIALIZED: {
+                final int length = FrameBuffer.readLength(payload, payload.getInt());
+                final ByteBuffer slice = payload.duplicate();
+                slice.limit(slice.position() + length);
+                payload.position(payload.position() + length);
+                return new ObjectInputStream(FrameBuffer.asStream(slice)).readObject();
+            }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    private static long zigzag (final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag (final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,80 @@
+package fr.i360matt.sokeese.commons.transport;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Allows to choose how the requests are written in the frames of the FRAMED transport.
+ * The client chooses its codec, the server answers with the same one.
+ *
+ * @version 1.0.0
+ *
+ * @see Transport#FRAMED
+ */
+public enum Codec {
+
+    /**
+     * Java serialization of the whole request, one ObjectOutputStream per frame.
+     */
+    SERIALIZED {
+        @Override
+        public void encode (final Object obj, final FrameBuffer out) throws IOException {
+            final ObjectOutputStream stream = new ObjectOutputStream(out);
+            stream.writeObject(obj);
+            stream.flush();
+        }
+
+        @Override
+        public Object decode (final ByteBuffer payload) throws IOException, ClassNotFoundException {
+            return new ObjectInputStream(FrameBuffer.asStream(payload)).readObject();
+        }
+    },
+
+    /**
+     * Compact binary format: a type byte, the idRequest as a varlong,
+     * and the names as length-prefixed UTF-8 strings.
+     * Common contents (strings, numbers, byte arrays, maps and lists of them) are also binary,
+     * other contents fall back to Java serialization.
+     *
+     * @see BinaryCodec
+     */
+    BINARY {
+        @Override
+        public void encode (final Object obj, final FrameBuffer out) throws IOException {
+            BinaryCodec.encode(obj, out);
+        }
+
+        @Override
+        public Object decode (final ByteBuffer payload) throws IOException, ClassNotFoundException {
+            return BinaryCodec.decode(payload);
+        }
+    };
+
+    private static final Codec[] VALUES = values();
+
+
+    /**
+     * Allows to write a request in the payload of a frame.
+     * @param obj The request.
+     * @param out The frame buffer, already reset.
+     */
+    public abstract void encode (final Object obj, final FrameBuffer out) throws IOException;
+
+    /**
+     * Allows to read the request contained in the payload of a frame.
+     * @param payload The payload, without its length.
+     * @return The request.
+     */
+    public abstract Object decode (final ByteBuffer payload) throws IOException, ClassNotFoundException;
+
+    /**
+     * Allows to retrieve a codec from the identifier sent during the login.
+     * @param id The identifier (the ordinal).
+     * @return The codec, SERIALIZED if unknown.
+     */
+    public static Codec of (final int id) {
+        return (id >= 0 && id < VALUES.length) ? VALUES[id] : SERIALIZED;
+    }
+}
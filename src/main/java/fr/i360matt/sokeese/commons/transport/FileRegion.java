@@ -0,0 +1,86 @@
+package fr.i360matt.sokeese.commons.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A segment of a file, written as a frame whose payload comes straight from the file.
+ * The bytes are given to the socket with FileChannel.transferTo:
+ * the kernel copies them from the page cache, they never reach the heap of the sender.
+ *
+ * @author 360matt
+ * @version 1.1.0
+ *
+ * @see Frames#SEGMENT
+ */
+public final class FileRegion {
+    public static final int PREFIX = 8; // identifier of the transfer
+
+    private final ByteBuffer header = ByteBuffer.allocate(Frames.HEADER + PREFIX);
+    private final FileChannel file;
+    private long position;
+    private long remaining;
+    private final int size;
+    private final Runnable written;
+
+
+    /**
+     * @param id The identifier of the transfer.
+     * @param file The file, it is not closed by the region.
+     * @param position The position of the segment in the file.
+     * @param length The number of bytes of the segment.
+     * @param written Executed once the whole segment is written, may be null.
+     */
+    public FileRegion (final long id, final FileChannel file, final long position, final int length, final Runnable written) {
+        if (length < 0 || length > Frames.MAX_LENGTH - PREFIX)
+            throw new IllegalArgumentException("Invalid segment length: " + length);
+        this.header.putInt(Frames.SEGMENT | (PREFIX + length)).putLong(id).flip();
+        this.file = file;
+        this.position = position;
+        this.remaining = length;
+        this.size = Frames.HEADER + PREFIX + length;
+        this.written = written;
+    }
+
+    /**
+     * Allows to write as much of the segment as the channel accepts.
+     * With a blocking channel, the whole segment is written.
+     * @param channel The channel of the connection.
+     * @return True once the whole segment is written.
+     */
+    public boolean writeTo (final WritableByteChannel channel) throws IOException {
+        while (this.header.hasRemaining())
+            if (channel.write(this.header) == 0)
+                return false;
+
+        while (this.remaining > 0) {
+            final long count = this.file.transferTo(this.position, this.remaining, channel);
+            if (count <= 0) {
+                if (this.position >= this.file.size())
+                    throw new IOException("The file is shorter than announced");
+                return false;
+            }
+            this.position += count;
+            this.remaining -= count;
+        }
+        return true;
+    }
+
+    /**
+     * Allows to retrieve the size of the segment on the wire.
+     * @return The number of bytes, header included.
+     */
+    public int getSize () {
+        return this.size;
+    }
+
+    /**
+     * Allows to execute the action given for the end of the segment.
+     */
+    public void written () {
+        if (this.written != null)
+            this.written.run();
+    }
+}
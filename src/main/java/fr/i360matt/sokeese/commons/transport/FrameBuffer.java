@@ -0,0 +1,235 @@
+package fr.i360matt.sokeese.commons.transport;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable and growable buffer in which the frames are encoded.
+ * The header of the frame is reserved by reset() and filled by toFrame().
+ *
+ * It also contains the primitives used to read the binary payloads.
+ *
+ * @author 360matt
+ * @version 1.1.0
+ *
+ * @see Codec
+ */
+public final class FrameBuffer extends OutputStream {
+    private static final int RETAINED = 1024 * 1024; // larger buffers are not kept between two frames
+
+    private byte[] buf;
+    private int count;
+
+    public FrameBuffer () {
+        this(256);
+    }
+
+    public FrameBuffer (final int capacity) {
+        this.buf = new byte[Math.max(capacity, Frames.HEADER)];
+        this.count = Frames.HEADER;
+    }
+
+    /**
+     * Allows to start a new frame, the content of the previous one is lost.
+     * @return This buffer.
+     */
+    public FrameBuffer reset () {
+        if (this.buf.length > RETAINED)
+            this.buf = new byte[256];
+        this.count = Frames.HEADER;
+        return this;
+    }
+
+    /**
+     * Allows to finish the frame by writing its length.
+     * @return A view of the frame, only valid until the next reset().
+     */
+    public ByteBuffer toFrame () {
+        final ByteBuffer frame = ByteBuffer.wrap(this.buf, 0, this.count);
+        frame.putInt(0, this.count - Frames.HEADER);
+        return frame;
+    }
+
+    /**
+     * Allows to finish the frame by writing its length.
+     * @return A copy of the frame, which can be kept after the next reset().
+     */
+    public ByteBuffer copyFrame () {
+        final ByteBuffer frame = ByteBuffer.wrap(Arrays.copyOf(this.buf, this.count));
+        frame.putInt(0, this.count - Frames.HEADER);
+        return frame;
+    }
+
+    /**
+     * Allows to retrieve the size of the payload written so far.
+     * @return The number of bytes after the header.
+     */
+    public int size () {
+        return this.count - Frames.HEADER;
+    }
+
+    private void ensure (final int more) {
+        final int needed = this.count + more;
+        if (needed > this.buf.length)
+            this.buf = Arrays.copyOf(this.buf, Math.max(needed, this.buf.length * 2));
+    }
+
+    @Override
+    public void write (final int b) {
+        this.ensure(1);
+        this.buf[this.count++] = (byte) b;
+    }
+
+    @Override
+    public void write (final byte[] bytes, final int offset, final int length) {
+        this.ensure(length);
+        System.arraycopy(bytes, offset, this.buf, this.count, length);
+        this.count += length;
+    }
+
+    public void writeInt (final int value) {
+        this.ensure(4);
+        this.buf[this.count++] = (byte) (value >>> 24);
+        this.buf[this.count++] = (byte) (value >>> 16);
+        this.buf[this.count++] = (byte) (value >>> 8);
+        this.buf[this.count++] = (byte) value;
+    }
+
+    public void writeLong (final long value) {
+        this.writeInt((int) (value >>> 32));
+        this.writeInt((int) value);
+    }
+
+    /**
+     * Allows to write an unsigned LEB128 integer: 7 bits per byte, the high bit means "more".
+     * @param value The value, negative values take 10 bytes.
+     */
+    public void writeVarLong (long value) {
+        this.ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            this.buf[this.count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buf[this.count++] = (byte) value;
+    }
+
+    /**
+     * Allows to write a string as its UTF-8 length + 1 followed by its bytes, 0 means null.
+     * @param value The string, can be null.
+     */
+    public void writeString (final String value) {
+        if (value == null) {
+            this.write(0);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.writeVarLong(bytes.length + 1L);
+        this.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Allows to reserve room for a 4-byte length written later by patchInt().
+     * @return The position of the reserved room.
+     */
+    public int reserveInt () {
+        this.ensure(4);
+        final int position = this.count;
+        this.count += 4;
+        return position;
+    }
+
+    public void patchInt (final int position, final int value) {
+        this.buf[position] = (byte) (value >>> 24);
+        this.buf[position + 1] = (byte) (value >>> 16);
+        this.buf[position + 2] = (byte) (value >>> 8);
+        this.buf[position + 3] = (byte) value;
+    }
+
+    /**
+     * Allows to retrieve the position of the next written byte.
+     * @return The position in the frame, header included.
+     */
+    public int position () {
+        return this.count;
+    }
+
+
+    public static long readVarLong (final ByteBuffer payload) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = payload.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed varlong");
+    }
+
+    /**
+     * Allows to read a string written by writeString().
+     * @param payload The payload, its position is advanced after the string.
+     * @return The string, or null.
+     * @throws IllegalArgumentException If the length goes beyond the payload.
+     */
+    public static String readString (final ByteBuffer payload) {
+        final long encoded = readVarLong(payload);
+        if (encoded == 0)
+            return null;
+        final int length = readLength(payload, encoded - 1);
+
+        final String value;
+        if (payload.hasArray()) {
+            value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        } else { // direct buffer
+            final byte[] bytes = new byte[length];
+            payload.duplicate().get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    /**
+     * Allows to check a length read from a payload before allocating or reading it.
+     * @param payload The payload, positioned after the length.
+     * @param length The length.
+     * @return The length, which fits in the rest of the payload.
+     * @throws IllegalArgumentException If the length is negative or goes beyond the payload.
+     */
+    public static int readLength (final ByteBuffer payload, final long length) {
+        if (length < 0 || length > payload.remaining())
+            throw new IllegalArgumentException("Invalid length: " + length + ", " + payload.remaining() + " bytes left");
+        return (int) length;
+    }
+
+    /**
+     * Allows to read bytes of a payload as an InputStream, without copying them.
+     * @param payload The payload, its position is advanced as the stream is read.
+     * @return The stream.
+     */
+    public static InputStream asStream (final ByteBuffer payload) {
+        return new InputStream() {
+            @Override
+            public int read () {
+                return payload.hasRemaining() ? payload.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read (final byte[] bytes, final int offset, final int length) {
+                if (!payload.hasRemaining())
+                    return -1;
+                final int n = Math.min(length, payload.remaining());
+                payload.get(bytes, offset, n);
+                return n;
+            }
+
+            @Override
+            public int available () {
+                return payload.remaining();
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package fr.i360matt.sokeese.commons.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Allows to read and write frames over a blocking SocketChannel.
+ * The inbound buffer is reused between reads.
+ * The segments of the files are read like the other frames, see isSegment().
+ *
+ * @author 360matt
+ * @version 1.3.0
+ *
+ * @see Frames
+ */
+public final class FramedChannel {
+
+    private final SocketChannel channel;
+    private ByteBuffer inbound = ByteBuffer.allocate(8192);
+    private boolean segment; // kind of the last frame read
+    private int size; // size on the wire of the last frame read
+
+    /**
+     * Allows to wrap a connected channel, which must be in blocking mode.
+     * @param channel The channel.
+     */
+    public FramedChannel (final SocketChannel channel) {
+        this.channel = channel;
+        this.inbound.flip();
+    }
+
+    /**
+     * Allows to write a whole frame.
+     * The caller is responsible for the synchronisation of the writes.
+     * @param frame The frame produced by Frames.
+     */
+    public void write (final ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining())
+            this.channel.write(frame);
+    }
+
+    /**
+     * Allows to write many frames at once, with gathering writes.
+     * The caller is responsible for the synchronisation of the writes.
+     * @param frames The frames produced by Frames.
+     */
+    public void write (final ByteBuffer[] frames) throws IOException {
+        int first = 0;
+        while (first < frames.length) {
+            this.channel.write(frames, first, frames.length - first);
+            while (first < frames.length && !frames[first].hasRemaining())
+                first++;
+        }
+    }
+
+    /**
+     * Allows to write a segment of a file, straight from the file to the socket.
+     * The caller is responsible for the synchronisation of the writes.
+     * @param region The segment.
+     */
+    public void write (final FileRegion region) throws IOException {
+        while (!region.writeTo(this.channel));
+        region.written();
+    }
+
+    /**
+     * Allows to wait for the next frame, a compressed frame is inflated.
+     * @return The payload of the frame, only valid until the next call.
+     */
+    public ByteBuffer read () throws IOException {
+        while (true) {
+            if (this.inbound.remaining() >= Frames.HEADER) {
+                final int length = Frames.length(this.inbound);
+                final int size = Frames.HEADER + length;
+
+                if (this.inbound.remaining() >= size) {
+                    final boolean compressed = Frames.isCompressed(this.inbound);
+                    this.segment = Frames.isSegment(this.inbound);
+                    this.size = size;
+                    final int start = this.inbound.position() + Frames.HEADER;
+                    final ByteBuffer payload = this.inbound.duplicate();
+                    payload.position(start).limit(start + length);
+                    this.inbound.position(start + length);
+                    return compressed ? Frames.inflate(payload) : payload;
+                }
+
+                if (this.inbound.capacity() < size) {
+                    final ByteBuffer bigger = ByteBuffer.allocate(Math.max(size, this.inbound.capacity() * 2));
+                    bigger.put(this.inbound).flip();
+                    this.inbound = bigger;
+                }
+            }
+
+            this.inbound.compact();
+            final int read = this.channel.read(this.inbound);
+            this.inbound.flip();
+            if (read < 0)
+                throw new EOFException();
+        }
+    }
+
+    /**
+     * Allows to know if the last frame read is a segment of a file.
+     * @return True if its payload is the identifier of a transfer followed by raw bytes.
+     */
+    public boolean isSegment () {
+        return this.segment;
+    }
+
+    /**
+     * Allows to retrieve the size of the last frame read, as received: header included, before its inflation.
+     * @return The number of bytes.
+     */
+    public int getSize () {
+        return this.size;
+    }
+
+    /**
+     * Allows to retrieve the underlying channel.
+     * @return The channel.
+     */
+    public SocketChannel getChannel () {
+        return this.channel;
+    }
+}
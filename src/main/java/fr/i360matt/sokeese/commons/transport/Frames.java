@@ -0,0 +1,259 @@
+package fr.i360matt.sokeese.commons.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Allows to encode and decode the frames of the FRAMED transport.
+ * A frame is a 4-byte big-endian length followed by its payload.
+ * When the high bit of the length is set, the payload is compressed:
+ * it is the length of the original payload (4 bytes) followed by its raw deflate data.
+ * When the second bit is set, the frame is a segment of a file: the identifier of the transfer (8 bytes)
+ * followed by the raw bytes of the file, see FileRegion.
+ *
+ * The first frame sent by a client contains its username, its password, its codec and its compression threshold,
+ * every following frame contains a single request written with that codec.
+ * Both sides can always read compressed frames, they only send them once the compression is accepted at login.
+ * Until the login is accepted, the frames are bounded by LOGIN_MAX_LENGTH instead of MAX_LENGTH.
+ *
+ * @author 360matt
+ * @version 1.4.0
+ *
+ * @see Transport#FRAMED
+ * @see Codec
+ */
+public final class Frames {
+
+    public static final int HEADER = 4;
+    public static final int MAX_LENGTH = 64 * 1024 * 1024;
+    public static final int LOGIN_MAX_LENGTH = 64 * 1024; // before the login is accepted
+    public static final int COMPRESSED = 0x80000000; // flags of the length
+    public static final int SEGMENT = 0x40000000;
+
+    private static final int RETAINED = 1024 * 1024; // larger inflate buffers are not kept between two frames
+
+    private static final ThreadLocal<FrameBuffer> BUFFERS = ThreadLocal.withInitial(FrameBuffer::new);
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<byte[][]> INFLATED = ThreadLocal.withInitial(() -> new byte[1][]);
+
+    private Frames () { }
+
+    /**
+     * Allows to encode a request in a frame which can be queued.
+     * The encoding is done in a buffer reused by the current thread, only the result is copied.
+     * @param codec The codec of the connection.
+     * @param obj The request.
+     * @return The frame, its position is 0 and its limit is the end of the payload.
+     */
+    public static ByteBuffer encode (final Codec codec, final Object obj) throws IOException {
+        final FrameBuffer buffer = BUFFERS.get().reset();
+        codec.encode(obj, buffer);
+        return buffer.copyFrame();
+    }
+
+    /**
+     * Allows to decode the request contained in the payload of a frame.
+     * @param codec The codec of the connection.
+     * @param payload The payload, without its length.
+     * @return The request.
+     */
+    public static Object decode (final Codec codec, final ByteBuffer payload) throws IOException, ClassNotFoundException {
+        return codec.decode(payload);
+    }
+
+    /**
+     * Allows to compress a frame if its payload is large enough and if it gets smaller.
+     * The compressor is reused by the current thread.
+     * @param frame The frame, its position is 0.
+     * @param threshold The minimum size of the payload to compress, 0 or less to never compress.
+     * @return A new compressed frame, or the frame itself.
+     */
+    public static ByteBuffer compress (final ByteBuffer frame, final int threshold) {
+        final int length = frame.remaining() - HEADER;
+        final int available = length - 4 - 1; // the compressed payload must be smaller than the original one
+        if (threshold <= 0 || length < threshold || available <= 0)
+            return frame;
+
+        final byte[] input;
+        final int offset;
+        if (frame.hasArray()) {
+            input = frame.array();
+            offset = frame.arrayOffset() + frame.position() + HEADER;
+        } else { // read-only view of a shared frame
+            input = new byte[length];
+            final ByteBuffer payload = frame.duplicate();
+            payload.position(payload.position() + HEADER);
+            payload.get(input);
+            offset = 0;
+        }
+
+        final Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(input, offset, length);
+        deflater.finish();
+
+        final byte[] output = new byte[HEADER + 4 + available];
+        int size = 0;
+        while (!deflater.finished() && size < available)
+            size += deflater.deflate(output, HEADER + 4 + size, available - size);
+        if (!deflater.finished())
+            return frame; // not worth it
+
+        final ByteBuffer compressed = ByteBuffer.wrap(output, 0, HEADER + 4 + size);
+        compressed.putInt(0, COMPRESSED | (4 + size));
+        compressed.putInt(HEADER, length);
+        return compressed;
+    }
+
+    /**
+     * Allows to decompress the payload of a compressed frame.
+     * The decompressor and the output buffer are reused by the current thread.
+     * @param payload The payload, without its length.
+     * @return The original payload, only valid until the next call on this thread.
+     */
+    public static ByteBuffer inflate (final ByteBuffer payload) throws IOException {
+        if (payload.remaining() < 4)
+            throw new IOException("Invalid compressed frame");
+        final int length = payload.getInt(payload.position());
+        if (length < 0 || length > MAX_LENGTH)
+            throw new IOException("Invalid frame length: " + length);
+
+        final byte[] input;
+        final int offset;
+        final int size = payload.remaining() - 4;
+        if (payload.hasArray()) {
+            input = payload.array();
+            offset = payload.arrayOffset() + payload.position() + 4;
+        } else {
+            input = new byte[size];
+            final ByteBuffer data = payload.duplicate();
+            data.position(data.position() + 4);
+            data.get(input);
+            offset = 0;
+        }
+
+        final byte[][] holder = INFLATED.get();
+        byte[] output = holder[0];
+        if (output == null || output.length < length) {
+            output = new byte[Math.max(length, 1024)];
+            if (length <= RETAINED)
+                holder[0] = output;
+        }
+
+        final Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(input, offset, size);
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                final int count = inflater.inflate(output, inflated, length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                inflated += count;
+            }
+            if (inflated != length || !inflater.finished())
+                throw new IOException("Invalid compressed frame");
+        } catch (final DataFormatException e) {
+            throw new IOException("Invalid compressed frame", e);
+        }
+        return ByteBuffer.wrap(output, 0, length);
+    }
+
+    /**
+     * Allows to encode the login frame.
+     * @param username The username.
+     * @param password The password.
+     * @param codec The codec chosen by the client.
+     * @param compression The compression threshold asked by the client, 0 for no compression.
+     * @return The frame.
+     */
+    public static ByteBuffer encodeLogin (final String username, final String password, final Codec codec, final int compression) {
+        final FrameBuffer buffer = new FrameBuffer();
+        buffer.writeString(username);
+        buffer.writeString(password);
+        buffer.write(codec.ordinal());
+        buffer.writeVarLong(Math.max(0, compression));
+        return buffer.toFrame();
+    }
+
+    /**
+     * Allows to decode the login frame.
+     * @param payload The payload, without its length.
+     * @return The credentials, the codec and the compression threshold of the client.
+     */
+    public static Credentials decodeLogin (final ByteBuffer payload) throws IOException {
+        try {
+            final String username = FrameBuffer.readString(payload);
+            final String password = FrameBuffer.readString(payload);
+            final Codec codec = payload.hasRemaining() ? Codec.of(payload.get()) : Codec.SERIALIZED;
+            final long compression = payload.hasRemaining() ? FrameBuffer.readVarLong(payload) : 0;
+            if (username == null || password == null || compression < 0 || compression > MAX_LENGTH)
+                throw new IOException("Invalid login frame");
+            return new Credentials(username, password, codec, (int) compression);
+        } catch (final RuntimeException e) {
+            throw new IOException("Invalid login frame", e);
+        }
+    }
+
+    /**
+     * Allows to read the length of the frame starting at the current position.
+     * @param buffer A buffer containing at least HEADER bytes.
+     * @return The length of the payload.
+     */
+    public static int length (final ByteBuffer buffer) throws IOException {
+        return length(buffer, MAX_LENGTH);
+    }
+
+    /**
+     * Allows to read the length of the frame starting at the current position, with a smaller bound.
+     * @param buffer A buffer containing at least HEADER bytes.
+     * @param max The maximum length of the payload, such as LOGIN_MAX_LENGTH before the login.
+     * @return The length of the payload.
+     */
+    public static int length (final ByteBuffer buffer, final int max) throws IOException {
+        final int length = buffer.getInt(buffer.position()) & ~(COMPRESSED | SEGMENT);
+        if (length > max)
+            throw new IOException("Invalid frame length: " + length);
+        return length;
+    }
+
+    /**
+     * Allows to know if the frame starting at the current position is compressed.
+     * @param buffer A buffer containing at least HEADER bytes.
+     * @return True if its payload must be inflated.
+     */
+    public static boolean isCompressed (final ByteBuffer buffer) {
+        return (buffer.getInt(buffer.position()) & COMPRESSED) != 0;
+    }
+
+    /**
+     * Allows to know if the frame starting at the current position is a segment of a file.
+     * @param buffer A buffer containing at least HEADER bytes.
+     * @return True if its payload is the identifier of a transfer followed by raw bytes.
+     */
+    public static boolean isSegment (final ByteBuffer buffer) {
+        return (buffer.getInt(buffer.position()) & SEGMENT) != 0;
+    }
+
+
+    /**
+     * Content of the login frame.
+     */
+    public static final class Credentials {
+        public final String username;
+        public final String password;
+        public final Codec codec;
+        public final int compression; // 0: no compression
+
+        private Credentials (final String username, final String password, final Codec codec, final int compression) {
+            this.username = username;
+            this.password = password;
+            this.codec = codec;
+            this.compression = compression;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package fr.i360matt.sokeese.commons.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A request sent to many connections at once.
+ * It is encoded at most once per codec, and compressed at most once per codec,
+ * then the same immutable bytes are written to every connection.
+ * An instance is meant to be used by the sending thread only.
+ *
+ * @author 360matt
+ * @version 1.1.0
+ *
+ * @see Frames
+ */
+public final class SharedFrame {
+    private static final int CODECS = Codec.values().length;
+
+    private final Object request;
+    private final ByteBuffer[] frames = new ByteBuffer[CODECS];
+    private final ByteBuffer[] compressed = new ByteBuffer[CODECS];
+
+    /**
+     * @param request The request to send.
+     */
+    public SharedFrame (final Object request) {
+        this.request = request;
+    }
+
+    /**
+     * Allows to retrieve the request itself, for the connections that do not use frames.
+     * @return The request.
+     */
+    public Object getRequest () {
+        return this.request;
+    }
+
+    /**
+     * Allows to retrieve the frame of the request for a codec, encoded on the first call.
+     * @param codec The codec of the connection.
+     * @return A read-only view of the shared frame, with its own position.
+     */
+    public ByteBuffer get (final Codec codec) throws IOException {
+        ByteBuffer frame = this.frames[codec.ordinal()];
+        if (frame == null)
+            this.frames[codec.ordinal()] = frame = Frames.encode(codec, this.request).asReadOnlyBuffer();
+        return frame.duplicate();
+    }
+
+    /**
+     * Allows to retrieve the frame of the request for a codec, compressed if it is large enough.
+     * @param codec The codec of the connection.
+     * @param threshold The compression threshold of the connection, 0 for no compression.
+     * @return A read-only view of the shared frame, with its own position.
+     */
+    public ByteBuffer get (final Codec codec, final int threshold) throws IOException {
+        final ByteBuffer frame = this.get(codec);
+        if (threshold <= 0 || frame.remaining() - Frames.HEADER < threshold)
+            return frame;
+
+        ByteBuffer compressed = this.compressed[codec.ordinal()];
+        if (compressed == null)
+            this.compressed[codec.ordinal()] = compressed = Frames.compress(frame, 1).asReadOnlyBuffer();
+        return compressed.duplicate();
+    }
+}
@@ -0,0 +1,23 @@
+package fr.i360matt.sokeese.commons.transport;
+
+/**
+ * Allows to choose how the requests travel between the server and its clients.
+ * The client and the server must use the same transport.
+ *
+ * @version 1.0.0
+ */
+public enum Transport {
+
+    /**
+     * One ObjectOutputStream / ObjectInputStream pair per connection,
+     * the server dedicates a thread to each session.
+     */
+    STREAM,
+
+    /**
+     * Length-prefixed frames, the server multiplexes all its sessions
+     * on a few Selector event loops.
+     */
+    FRAMED
+
+}
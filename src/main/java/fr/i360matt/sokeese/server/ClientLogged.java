@@ -1,20 +1,51 @@
 package fr.i360matt.sokeese.server;
 
 
+import fr.i360matt.sokeese.commons.metrics.Counting;
+import fr.i360matt.sokeese.commons.metrics.Traffic;
+import fr.i360matt.sokeese.commons.modules.ChunkWriter;
+import fr.i360matt.sokeese.commons.modules.FileReceiver;
+import fr.i360matt.sokeese.commons.modules.FileSender;
+import fr.i360matt.sokeese.commons.modules.GroupManager;
+import fr.i360matt.sokeese.commons.modules.ReplyFuture;
+import fr.i360matt.sokeese.commons.modules.ReplyOwner;
 import fr.i360matt.sokeese.commons.requests.Action;
 import fr.i360matt.sokeese.commons.requests.AuthResponse;
+import fr.i360matt.sokeese.commons.requests.Chunk;
+import fr.i360matt.sokeese.commons.requests.Credit;
+import fr.i360matt.sokeese.commons.requests.FileTransfer;
 import fr.i360matt.sokeese.commons.requests.Message;
 import fr.i360matt.sokeese.commons.requests.Reply;
+import fr.i360matt.sokeese.commons.transport.Codec;
+import fr.i360matt.sokeese.commons.transport.FileRegion;
+import fr.i360matt.sokeese.commons.transport.Frames;
+import fr.i360matt.sokeese.commons.transport.SharedFrame;
+import fr.i360matt.sokeese.utils.Threads;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -23,23 +54,41 @@ import java.util.function.Consumer;
  * Each session will have its own instance of this class.
  *
  * @author 360matt
- * @version 1.4.0
+ * @version 1.11.0
  *
  * @see SokeeseServer
  */
 public class ClientLogged implements Closeable {
+    private static final Object CLOSED = new Object(); // stops the writer of the STREAM transport
+
     protected final Object syncIn = new Object(); // instance object for synchronise:
     protected final Object syncOut = new Object(); // must be different out != in
 
-    private boolean isClientEnabled = false;
+    private volatile boolean isClientEnabled = false;
+    private final AtomicBoolean isListed = new AtomicBoolean();
 
     protected ObjectOutputStream sender;
     protected ObjectInputStream receiver;
 
     public final SokeeseServer server;
     private final Socket socket;
+    private final SelectorLoop.Session session; // only with the FRAMED transport
+    private final BlockingQueue<Object> outbound; // only with the STREAM transport
+    private Codec codec = Codec.SERIALIZED; // chosen by the client with the FRAMED transport
+    private int compression; // threshold accepted at login with the FRAMED transport, 0: no compression
     private String name;
 
+    private final long serial; // the high half of the identifiers of the requests sent to this session
+    private volatile long pool; // non-zero: this session is one of the connections of a pooled client
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final ReplyOwner replies = new ReplyOwner(); // the reply events of the requests sent to this session
+    private final ConcurrentHashMap<Long, ChunkWriter> streams = new ConcurrentHashMap<>(); // streams sent, waiting for credits
+    private final ConcurrentHashMap<Long, FileSender> files = new ConcurrentHashMap<>(); // files being sent
+    private final FileReceiver received; // only with the FRAMED transport
+    private final Traffic traffic = new Traffic(); // requests and bytes of this session only
+    private final Set<String> groups = ConcurrentHashMap.newKeySet(); // joined by this session
+    private Counting.Output written; // bytes written by the STREAM transport, only used by its writer
+
 
     /**
      * Used to instantiate this class by filling in an instance of server and an instance of a Socket connection.
@@ -51,67 +100,44 @@ public class ClientLogged implements Closeable {
      */
     public ClientLogged (final SokeeseServer server, final Socket client) {
         this.server = server;
+        this.serial = server.nextSerial();
         this.socket = client;
+        this.session = null;
+        final int max = server.getOptions().getMaxOutboundQueue();
+        this.outbound = new LinkedBlockingQueue<>((max > 0) ? max : Integer.MAX_VALUE);
+        this.received = null;
 
-        final ExecutorService service = Executors.newSingleThreadExecutor();
+        final ExecutorService service = Threads.newExecutor(server.getOptions().getVirtualThreads());
         service.execute(() -> {
+            final Counting.Input input;
             try (
-                    final ObjectInputStream receiver = new ObjectInputStream(client.getInputStream());
-                    final ObjectOutputStream sender = new ObjectOutputStream(client.getOutputStream())
+                    final ObjectInputStream receiver = new ObjectInputStream(input = new Counting.Input(client.getInputStream()));
+                    final ObjectOutputStream sender = new ObjectOutputStream(this.written = new Counting.Output(new BufferedOutputStream(client.getOutputStream())))
             ) {
 
                 this.sender = sender;
                 this.receiver = receiver;
+                sender.flush(); // the stream header must not wait in the buffer
 
                 if (this.waitLogin()) { // if the login is successfull
                     client.setSoTimeout(1000 * 3600 * 6); // can now be connected for 6 hours
 
-                    this.isClientEnabled = true;
+                    final ExecutorService writer = Threads.newExecutor(this.server.getOptions().getVirtualThreads());
+                    writer.execute(this::drain);
+                    writer.shutdown();
 
-                    this.server.getUserManager().addUser(this);
-                    // add this reference to users list
+                    this.isClientEnabled = true;
 
 
                     while (this.server.isOpen() && this.isOpen()) {
                         // can now listen every packets
 
                         try {
-                            final Object obj;
-                            synchronized (this.syncIn) {
-                                obj = this.receiver.readObject(); // receive object over socket
-                            }
-
-                            if (obj instanceof Action)
-                                this.server.getCatcherManager().handleAction((Action) obj, this);
-                            else if (obj instanceof Message) {
-                                final Message message = (Message) obj;
-                                message.setSender(this.name);
-                                // set this session name as sender name
-
-                                if (message.getRecipient().equalsIgnoreCase("server")) { // to the server
-                                    this.server.getCatcherManager().handleMessage(message, this);
-                                } else { // to be transmitted
-                                    final ServerOptions.Level level = this.server.getOptions().getLevelMessages();
-
-                                    if ((!message.getRecipient().equalsIgnoreCase("ALL") && level.getLevel() == 1) || level.getLevel() == 3) {
-                                        this.server.sendMessage(message);
-                                    }
-                                }
-                            } else if (obj instanceof Reply) {
-                                final Reply reply = (Reply) obj;
-                                reply.setSender(this.name);
-                                // set this session name as sender name
-
-                                if (reply.getRecipient().equalsIgnoreCase("server")) { // to the server
-                                    this.server.getCatcherManager().handleReply(reply);
-                                } else { // to be transmitted
-                                    final ServerOptions.Level level = this.server.getOptions().getLevelMessages();
-
-                                    if ((!reply.getRecipient().equalsIgnoreCase("ALL") && level.getLevel() == 1) || level.getLevel() == 3) {
-                                        this.server.sendReply(reply);
-                                    }
-                                }
-                            }
+                            final long before = input.getCount();
+                            final Object obj = this.receiver.readObject(); // receive object over socket, only this thread reads
+
+                            this.received(obj, input.getCount() - before);
+                            this.handle(obj);
                         } catch (final ClassNotFoundException e) {
                             if (this.server.getOptions().getDebug())
                                 e.printStackTrace();
@@ -123,18 +149,368 @@ public class ClientLogged implements Closeable {
                     e.printStackTrace();
             }
             finally {
-                if (this.isClientEnabled) {
-                    this.isClientEnabled = false;
-                    this.server.getUserManager().removeUser(this);
-                    try {
-                        client.close();
-                    } catch (final IOException e) {
-                        if (this.server.getOptions().getDebug())
-                            e.printStackTrace();
-                    }
+                this.disconnected();
+                try {
+                    client.close();
+                } catch (final IOException e) {
+                    if (this.server.getOptions().getDebug())
+                        e.printStackTrace();
                 }
             }
         });
+        service.shutdown();
+    }
+
+    /**
+     * Used by the FRAMED transport, the connection is served by a SelectorLoop instead of a dedicated thread.
+     * @param server A server instance.
+     * @param channel A non-blocking channel instance.
+     * @param loop The loop that will serve this connection.
+     *
+     * @see SelectorLoop
+     */
+    ClientLogged (final SokeeseServer server, final SocketChannel channel, final SelectorLoop loop) {
+        this.server = server;
+        this.serial = server.nextSerial();
+        this.socket = channel.socket();
+        this.session = new SelectorLoop.Session(this, channel, loop);
+        this.outbound = null;
+        this.received = new FileReceiver(
+                server.getOptions().getFileDirectory(),
+                server.getOptions().getMaxFileReceptions(),
+                server.getCatcherManager()::hasFileEvent,
+                (request, path, transferred) -> server.getCatcherManager().handleFile(request, path, transferred, this)
+        );
+        loop.register(this.session);
+    }
+
+
+    /**
+     * Allows to process a frame received by the FRAMED transport.
+     * The first frame of a connection contains the credentials.
+     * @param payload The payload of the frame.
+     * @param size The size of the frame on the wire.
+     */
+    final void receive (final ByteBuffer payload, final int size) throws IOException {
+        if (this.isClientEnabled) {
+            try {
+                final Object obj = Frames.decode(this.codec, payload);
+                this.received(obj, size);
+                this.handle(obj);
+            } catch (final ClassNotFoundException e) {
+                if (this.server.getOptions().getDebug())
+                    e.printStackTrace();
+            }
+        } else if (this.name == null) {
+            final Frames.Credentials credentials = Frames.decodeLogin(payload);
+            this.name = credentials.username;
+            this.codec = credentials.codec;
+
+            final AuthResponse response = new AuthResponse();
+            final boolean state = this.authenticate(credentials.password, response);
+            if (state && this.server.getOptions().getCompression())
+                this.compression = response.compression = credentials.compression;
+
+            this.session.send(Frames.encode(this.codec, response)); // must be the first frame, never compressed
+            if (state)
+                this.isClientEnabled = true;
+            else
+                this.session.shutdown();
+        }
+    }
+
+    /**
+     * Allows to write a segment of a file received by the FRAMED transport.
+     * @param payload The payload of the frame.
+     */
+    final void receiveSegment (final ByteBuffer payload) throws IOException {
+        if (!this.isClientEnabled)
+            return;
+        final int size = Frames.HEADER + payload.remaining();
+        this.traffic.receivedBytes(size);
+        this.server.getMetrics().getTraffic().receivedBytes(size);
+        this.received.write(payload);
+    }
+
+    /**
+     * Allows to count a request received, for this session and for the server.
+     * @param obj The request.
+     * @param bytes Its size on the wire.
+     */
+    private void received (final Object obj, final long bytes) {
+        this.traffic.received(bytes);
+        this.server.getMetrics().received(obj, bytes);
+    }
+
+    /**
+     * Allows to count a request written, or queued to be written, for this session and for the server.
+     * @param obj The request.
+     * @param bytes Its size on the wire.
+     */
+    private void sent (final Object obj, final long bytes) {
+        this.traffic.sent(bytes);
+        this.server.getMetrics().sent(obj, bytes);
+    }
+
+    /**
+     * Allows to count a request transmitted to other clients.
+     * @param obj The request.
+     */
+    private void forwarded (final Object obj) {
+        this.traffic.forwarded();
+        this.server.getMetrics().forwarded(obj);
+    }
+
+    /**
+     * Allows to process a request received from the client.
+     * @param obj The request.
+     */
+    private void handle (final Object obj) throws IOException {
+        if (obj instanceof Action) {
+            final Action action = (Action) obj;
+            if (Action.POOL.equals(action.getName())) {
+                if (action.getContent() instanceof Long)
+                    this.pool = (Long) action.getContent();
+            } else if (Action.JOIN.equals(action.getName())) {
+                if (action.getContent() instanceof String)
+                    this.joinGroup((String) action.getContent());
+            } else if (Action.LEAVE.equals(action.getName())) {
+                if (action.getContent() instanceof String)
+                    this.leaveGroup((String) action.getContent());
+            } else {
+                this.server.getCatcherManager().handleAction(action, this);
+            }
+        }
+        else if (obj instanceof Message) {
+            final Message message = (Message) obj;
+            message.setSender(this.name);
+            // set this session name as sender name
+
+            if (message.getRecipient().equalsIgnoreCase("server")) { // to the server
+                this.server.getCatcherManager().handleMessage(message, this);
+            } else if (this.server.route(message.getRecipient(), message)) { // to be transmitted, if the level allows it
+                this.forwarded(message);
+            }
+        } else if (obj instanceof Chunk) {
+            final Chunk chunk = (Chunk) obj;
+            chunk.setSender(this.name);
+            // set this session name as sender name
+
+            this.server.getCatcherManager().handleChunk(chunk, this, () -> {
+                if (!chunk.isLast())
+                    this.credit(chunk.getIdStream());
+            });
+        } else if (obj instanceof Credit) {
+            final ChunkWriter writer = this.streams.get(((Credit) obj).getIdStream());
+            if (writer != null)
+                writer.grant(((Credit) obj).getAmount());
+        } else if (obj instanceof FileTransfer) {
+            final FileTransfer transfer = (FileTransfer) obj;
+            transfer.setSender(this.name);
+            // set this session name as sender name
+
+            if (this.received != null) {
+                try {
+                    this.received.open(transfer);
+                } catch (final IOException e) { // the file is skipped, not the session
+                    if (this.server.getOptions().getDebug())
+                        e.printStackTrace();
+                }
+            }
+        } else if (obj instanceof Reply) {
+            final Reply reply = (Reply) obj;
+            reply.setSender(this.name);
+            // set this session name as sender name
+
+            if (reply.getRecipient().equalsIgnoreCase("server")) { // to the server
+                this.server.getCatcherManager().handleReply(reply);
+            } else if (this.server.route(reply.getRecipient(), reply)) { // to be transmitted, if the level allows it
+                this.forwarded(reply);
+            }
+        }
+    }
+
+    /**
+     * Allows to queue a request for the client, whatever the transport.
+     * The caller never waits for the socket: the request is written later by the writer of the session,
+     * so it must not be modified once sent.
+     * Once maxOutboundQueue requests are waiting, the slowConsumer policy applies.
+     * @param obj The request.
+     * @throws IOException If the request is dropped, or if the session is closed by the policy.
+     */
+    final void write (final Object obj) throws IOException {
+        if (!this.isClientEnabled)
+            return;
+        if (this.session != null) {
+            final ByteBuffer encoded = Frames.compress(Frames.encode(this.codec, obj), this.compression);
+            final int size = encoded.remaining();
+            this.queued(this.session.send(encoded), obj);
+            this.sent(obj, size);
+        } else {
+            this.queue(obj);
+        }
+    }
+
+    /**
+     * Allows to queue a request sent to many clients at once.
+     * With the FRAMED transport, the frame is shared with the other recipients instead of being encoded again.
+     * @param frame The shared request.
+     * @throws IOException If the request is dropped, or if the session is closed by the policy.
+     */
+    final void write (final SharedFrame frame) throws IOException {
+        if (!this.isClientEnabled)
+            return;
+        if (this.session != null) {
+            final ByteBuffer encoded = frame.get(this.codec, this.compression);
+            final int size = encoded.remaining();
+            this.queued(this.session.send(encoded), frame.getRequest());
+            this.sent(frame.getRequest(), size);
+        } else {
+            this.queue(frame.getRequest());
+        }
+    }
+
+    /**
+     * Allows to queue a request for the writer of the STREAM transport, with the slowConsumer policy.
+     * @param obj The request.
+     */
+    private void queue (final Object obj) throws IOException {
+        if (this.outbound.offer(obj))
+            return;
+
+        final ServerOptions options = this.server.getOptions();
+        boolean queued = false;
+        switch (options.getEffectiveSlowConsumer()) {
+            case DROP_OLDEST:
+                while (!(queued = this.outbound.offer(obj)) && this.isClientEnabled) {
+                    final Object oldest = this.outbound.poll();
+                    if (oldest != null)
+                        this.dropped(oldest);
+                }
+                break;
+            case BLOCK:
+                // the default of the STREAM transport waits without limit, like the direct writes before the queue
+                final int timeout = (options.getSlowConsumer() == null) ? 0 : options.getSlowConsumerTimeout();
+                try {
+                    if (timeout > 0) {
+                        queued = this.outbound.offer(obj, timeout, TimeUnit.MILLISECONDS);
+                    } else {
+                        while (!(queued = this.outbound.offer(obj, 100, TimeUnit.MILLISECONDS)) && this.isClientEnabled) {
+                            // the queue is still full: wait again, unless the session was closed meanwhile
+                        }
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (!queued)
+                    this.close();
+                break;
+            case DISCONNECT:
+                this.close();
+                break;
+            default:
+                break;
+        }
+        this.queued(queued, obj);
+    }
+
+    private void queued (final boolean queued, final Object obj) throws IOException {
+        if (queued)
+            return;
+        this.dropped(obj);
+        if (!this.isClientEnabled)
+            throw new IOException("The session is closed: the client is too slow");
+        throw new IOException("Dropped: the client is too slow");
+    }
+
+    /**
+     * Allows to count a request dropped by the slowConsumer policy.
+     * @param obj The request, or null if it is only known as a frame.
+     */
+    final void dropped (final Object obj) {
+        this.traffic.dropped();
+        this.server.getMetrics().dropped(obj);
+    }
+
+    /**
+     * Writer of the STREAM transport: writes up to maxBatchSize queued requests,
+     * waiting at most maxLinger ms for the batch to fill, then flushes them at once.
+     */
+    private void drain () {
+        try {
+            while (true) {
+                Object obj = this.outbound.take();
+
+                final ServerOptions options = this.server.getOptions();
+                final int max = Math.max(1, options.getMaxBatchSize());
+                final long lingerEnd = System.currentTimeMillis() + options.getMaxLinger();
+
+                int count = 0;
+                while (obj != null) {
+                    if (obj == CLOSED)
+                        return;
+                    final long before = this.written.getCount();
+                    this.sender.writeObject(obj); // drained to the buffered stream at the end of each object
+                    this.sent(obj, this.written.getCount() - before);
+                    if (obj instanceof Chunk)
+                        this.sender.reset(); // the stream must not keep a reference to every chunk sent
+                    if (++count >= max)
+                        break;
+
+                    obj = this.outbound.poll();
+                    if (obj == null) {
+                        final long linger = lingerEnd - System.currentTimeMillis();
+                        if (linger > 0)
+                            obj = this.outbound.poll(linger, TimeUnit.MILLISECONDS);
+                    }
+                }
+                this.sender.flush();
+            }
+        } catch (final IOException e) {
+            if (this.server.getOptions().getDebug())
+                e.printStackTrace();
+            this.close();
+        } catch (final InterruptedException ignored) { }
+    }
+
+    /**
+     * Allows to forget this session once its connection is lost.
+     */
+    final void disconnected () {
+        this.isClientEnabled = false;
+        if (this.outbound != null) {
+            this.outbound.clear();
+            this.outbound.offer(CLOSED); // else the writer stops on the closed socket
+        }
+        if (this.isListed.compareAndSet(true, false))
+            this.server.getUserManager().removeUser(this);
+        for (final String group : this.groups)
+            this.leaveGroup(group);
+
+        // the requests sent to this session will never be answered
+        this.server.getCatcherManager().failReplyEvents(this.replies, new IOException("The session is closed"));
+        for (final ChunkWriter writer : this.streams.values())
+            writer.fail(new IOException("The session is closed"));
+        for (final FileSender file : this.files.values())
+            file.fail(new IOException("The session is closed"));
+        if (this.received != null)
+            this.received.close();
+    }
+
+    /**
+     * Allows to give a credit back to the client sending a stream.
+     * @param id The identifier of the stream.
+     */
+    private void credit (final long id) {
+        final Credit credit = new Credit();
+        credit.setIdStream(id);
+        credit.setAmount(1);
+        try {
+            this.write(credit);
+        } catch (final IOException e) {
+            if (this.server.getOptions().getDebug())
+                e.printStackTrace();
+        }
     }
 
 
@@ -149,10 +525,7 @@ public class ClientLogged implements Closeable {
     public final void sendMessage (final Message message) {
         if (!this.isClientEnabled) return;
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(message);
-                this.sender.flush();
-            }
+            this.write(message);
         } catch (final IOException e) {
             if (this.server.getOptions().getDebug())
                 e.printStackTrace();
@@ -168,10 +541,7 @@ public class ClientLogged implements Closeable {
     public final void sendAction (final Action action) {
         if (!this.isClientEnabled) return;
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(action);
-                this.sender.flush();
-            }
+            this.write(action);
         } catch (final IOException e) {
             if (this.server.getOptions().getDebug())
                 e.printStackTrace();
@@ -190,10 +560,7 @@ public class ClientLogged implements Closeable {
             final Message message = new Message();
             consumer.accept(message);
 
-            synchronized (this.syncOut) {
-                this.sender.writeObject(message);
-                this.sender.flush();
-            }
+            this.write(message);
         } catch (final IOException e) {
             if (this.server.getOptions().getDebug())
                 e.printStackTrace();
@@ -212,10 +579,7 @@ public class ClientLogged implements Closeable {
             final Action action = new Action();
             consumer.accept(action);
 
-            synchronized (this.syncOut) {
-                this.sender.writeObject(action);
-                this.sender.flush();
-            }
+            this.write(action);
         } catch (final IOException e) {
             if (this.server.getOptions().getDebug())
                 e.printStackTrace();
@@ -231,10 +595,7 @@ public class ClientLogged implements Closeable {
     public final void sendReply (final Reply reply) {
         if (!this.isClientEnabled) return;
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(reply);
-                this.sender.flush();
-            }
+            this.write(reply);
         } catch (final IOException e) {
             if (this.server.getOptions().getDebug())
                 e.printStackTrace();
@@ -255,16 +616,15 @@ public class ClientLogged implements Closeable {
     public final void sendMessage (final Message message, final int delay, final BiConsumer<Reply, Boolean> consumer) {
         if (!this.isClientEnabled) return;
 
-        message.setIdRequest(this.server.random.nextLong());
-        this.server.getCatcherManager().addReplyEvent(message.getIdRequest(), delay, consumer);
+        message.setSender("server"); // the client replies to the sender
+        message.setIdRequest(this.waitReply(delay, consumer));
 
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(message);
-                this.sender.flush();
-            }
+            this.write(message);
         } catch (final IOException e) {
-            e.printStackTrace();
+            this.server.getCatcherManager().failReplyEvent(message.getIdRequest(), e); // no reply will come
+            if (this.server.getOptions().getDebug())
+                e.printStackTrace();
         }
     }
 
@@ -285,19 +645,34 @@ public class ClientLogged implements Closeable {
         final Message message = new Message();
         messageConsumer.accept(message);
 
-        message.setIdRequest(this.server.random.nextLong());
-        this.server.getCatcherManager().addReplyEvent(message.getIdRequest(), delay, eventConsumer);
+        message.setSender("server"); // the client replies to the sender
+        message.setIdRequest(this.waitReply(delay, eventConsumer));
 
         try {
-            synchronized (this.syncOut) {
-                this.sender.writeObject(message);
-                this.sender.flush();
-            }
+            this.write(message);
         } catch (final IOException e) {
-            e.printStackTrace();
+            this.server.getCatcherManager().failReplyEvent(message.getIdRequest(), e); // no reply will come
+            if (this.server.getOptions().getDebug())
+                e.printStackTrace();
         }
     }
 
+    /**
+     * Allows to record a reply event under a new identifier.
+     * The identifiers are made of the serial of the session and of a counter:
+     * they never collide with the requests sent to the other sessions, and are never 0.
+     * @param delay The maximum waiting time.
+     * @param consumer The event callback.
+     * @return The identifier of the request.
+     */
+    private long waitReply (final int delay, final BiConsumer<Reply, Boolean> consumer) {
+        long id;
+        do { // skips an identifier still waiting after the counter has wrapped
+            id = (this.serial << 32) | Integer.toUnsignedLong(this.sequence.incrementAndGet());
+        } while ((id & 0xFFFFFFFFL) == 0 || !this.server.getCatcherManager().addReplyEvent(id, delay, consumer, this.replies));
+        return id;
+    }
+
     /**
      * Allows to send the client a 'MESSAGE' request.
      * And wait for a response within 200ms
@@ -330,6 +705,198 @@ public class ClientLogged implements Closeable {
         this.sendMessage(messageConsumer, 200, eventConsumer);
     }
 
+    /**
+     * Allows to send the client a 'MESSAGE' request and to retrieve its response as a future.
+     * The future completes exceptionally with a TimeoutException after the delay,
+     * or with an IOException if the session is closed before the response.
+     *
+     * @param message A 'MESSAGE' request.
+     * @param delay The maximum waiting time.
+     * @param executor The executor completing the future, or null to complete it on the thread receiving the response.
+     * @return The future of the response.
+     *
+     * @see Message
+     * @see Reply
+     */
+    public final CompletableFuture<Reply> request (final Message message, final int delay, final Executor executor) {
+        final ReplyFuture pending = new ReplyFuture(delay, executor);
+        if (!this.isClientEnabled) {
+            pending.fail(new IOException("The session is closed"));
+            return pending.getFuture();
+        }
+
+        message.setSender("server"); // the client replies to the sender
+        message.setIdRequest(this.waitReply(delay, pending));
+
+        try {
+            this.write(message);
+        } catch (final IOException e) {
+            this.server.getCatcherManager().failReplyEvent(message.getIdRequest(), e);
+        }
+        return pending.getFuture();
+    }
+
+    /**
+     * Allows to send the client a 'MESSAGE' request and to retrieve its response as a future.
+     *
+     * @param messageConsumer A 'MESSAGE' request consumer.
+     * @param delay The maximum waiting time.
+     * @param executor The executor completing the future, or null to complete it on the thread receiving the response.
+     * @return The future of the response.
+     *
+     * @see #request(Message, int, Executor)
+     */
+    public final CompletableFuture<Reply> request (final Consumer<Message> messageConsumer, final int delay, final Executor executor) {
+        final Message message = new Message();
+        messageConsumer.accept(message);
+        return this.request(message, delay, executor);
+    }
+
+    /**
+     * Allows to send the client a 'MESSAGE' request and to retrieve its response as a future,
+     * completed on the thread receiving the response.
+     *
+     * @param message A 'MESSAGE' request.
+     * @param delay The maximum waiting time.
+     * @return The future of the response.
+     *
+     * @see #request(Message, int, Executor)
+     */
+    public final CompletableFuture<Reply> request (final Message message, final int delay) {
+        return this.request(message, delay, null);
+    }
+
+    /**
+     * Allows to send the client a 'MESSAGE' request and to retrieve its response as a future,
+     * completed on the thread receiving the response.
+     *
+     * @param messageConsumer A 'MESSAGE' request consumer.
+     * @param delay The maximum waiting time.
+     * @return The future of the response.
+     *
+     * @see #request(Message, int, Executor)
+     */
+    public final CompletableFuture<Reply> request (final Consumer<Message> messageConsumer, final int delay) {
+        return this.request(messageConsumer, delay, null);
+    }
+
+
+    /**
+     * Allows to send the client a stream, in chunks on a channel.
+     * The chunks are read by a dedicated thread and queued one at a time: the other requests are sent between them.
+     * The client gives a credit back for each chunk handled, the stream waits once the window of credits is spent.
+     *
+     * @param channel The channel of the stream.
+     * @param input The bytes to send, the input is closed once sent.
+     * @param delay The maximum waiting time for a credit.
+     * @return Completed once the last chunk is queued, exceptionally with a TimeoutException if the client stops
+     *         giving credits, or with an IOException if the session is closed.
+     *
+     * @see Chunk
+     */
+    public final CompletableFuture<Void> stream (final String channel, final InputStream input, final int delay) {
+        final long id = (this.serial << 32) | Integer.toUnsignedLong(this.sequence.incrementAndGet());
+        final ServerOptions options = this.server.getOptions();
+
+        final ChunkWriter writer = new ChunkWriter(id, channel, input, options.getStreamChunkSize(), options.getStreamWindow(), delay, chunk -> {
+            if (!this.isClientEnabled)
+                throw new IOException("The session is closed");
+            chunk.setSender("server");
+            this.write(chunk);
+        });
+        if (!this.isClientEnabled)
+            writer.fail(new IOException("The session is closed"));
+
+        this.streams.put(id, writer);
+        writer.getFuture().whenComplete((ignored, e) -> this.streams.remove(id));
+
+        final ExecutorService service = Threads.newExecutor(options.getVirtualThreads());
+        service.execute(writer);
+        service.shutdown();
+
+        return writer.getFuture();
+    }
+
+    /**
+     * Allows to send the client bytes as a stream, in chunks on a channel.
+     *
+     * @param channel The channel of the stream.
+     * @param data The bytes to send.
+     * @param delay The maximum waiting time for a credit.
+     * @return Completed once the last chunk is queued.
+     *
+     * @see #stream(String, InputStream, int)
+     */
+    public final CompletableFuture<Void> stream (final String channel, final byte[] data, final int delay) {
+        return this.stream(channel, new ByteArrayInputStream(data), delay);
+    }
+
+
+    /**
+     * Allows to send the client a file on a channel, only with the FRAMED transport.
+     * The segments are written by the loop of the session straight from the file to the socket,
+     * one at a time: the other requests are sent between them.
+     * The client writes them to a temporary file, followed by its 'FILE' events.
+     *
+     * @param channel The channel of the transfer.
+     * @param path The file, its size must not change during the transfer.
+     * @return Completed once the last segment is written, exceptionally with an IOException if the file
+     *         cannot be read or if the session is closed, or with an UnsupportedOperationException with the STREAM transport.
+     *
+     * @see FileTransfer
+     */
+    public final CompletableFuture<Void> sendFile (final String channel, final Path path) {
+        final CompletableFuture<Void> failed = new CompletableFuture<>();
+        if (this.session == null) {
+            failed.completeExceptionally(new UnsupportedOperationException("File transfers need the FRAMED transport"));
+            return failed;
+        }
+
+        final long id = (this.serial << 32) | Integer.toUnsignedLong(this.sequence.incrementAndGet());
+        final FileSender file;
+        try {
+            file = new FileSender(id, channel, path, this.server.getOptions().getFileSegmentSize());
+        } catch (final IOException e) {
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        this.files.put(id, file);
+        file.getFuture().whenComplete((ignored, e) -> this.files.remove(id));
+        if (!this.isClientEnabled) {
+            file.fail(new IOException("The session is closed"));
+            return file.getFuture();
+        }
+
+        final FileTransfer request = file.getRequest(false);
+        request.setSender("server");
+        try {
+            this.write(request);
+        } catch (final IOException e) {
+            file.fail(e);
+            return file.getFuture();
+        }
+        this.sendSegment(file);
+        return file.getFuture();
+    }
+
+    /**
+     * Allows to queue the next segment of a file, once the previous one is written.
+     * @param file The file being sent.
+     */
+    private void sendSegment (final FileSender file) {
+        if (file.getFuture().isDone())
+            return; // failed with the session
+        final FileRegion region = file.next(() -> this.sendSegment(file));
+        if (region == null) {
+            file.complete();
+        } else {
+            this.traffic.sentBytes(region.getSize());
+            this.server.getMetrics().getTraffic().sentBytes(region.getSize());
+            this.session.send(region);
+        }
+    }
+
 
     private final List<String> blacklisted = Arrays.asList("server", "all");
     /**
@@ -339,38 +906,55 @@ public class ClientLogged implements Closeable {
     private boolean waitLogin () throws IOException, ClassNotFoundException {
         final AuthResponse response = new AuthResponse();
 
-        final boolean state;
+        // only the thread of the session reads: no lock, it would pin a virtual thread during the read
+        this.name = receiver.readUTF();
+        final String password = receiver.readUTF();
 
-        final String password;
-        synchronized (this.syncIn) {
-            this.name = receiver.readUTF();
-            password = receiver.readUTF();
+        final boolean state = this.authenticate(password, response);
+
+        synchronized (this.syncOut) {
+            sender.writeObject(response);
+            sender.flush();
         }
 
+        return state;
+    }
+
+    /**
+     * Allows to check the credentials received, whatever the transport.
+     * @param password The password received.
+     * @param response The response that will be sent to the client.
+     * @return If the connection is accepted.
+     */
+    private boolean authenticate (final String password, final AuthResponse response) {
+        final boolean state;
+
         if (this.server.getOptions().getMaxClients() <= this.server.getUserManager().getCount()) {
             // if the limit of simultaneous connected clients is reached
 
             state = false;
             response.code = "MAX_GLOBAL_CLIENT";
         } else {
-            if (blacklisted.contains(this.name.toLowerCase())) {
+            if (blacklisted.contains(this.name.toLowerCase()) || GroupManager.isGroup(this.name)) {
                 state = false;
                 response.code = "FORBIDDEN";
-            } else if (this.server.getOptions().getMaxSameClient() < this.server.getUserManager().getUserCount(this.name)) {
+            } else if (this.server.getOptions().getMaxSameClient() <= this.server.getUserManager().getUserCount(this.name)) {
                 state = false;
                 response.code = "MAX_SAME_CLIENT";
             } else {
                 final BiFunction<String, String, Boolean> loginManager = this.server.getLoginManager();
-                state = loginManager == null || loginManager.apply(this.name, password);
-                response.code = (state) ? "OK" : "INVALID";
+                if (loginManager == null || loginManager.apply(this.name, password)) {
+                    // the limits are checked again while adding, other clients may have logged in meanwhile
+                    response.code = this.server.getUserManager().addUser(this, this.server.getOptions().getMaxClients(), this.server.getOptions().getMaxSameClient());
+                    state = response.code.equals("OK");
+                    this.isListed.set(state);
+                } else {
+                    state = false;
+                    response.code = "INVALID";
+                }
             }
         }
 
-        synchronized (this.syncOut) {
-            sender.writeObject(response);
-            sender.flush();
-        }
-
         return state;
     }
 
@@ -383,11 +967,58 @@ public class ClientLogged implements Closeable {
         return this.name;
     }
 
+    /**
+     * Allows to know if this session is one of the connections of a pooled client.
+     * The requests sent to the name of a pooled client are delivered on only one of its connections.
+     * @return The identifier of the pool, or 0.
+     */
+    public final long getPool () {
+        return this.pool;
+    }
+
+    /**
+     * Allows to add this session to a group: it receives the requests sent to '#group'.
+     * @param group The name of the group, without '#'.
+     * @return If this session is a member of the group, false if the group is full or the session closed.
+     */
+    public final boolean joinGroup (final String group) {
+        if (!this.server.getGroupManager().join(this, group, this.server.getOptions().getMaxClientsPerGroup()))
+            return false;
+        this.groups.add(group);
+        if (!this.isListed.get()) { // not logged in, or closed meanwhile: disconnected() may not have seen this group
+            this.leaveGroup(group);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Allows to remove this session from a group.
+     * @param group The name of the group, without '#'.
+     * @return If this session was a member of the group.
+     */
+    public final boolean leaveGroup (final String group) {
+        this.groups.remove(group);
+        return this.server.getGroupManager().leave(this, group);
+    }
+
+    /**
+     * Allows to retrieve the groups joined by this session.
+     * @return A read-only live view of the names of the groups, without '#'.
+     */
+    public final Set<String> getGroups () {
+        return Collections.unmodifiableSet(this.groups);
+    }
+
     /**
      * Allows to disconnect the server connection
      */
     @Override public void close () {
         this.isClientEnabled = false;
+        if (this.session != null) {
+            this.session.close();
+            return;
+        }
         try {
             this.socket.close();
         } catch (final IOException e) {
@@ -396,6 +1027,40 @@ public class ClientLogged implements Closeable {
         }
     }
 
+    /**
+     * Allows to retrieve the number of requests waiting to be written to the client.
+     * A depth close to maxOutboundQueue means that the client does not read fast enough.
+     * @return The depth of the outbound queue.
+     */
+    public final int getQueueDepth () {
+        return (this.session != null) ? this.session.depth.get() : this.outbound.size();
+    }
+
+    /**
+     * Allows to retrieve the number of requests dropped by the slowConsumer policy.
+     * @return The number of requests.
+     */
+    public final long getDroppedCount () {
+        return this.traffic.getDropped();
+    }
+
+    /**
+     * Allows to retrieve the counters of this session: requests and bytes in and out, forwarded and dropped requests.
+     * The counters of the whole server are in SokeeseServer.getMetrics().
+     * @return The counters.
+     */
+    public final Traffic getTraffic () {
+        return this.traffic;
+    }
+
+    /**
+     * Allows to retrieve the number of requests sent to this client which are waiting for its reply.
+     * @return The number of requests.
+     */
+    public final int getPendingReplies () {
+        return this.replies.size();
+    }
+
     /**
      * Allow to retrieve the connection state of the client.
      * @return the connection state of the client.
@@ -0,0 +1,550 @@
+package fr.i360matt.sokeese.server;
+
+import fr.i360matt.sokeese.commons.transport.FileRegion;
+import fr.i360matt.sokeese.commons.transport.Frames;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Event loop of the FRAMED transport.
+ * A few instances are enough to serve every session of the server,
+ * each one owns a Selector and a thread.
+ * The segments of the files are written by the loop too, straight from the files to the sockets.
+ * The outbound queue of a session is bounded by maxOutboundQueue, see ServerOptions.SlowConsumer.
+ * Until its login is accepted, a session may only send a small plain frame: anything else closes it.
+ *
+ * @author 360matt
+ * @version 1.4.0
+ *
+ * @see SokeeseServer
+ * @see ClientLogged
+ */
+final class SelectorLoop implements Closeable {
+    private static final long LOGIN_TIMEOUT = 1000; // same as the STREAM transport
+    private static final ThreadLocal<Boolean> LOOP_THREAD = new ThreadLocal<>(); // set on the thread of every loop
+
+    private final SokeeseServer server;
+    private final Selector selector;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<Session> flushes = new ConcurrentLinkedQueue<>();
+    private final Queue<Session> lingers = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Session> handshakes = new ArrayDeque<>(); // only used by the loop thread
+    private final ArrayDeque<Session> lingering = new ArrayDeque<>(); // only used by the loop thread
+
+    private final ByteBuffer shared = ByteBuffer.allocate(64 * 1024); // sessions only keep their incomplete frames
+    private ByteBuffer[] batch = new ByteBuffer[64]; // frames gathered in a single write
+
+    private volatile boolean running = true;
+
+
+    /**
+     * Allows to open the Selector and to start the loop.
+     * @param server The server instance.
+     */
+    SelectorLoop (final SokeeseServer server) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+
+        final ExecutorService service = Executors.newSingleThreadExecutor();
+        service.execute(this::run);
+        service.shutdown();
+    }
+
+    /**
+     * Allows to attach a new connection to this loop.
+     * @param session The session of the connection.
+     */
+    void register (final Session session) {
+        this.execute(() -> {
+            try {
+                session.key = session.channel.register(this.selector, SelectionKey.OP_READ, session);
+                this.handshakes.add(session);
+            } catch (final IOException e) {
+                if (this.server.getOptions().getDebug())
+                    e.printStackTrace();
+                this.terminate(session);
+            }
+        });
+    }
+
+    /**
+     * Allows to know if the current thread runs a loop, whichever it is.
+     * Such a thread must never wait for a session: the sessions of its loop, or of another one waiting for it, would stall.
+     * @return True on the thread of a loop.
+     */
+    static boolean isLoopThread () {
+        return LOOP_THREAD.get() != null;
+    }
+
+    /**
+     * Allows to run a task on the loop thread.
+     * @param task The task.
+     */
+    void execute (final Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    private void run () {
+        LOOP_THREAD.set(Boolean.TRUE);
+        try {
+            while (this.running) {
+                this.selector.select(this.timeout());
+
+                Runnable task;
+                while ((task = this.tasks.poll()) != null)
+                    task.run();
+
+                Session session;
+                while ((session = this.flushes.poll()) != null)
+                    this.flush(session);
+
+                while ((session = this.lingers.poll()) != null)
+                    this.lingering.add(session);
+                this.flushLingering();
+
+                final Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    session = (Session) key.attachment();
+                    if (key.isValid() && key.isWritable())
+                        this.flush(session);
+                    if (key.isValid() && key.isReadable())
+                        this.read(session);
+                }
+
+                this.expireHandshakes();
+            }
+        } catch (final Exception e) {
+            if (this.server.getOptions().getDebug())
+                e.printStackTrace();
+        } finally {
+            for (final SelectionKey key : this.selector.keys())
+                this.terminate((Session) key.attachment());
+            try {
+                this.selector.close();
+            } catch (final IOException e) {
+                if (this.server.getOptions().getDebug())
+                    e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * The loop only needs to wake up by itself to expire the pending logins and to flush the lingering frames.
+     */
+    private long timeout () {
+        final Session handshake = this.handshakes.peek();
+        final Session linger = this.lingering.peek();
+        if (handshake == null && linger == null)
+            return 0;
+
+        long deadline = Long.MAX_VALUE;
+        if (handshake != null)
+            deadline = handshake.deadline;
+        if (linger != null)
+            deadline = Math.min(deadline, linger.flushAt);
+        return Math.max(1, deadline - System.currentTimeMillis());
+    }
+
+    private void flushLingering () {
+        final long now = System.currentTimeMillis();
+
+        Session session;
+        while ((session = this.lingering.peek()) != null && session.flushAt <= now) {
+            this.lingering.poll();
+            this.flush(session);
+        }
+    }
+
+    private void expireHandshakes () {
+        final long now = System.currentTimeMillis();
+
+        Session session;
+        while ((session = this.handshakes.peek()) != null) {
+            if (session.client.isOpen() || !session.channel.isOpen()) {
+                this.handshakes.poll(); // logged or already gone
+            } else if (session.deadline <= now) {
+                this.handshakes.poll();
+                this.terminate(session);
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void read (final Session session) {
+        final ByteBuffer buffer;
+        if (session.inbound != null) {
+            buffer = session.inbound;
+        } else {
+            buffer = this.shared;
+            buffer.clear();
+        }
+
+        try {
+            if (session.channel.read(buffer) < 0) {
+                this.terminate(session);
+                return;
+            }
+            buffer.flip();
+
+            int needed = Frames.HEADER;
+            while (session.channel.isOpen() && buffer.remaining() >= Frames.HEADER) {
+                final boolean logged = session.client.isOpen();
+                final int length = Frames.length(buffer, logged ? Frames.MAX_LENGTH : Frames.LOGIN_MAX_LENGTH);
+                final boolean compressed = Frames.isCompressed(buffer);
+                final boolean segment = Frames.isSegment(buffer);
+                if (!logged && (compressed || segment))
+                    throw new IOException("Invalid login frame");
+
+                needed = Frames.HEADER + length;
+                if (buffer.remaining() < needed)
+                    break;
+
+                final int start = buffer.position() + Frames.HEADER;
+                final ByteBuffer payload = buffer.duplicate();
+                payload.position(start).limit(start + length);
+                buffer.position(start + length);
+
+                if (segment)
+                    session.client.receiveSegment(payload);
+                else
+                    session.client.receive(compressed ? Frames.inflate(payload) : payload, needed);
+                needed = Frames.HEADER;
+            }
+
+            if (!buffer.hasRemaining() || !session.channel.isOpen()) {
+                session.inbound = null;
+            } else if (buffer == this.shared || buffer.capacity() < needed) {
+                final ByteBuffer kept = ByteBuffer.allocate(Math.max(needed, 1024));
+                kept.put(buffer);
+                session.inbound = kept;
+            } else {
+                buffer.compact();
+            }
+        } catch (final Exception e) {
+            if (this.server.getOptions().getDebug())
+                e.printStackTrace();
+            this.terminate(session);
+        }
+    }
+
+    /**
+     * Allows to write the queued frames of a session, up to maxBatchSize frames per write.
+     * A segment of a file ends the batch, it is written alone once the frames before it are written.
+     */
+    private void flush (final Session session) {
+        try {
+            while (true) {
+                if (!session.channel.isOpen()) {
+                    session.outbound.clear();
+                    return;
+                }
+
+                if (session.unsent == null && session.region != null) {
+                    if (!session.region.writeTo(session.channel)) { // the socket is full, wait for it
+                        session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    final FileRegion region = session.region;
+                    session.region = null;
+                    region.written(); // may queue the next segment
+                }
+
+                final int max = Math.max(1, this.server.getOptions().getMaxBatchSize());
+                int count = 0;
+                if (session.unsent != null) {
+                    this.reserve(Math.max(max, session.unsent.length));
+                    System.arraycopy(session.unsent, 0, this.batch, 0, session.unsent.length);
+                    count = session.unsent.length;
+                    session.unsent = null;
+                } else {
+                    this.reserve(max);
+                }
+
+                Object frame;
+                while (count < max && session.region == null && (frame = session.outbound.poll()) != null) {
+                    session.depth.decrementAndGet();
+                    if (frame instanceof FileRegion) {
+                        session.region = (FileRegion) frame;
+                        break;
+                    }
+                    this.batch[count++] = (ByteBuffer) frame;
+                }
+                if (session.blocked > 0)
+                    session.signalRoom();
+
+                if (count == 0) {
+                    if (session.region != null)
+                        continue;
+                    if (session.closing) {
+                        this.terminate(session);
+                        return;
+                    }
+                    if (session.key != null && (session.key.interestOps() & SelectionKey.OP_WRITE) != 0)
+                        session.key.interestOps(SelectionKey.OP_READ);
+
+                    session.scheduled.set(false);
+                    if (session.outbound.isEmpty() || !session.scheduled.compareAndSet(false, true))
+                        return;
+                    continue;
+                }
+
+                session.channel.write(this.batch, 0, count);
+
+                int first = 0;
+                while (first < count && !this.batch[first].hasRemaining())
+                    first++;
+
+                if (first < count) { // the socket is full, wait for it
+                    session.unsent = Arrays.copyOfRange(this.batch, first, count);
+                    Arrays.fill(this.batch, 0, count, null);
+                    session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                Arrays.fill(this.batch, 0, count, null);
+            }
+        } catch (final Exception e) {
+            if (this.server.getOptions().getDebug())
+                e.printStackTrace();
+            this.terminate(session);
+        }
+    }
+
+    private void reserve (final int size) {
+        if (this.batch.length < size)
+            this.batch = new ByteBuffer[size];
+    }
+
+    private void terminate (final Session session) {
+        if (session.key != null)
+            session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (final IOException e) {
+            if (this.server.getOptions().getDebug())
+                e.printStackTrace();
+        }
+        session.inbound = null;
+        session.unsent = null;
+        session.region = null;
+        session.outbound.clear();
+        session.depth.set(0);
+        if (session.blocked > 0)
+            session.signalRoom();
+        session.client.disconnected();
+    }
+
+    /**
+     * Allows to stop the loop, every session attached to it is disconnected.
+     */
+    @Override
+    public void close () {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+
+    /**
+     * State of a connection attached to a loop.
+     */
+    static final class Session {
+        final ClientLogged client;
+        final SocketChannel channel;
+        final SelectorLoop loop;
+        final long deadline = System.currentTimeMillis() + LOGIN_TIMEOUT;
+
+        final Queue<Object> outbound = new ConcurrentLinkedQueue<>(); // frames and segments of files
+        final AtomicInteger depth = new AtomicInteger(); // size of outbound
+        final AtomicBoolean scheduled = new AtomicBoolean(); // queued for a flush or waiting for OP_WRITE
+        volatile boolean closing;
+        volatile long flushAt;
+
+        SelectionKey key;
+        ByteBuffer inbound; // incomplete frame, null most of the time
+        ByteBuffer[] unsent; // frames of the last write that did not fit in the socket
+        FileRegion region; // segment being written, after the unsent frames
+
+        private final Lock sync = new ReentrantLock(); // only used with the BLOCK policy
+        private final Condition room = this.sync.newCondition();
+        volatile int blocked; // senders waiting for room, guarded by sync
+
+        Session (final ClientLogged client, final SocketChannel channel, final SelectorLoop loop) {
+            this.client = client;
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        /**
+         * Allows to queue a frame, it will be written by the loop thread.
+         * The write is delayed up to maxLinger ms, unless maxBatchSize frames are waiting.
+         * Once maxOutboundQueue requests are waiting, the slowConsumer policy applies.
+         * @param frame The frame.
+         * @return False if the frame is dropped, or if the session is closed by the policy.
+         */
+        boolean send (final ByteBuffer frame) {
+            final ServerOptions options = this.loop.server.getOptions();
+            final int max = options.getMaxOutboundQueue();
+            if (max > 0 && this.depth.get() >= max && !this.makeRoom(options.getEffectiveSlowConsumer(), max, options.getSlowConsumerTimeout()))
+                return false;
+            this.queue(frame);
+            return true;
+        }
+
+        /**
+         * Allows to apply the slowConsumer policy once the outbound queue is full.
+         * @return True if the new frame can be queued.
+         */
+        private boolean makeRoom (final ServerOptions.SlowConsumer policy, final int max, final int timeout) {
+            switch (policy) {
+                case DROP_OLDEST:
+                    return this.dropOldest();
+                case BLOCK:
+                    if (!isLoopThread() && this.awaitRoom(max, timeout))
+                        return true;
+                    this.close();
+                    return false;
+                case DISCONNECT:
+                    this.close();
+                    return false;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Allows to drop the oldest queued frame, from the head of the queue.
+         * The segments of the files are kept: the ones found first are queued again at the end,
+         * each file has at most one segment queued, so the head is a frame most of the time.
+         * @return False if only segments are queued.
+         */
+        private boolean dropOldest () {
+            Object first = null; // first segment queued again: once polled again, only segments are queued
+            int left = this.depth.get(); // bounds the loop if the loop thread takes the first segment meanwhile
+            Object oldest;
+            while (left-- > 0 && (oldest = this.outbound.poll()) != null) {
+                if (oldest instanceof ByteBuffer) {
+                    this.depth.decrementAndGet();
+                    this.client.dropped(null);
+                    return true;
+                }
+                this.outbound.add(oldest);
+                if (oldest == first)
+                    break;
+                if (first == null)
+                    first = oldest;
+            }
+
+            // the new frame is dropped: the segments queued again must still be written
+            if (first != null && this.scheduled.compareAndSet(false, true)) {
+                this.loop.flushes.add(this);
+                this.loop.selector.wakeup();
+            }
+            return false;
+        }
+
+        private boolean awaitRoom (final int max, final int timeout) {
+            this.sync.lock();
+            try {
+                this.blocked++;
+                long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (this.depth.get() >= max) {
+                    if (!this.channel.isOpen())
+                        return false;
+                    if (timeout <= 0) { // no limit
+                        this.room.await();
+                        continue;
+                    }
+                    if (nanos <= 0)
+                        return false;
+                    nanos = this.room.awaitNanos(nanos);
+                }
+                return true;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                this.blocked--;
+                this.sync.unlock();
+            }
+        }
+
+        private void signalRoom () {
+            this.sync.lock();
+            try {
+                this.room.signalAll();
+            } finally {
+                this.sync.unlock();
+            }
+        }
+
+        /**
+         * Allows to queue a segment of a file, it will be written by the loop thread between the frames.
+         * The segments are not bounded by maxOutboundQueue: each file has at most one segment queued.
+         * @param region The segment.
+         */
+        void send (final FileRegion region) {
+            this.queue(region);
+        }
+
+        private void queue (final Object frame) {
+            this.outbound.add(frame);
+            final int depth = this.depth.incrementAndGet();
+
+            final ServerOptions options = this.loop.server.getOptions();
+            if (this.scheduled.compareAndSet(false, true)) {
+                if (options.getMaxLinger() <= 0 || depth >= options.getMaxBatchSize()) {
+                    this.loop.flushes.add(this);
+                } else {
+                    this.flushAt = System.currentTimeMillis() + options.getMaxLinger();
+                    this.loop.lingers.add(this);
+                }
+                this.loop.selector.wakeup();
+            } else if (depth == options.getMaxBatchSize() && options.getMaxLinger() > 0) {
+                // a full batch does not have to wait for the end of the linger
+                this.loop.flushes.add(this);
+                this.loop.selector.wakeup();
+            }
+        }
+
+        /**
+         * Allows to close the connection once the queued frames are written.
+         */
+        void shutdown () {
+            this.closing = true;
+            if (this.scheduled.compareAndSet(false, true)) {
+                this.loop.flushes.add(this);
+                this.loop.selector.wakeup();
+            }
+        }
+
+        /**
+         * Allows to close the connection immediately.
+         */
+        void close () {
+            this.loop.execute(() -> this.loop.terminate(this));
+        }
+    }
+}
@@ -1,17 +1,28 @@
 package fr.i360matt.sokeese.server;
 
+import fr.i360matt.sokeese.commons.modules.DispatchOrder;
+import fr.i360matt.sokeese.commons.transport.Transport;
+import fr.i360matt.sokeese.utils.Threads;
+import fr.i360matt.sokeese.utils.TimingWheel;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
 /**
  * Allows to modificate the server behavor
  *
- * @version 1.1.0
+ * @version 1.10.0
  */
 public class ServerOptions {
 
+    /**
+     * The recipients that the clients can send Message requests to, each level allowing the lower ones too.
+     */
     public enum Level {
 
-        ALL (3),
-       /* GROUP (2), */
-        SINGLE (1),
+        ALL (3), // 'ALL', every session at once
+        GROUP (2), // '#name', the sessions that joined a group
+        SINGLE (1), // a session name
         NOTHING (0);
 
         private final int level;
@@ -24,15 +35,61 @@ public class ServerOptions {
         }
     }
 
+    public enum SlowConsumer {
+
+        /**
+         * The new request is dropped when the outbound queue of the session is full.
+         */
+        DROP_NEWEST,
+
+        /**
+         * The oldest queued request is dropped to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * The session is closed, the new request is dropped.
+         */
+        DISCONNECT,
+
+        /**
+         * The sender waits up to slowConsumerTimeout ms for room (without limit if 0 or less), then the session is closed.
+         * This is the default of the STREAM transport, without limit: the sender waits as it waited for the socket.
+         * A loop thread of the FRAMED transport never waits, whichever session it sends to: it closes the session at once.
+         */
+        BLOCK
+
+    }
+
     protected Level levelMessages = Level.SINGLE;
 
     protected int maxClients = 50;
 
     protected int maxSameClient = 10;
-    /*  protected int maxClientsPerGroup = 50; */
+    protected int maxClientsPerGroup = 50;
 
     protected boolean debug = false;
 
+    protected Transport transport = Transport.STREAM;
+    protected int selectorThreads = Runtime.getRuntime().availableProcessors();
+
+    protected int maxBatchSize = 64;
+    protected int maxLinger = 0;
+    protected TimingWheel timingWheel = null; // null: the wheel shared by the whole JVM
+    protected Executor dispatchExecutor = null; // null: the events are handled by the thread reading the requests
+    protected DispatchOrder dispatchOrder = DispatchOrder.SENDER;
+    protected boolean virtualThreads = false; // only on Java 21+, platform threads otherwise
+    protected int streamChunkSize = 64 * 1024; // bytes per chunk of the streams sent
+    protected int streamWindow = 8; // chunks of a stream sent before waiting for credits
+    protected boolean compression = true; // accepts the compression asked by the FRAMED clients
+    protected int fileSegmentSize = 256 * 1024; // bytes per segment of the files sent
+    protected Path fileDirectory = null; // directory of the files received, null: the temporary directory
+    protected int maxFileReceptions = 16; // files received at once per connection, the next ones are skipped, 0 or less: no limit
+    protected int maxOutboundQueue = 65536; // requests waiting to be written per session, 0 or less: unbounded
+    protected SlowConsumer slowConsumer = null; // once the outbound queue is full, null: see getEffectiveSlowConsumer()
+    protected int slowConsumerTimeout = 1000; // ms, with the BLOCK policy, 0 or less: no limit
+    protected String jmxName = null; // name of the MBean of the metrics, null: not registered
+
 
     public final void setLevelMessages (final Level levelMessages) {
         this.levelMessages = levelMessages;
@@ -43,12 +100,66 @@ public class ServerOptions {
     public final void setMaxSameClient (final int maxSameClient) {
         this.maxSameClient = maxSameClient;
     }
-    /*  public final void setMaxClientsPerGroup (final int maxClientsPerGroup) {
+    public final void setMaxClientsPerGroup (final int maxClientsPerGroup) {
         this.maxClientsPerGroup = maxClientsPerGroup;
-    } */
+    }
     public final void setDebug (final boolean debug) {
         this.debug = debug;
     }
+    public final void setTransport (final Transport transport) {
+        this.transport = transport;
+    }
+    public final void setSelectorThreads (final int selectorThreads) {
+        this.selectorThreads = selectorThreads;
+    }
+    public final void setMaxBatchSize (final int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+    public final void setMaxLinger (final int maxLinger) {
+        this.maxLinger = maxLinger;
+    }
+    public final void setTimingWheel (final TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+    public final void setDispatchExecutor (final Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+    }
+    public final void setDispatchOrder (final DispatchOrder dispatchOrder) {
+        this.dispatchOrder = dispatchOrder;
+    }
+    public final void setVirtualThreads (final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+    public final void setStreamChunkSize (final int streamChunkSize) {
+        this.streamChunkSize = streamChunkSize;
+    }
+    public final void setStreamWindow (final int streamWindow) {
+        this.streamWindow = streamWindow;
+    }
+    public final void setCompression (final boolean compression) {
+        this.compression = compression;
+    }
+    public final void setFileSegmentSize (final int fileSegmentSize) {
+        this.fileSegmentSize = fileSegmentSize;
+    }
+    public final void setFileDirectory (final Path fileDirectory) {
+        this.fileDirectory = fileDirectory;
+    }
+    public final void setMaxFileReceptions (final int maxFileReceptions) {
+        this.maxFileReceptions = maxFileReceptions;
+    }
+    public final void setMaxOutboundQueue (final int maxOutboundQueue) {
+        this.maxOutboundQueue = maxOutboundQueue;
+    }
+    public final void setSlowConsumer (final SlowConsumer slowConsumer) {
+        this.slowConsumer = slowConsumer;
+    }
+    public final void setSlowConsumerTimeout (final int slowConsumerTimeout) {
+        this.slowConsumerTimeout = slowConsumerTimeout;
+    }
+    public final void setJmxName (final String jmxName) {
+        this.jmxName = jmxName;
+    }
 
     public final Level getLevelMessages () {
         return this.levelMessages;
@@ -59,10 +170,87 @@ public class ServerOptions {
     public final int getMaxSameClient () {
         return maxSameClient;
     }
-    /* public final int getMaxClientsPerGroup () {
+    public final int getMaxClientsPerGroup () {
         return maxClientsPerGroup;
-    } */
+    }
     public final boolean getDebug () {
         return this.debug;
     }
+    public final Transport getTransport () {
+        return this.transport;
+    }
+    public final int getSelectorThreads () {
+        return this.selectorThreads;
+    }
+    public final int getMaxBatchSize () {
+        return this.maxBatchSize;
+    }
+    public final int getMaxLinger () {
+        return this.maxLinger;
+    }
+    public final TimingWheel getTimingWheel () {
+        return this.timingWheel;
+    }
+    public final Executor getDispatchExecutor () {
+        return this.dispatchExecutor;
+    }
+    public final DispatchOrder getDispatchOrder () {
+        return this.dispatchOrder;
+    }
+    public final boolean getVirtualThreads () {
+        return this.virtualThreads;
+    }
+    public final int getStreamChunkSize () {
+        return this.streamChunkSize;
+    }
+    public final int getStreamWindow () {
+        return this.streamWindow;
+    }
+    public final boolean getCompression () {
+        return this.compression;
+    }
+    public final int getFileSegmentSize () {
+        return this.fileSegmentSize;
+    }
+    public final Path getFileDirectory () {
+        return this.fileDirectory;
+    }
+    public final int getMaxFileReceptions () {
+        return this.maxFileReceptions;
+    }
+    public final int getMaxOutboundQueue () {
+        return this.maxOutboundQueue;
+    }
+    public final SlowConsumer getSlowConsumer () {
+        return this.slowConsumer;
+    }
+    public final int getSlowConsumerTimeout () {
+        return this.slowConsumerTimeout;
+    }
+    public final String getJmxName () {
+        return this.jmxName;
+    }
+
+    /**
+     * Allows to retrieve the slowConsumer policy applied once the outbound queue of a session is full:
+     * the chosen one, else BLOCK without limit with the STREAM transport (a slow client slows the sender down, as before the queue),
+     * else DISCONNECT with the FRAMED transport (a loop thread must not wait).
+     * @return The policy.
+     */
+    public final SlowConsumer getEffectiveSlowConsumer () {
+        if (this.slowConsumer != null)
+            return this.slowConsumer;
+        return (this.transport == Transport.STREAM) ? SlowConsumer.BLOCK : SlowConsumer.DISCONNECT;
+    }
+
+    /**
+     * Allows to retrieve the executor handling the events:
+     * the chosen one, else virtual threads if they are enabled and supported, else null (inline).
+     * @return The executor, or null.
+     */
+    public final Executor getEffectiveDispatchExecutor () {
+        if (this.dispatchExecutor != null || !this.virtualThreads)
+            return this.dispatchExecutor;
+        return Threads.virtualExecutor();
+    }
 }
@@ -1,21 +1,33 @@
 package fr.i360matt.sokeese.server;
 
 import fr.i360matt.sokeese.commons.events.ActionEvent;
+import fr.i360matt.sokeese.commons.events.FileEvent;
 import fr.i360matt.sokeese.commons.events.MessageEvent;
+import fr.i360matt.sokeese.commons.events.StreamEvent;
+import fr.i360matt.sokeese.commons.metrics.Metrics;
 import fr.i360matt.sokeese.commons.modules.CatcherManager;
+import fr.i360matt.sokeese.commons.modules.GroupManager;
 import fr.i360matt.sokeese.commons.modules.UserManager;
 import fr.i360matt.sokeese.commons.requests.Action;
 import fr.i360matt.sokeese.commons.requests.Message;
 import fr.i360matt.sokeese.commons.requests.Reply;
+import fr.i360matt.sokeese.commons.transport.SharedFrame;
+import fr.i360matt.sokeese.commons.transport.Transport;
+import fr.i360matt.sokeese.utils.Threads;
 
+import javax.management.JMException;
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.Random;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -25,7 +37,7 @@ import java.util.function.Consumer;
  * The client must be of the same type and version as the server.
  *
  * @author 360matt
- * @version 1.3.0
+ * @version 1.8.0
  */
 public class SokeeseServer implements Closeable {
 
@@ -33,12 +45,15 @@ public class SokeeseServer implements Closeable {
 
     private BiFunction<String, String, Boolean> loginCheckFunction;
     private final CatcherManager.SERVER catcherManager;
+    private final Metrics metrics;
     private final UserManager userManager = new UserManager();
+    private final GroupManager groupManager = new GroupManager();
+    private final GroupManager.Visitor<SharedFrame, Set<Long>> groupDelivery = this::deliver; // writes to each member of a group, created once
 
     private ServerSocket server;
     private final ServerOptions options;
 
-    protected final Random random = new Random();
+    private final AtomicInteger serials = new AtomicInteger(); // see ClientLogged#nextIdRequest
 
     /**
      * Allows you to start the server with a port number and its secret key.
@@ -56,23 +71,27 @@ public class SokeeseServer implements Closeable {
      * @param options Server options
      */
     public SokeeseServer (final int port, final ServerOptions options) {
-        this.catcherManager = new CatcherManager.SERVER();
         this.options = options;
+        this.metrics = new Metrics(() -> this.getCatcherManager().getPendingReplies());
+        this.catcherManager = new CatcherManager.SERVER(options, this.metrics);
+        if (options.getJmxName() != null) {
+            try {
+                this.metrics.register(options.getJmxName());
+            } catch (final JMException e) {
+                if (options.getDebug())
+                    e.printStackTrace();
+            }
+        }
 
         final CompletableFuture<Void> future = new CompletableFuture<>();
 
-        final ExecutorService service = Executors.newSingleThreadExecutor();
+        final ExecutorService service = Threads.newExecutor(options.getVirtualThreads());
         service.execute(() -> {
-            try (final ServerSocket server = new ServerSocket(port)) {
-                this.server = server;
-
-                future.complete(null);
-
-                while (this.isEnabled && !server.isClosed()) {
-                    final Socket socket = server.accept();
-                    socket.setSoTimeout(1000); // timeout 1 seconds while login
-                    new ClientLogged(this, socket);
-                }
+            try {
+                if (options.getTransport() == Transport.FRAMED)
+                    this.acceptChannels(port, future);
+                else
+                    this.acceptSockets(port, future);
             } catch (final Exception e) {
                 if (this.getOptions().getDebug())
                     e.printStackTrace();
@@ -81,6 +100,8 @@ public class SokeeseServer implements Closeable {
                 future.complete(null);
                 this.catcherManager.close();
                 this.userManager.close();
+                this.groupManager.close();
+                this.metrics.unregister();
             }
         });
         service.shutdown();
@@ -88,12 +109,60 @@ public class SokeeseServer implements Closeable {
         future.join();
     }
 
+    /**
+     * Accept loop of the STREAM transport: each session has its own thread.
+     */
+    private void acceptSockets (final int port, final CompletableFuture<Void> future) throws IOException {
+        try (final ServerSocket server = new ServerSocket(port)) {
+            this.server = server;
+
+            future.complete(null);
+
+            while (this.isEnabled && !server.isClosed()) {
+                final Socket socket = server.accept();
+                socket.setSoTimeout(1000); // timeout 1 seconds while login
+                new ClientLogged(this, socket);
+            }
+        }
+    }
+
+    /**
+     * Accept loop of the FRAMED transport: the sessions are distributed over a few SelectorLoop.
+     */
+    private void acceptChannels (final int port, final CompletableFuture<Void> future) throws IOException {
+        final SelectorLoop[] loops = new SelectorLoop[Math.max(1, this.options.getSelectorThreads())];
+        try (final ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            this.server = server.socket();
+
+            for (int i = 0; i < loops.length; i++)
+                loops[i] = new SelectorLoop(this);
+
+            future.complete(null);
+
+            int next = 0;
+            while (this.isEnabled && server.isOpen()) {
+                final SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                new ClientLogged(this, channel, loops[next]);
+                next = (next + 1) % loops.length;
+            }
+        } finally {
+            for (final SelectorLoop loop : loops)
+                if (loop != null)
+                    loop.close();
+        }
+    }
+
     /**
      * Sends a Message or Action type request to one or multiple clients
      *
      * @param recipient The name of the client who should receive the request.
      *                  'SERVER' -> send the intended request to the server
      *                  'ALL'    -> send the intended request to all clients except the server
+     *                  '#group' -> send the intended request to the members of a group
      * @param obj The request which must be of the Message or Action type.
      *
      * @see Message
@@ -101,26 +170,77 @@ public class SokeeseServer implements Closeable {
      * @see Reply
      */
     private void send (final String recipient, final Object obj) throws IOException {
-        if (!isEnabled) return;
+        this.route(recipient, obj);
+    }
 
-        final ServerOptions.Level level = this.getOptions().getLevelMessages();
-        if (recipient.equalsIgnoreCase("all") && level.getLevel() == 3) {
+    /**
+     * Allows to deliver a request to its recipients if the level of the messages allows it,
+     * each level allowing the lower ones too: ALL, then GROUP, then SINGLE.
+     * The request is encoded once, whatever the number of recipients.
+     * @param recipient 'ALL', '#group' or the name of a client.
+     * @param obj The request.
+     * @return If the request is allowed by the level, even without any recipient connected.
+     */
+    final boolean route (final String recipient, final Object obj) {
+        if (!isEnabled) return false;
+
+        final int level = this.getOptions().getLevelMessages().getLevel();
+        if (recipient.equalsIgnoreCase("all")) {
+            if (level < ServerOptions.Level.ALL.getLevel())
+                return false;
             // send to every clients
-            for (final ClientLogged user : this.getUserManager().getAllUsers()) {
-                synchronized (user.syncOut) {
-                    user.sender.writeObject(obj);
-                    user.sender.flush();
-                }
-            }
-        } else if (level.getLevel() == 1 && !recipient.equalsIgnoreCase("server")) {
+            deliver(this.getUserManager().getAllUsers(), new SharedFrame(obj));
+        } else if (GroupManager.isGroup(recipient)) {
+            if (level < ServerOptions.Level.GROUP.getLevel())
+                return false;
+            // send to the members of the group, without looking at the other clients
+            this.groupManager.forEachMember(recipient, new SharedFrame(obj), null, this.groupDelivery);
+        } else {
+            if (level < ServerOptions.Level.SINGLE.getLevel() || recipient.equalsIgnoreCase("server"))
+                return false;
             // send to unique client (or multiple terminals with the same name)
-            for (final ClientLogged user : this.getUserManager().getUser(recipient)) {
-                synchronized (user.syncOut) {
-                    user.sender.writeObject(obj);
-                    user.sender.flush();
-                }
-            }
+            deliver(this.getUserManager().getUser(recipient), new SharedFrame(obj));
         }
+        return true;
+    }
+
+    /**
+     * Allows to write a request to many sessions,
+     * a pooled client receives it on only one of its open connections.
+     * A slow session does not prevent the others from receiving the request.
+     * @param users The sessions.
+     * @param frame The shared request.
+     */
+    private void deliver (final Set<ClientLogged> users, final SharedFrame frame) {
+        Set<Long> pools = null; // allocated only if pooled clients are met
+        for (final ClientLogged user : users)
+            pools = this.deliver(user, frame, pools);
+    }
+
+    /**
+     * Allows to write a request to a session, unless another connection of its pool already received it.
+     * @param user The session.
+     * @param frame The shared request.
+     * @param pools The pools already served, or null.
+     * @return The pools already served, or null.
+     */
+    private Set<Long> deliver (final ClientLogged user, final SharedFrame frame, Set<Long> pools) {
+        final long pool = user.getPool();
+        if (pool != 0) {
+            if (!user.isOpen())
+                return pools;
+            if (pools == null)
+                pools = new HashSet<>();
+            if (!pools.add(pool))
+                return pools;
+        }
+        try {
+            user.write(frame);
+        } catch (final IOException e) { // dropped by the slowConsumer policy of this session
+            if (this.options.getDebug())
+                e.printStackTrace();
+        }
+        return pools;
     }
 
     /**
@@ -129,6 +249,7 @@ public class SokeeseServer implements Closeable {
      * The name of the client who should receive the request:
      *                  'SERVER' -> send the intended request to the server.
      *                  'ALL'    -> send the intended request to all clients except the server.
+     *                  '#group' -> send the intended request to the members of a group.
      *                    *      -> send the intended request to one client.
      * @param message The message request.
      *
@@ -144,6 +265,7 @@ public class SokeeseServer implements Closeable {
      * @param recipient The name of the client who should receive the request:
      *                  'SERVER' -> send the intended request to the server.
      *                  'ALL'    -> send the intended request to all clients except the server.
+     *                  '#group' -> send the intended request to the members of a group.
      *                    *      -> send the intended request to one client.
      * @param action The action request.
      *
@@ -159,6 +281,7 @@ public class SokeeseServer implements Closeable {
      * The name of the client who should receive the request:
      *                  'SERVER' -> send the intended request to the server.
      *                  'ALL'    -> send the intended request to all clients except the server.
+     *                  '#group' -> send the intended request to the members of a group.
      *                    *      -> send the intended request to one client.
      * @param reply The reply request.
      *
@@ -174,6 +297,7 @@ public class SokeeseServer implements Closeable {
      * The name of the client who should receive the request:
      *                  'SERVER' -> send the intended request to the server.
      *                  'ALL'    -> send the intended request to all clients except the server.
+     *                  '#group' -> send the intended request to the members of a group.
      *                    *      -> send the intended request to one client.
      * @param consumer The message request consumer.
      *
@@ -191,6 +315,7 @@ public class SokeeseServer implements Closeable {
      * @param recipient The name of the client who should receive the request:
      *                  'SERVER' -> send the intended request to the server.
      *                  'ALL'    -> send the intended request to all clients except the server.
+     *                  '#group' -> send the intended request to the members of a group.
      *                    *      -> send the intended request to one client.
      * @param consumer The action request consumer.
      *
@@ -205,7 +330,7 @@ public class SokeeseServer implements Closeable {
     /**
      * Allows to register an event for the reception of a MESSAGE request on a certain channel
      *
-     * @param channel The name of the channel that will be listened to.
+     * @param channel The name of the channel that will be listened to, or a pattern: 'orders.*' (one segment), 'metrics.>' (the next segments).
      * @param consumer The consumer which will be executed for each reception.
      *
      * @see MessageEvent.SERVER
@@ -218,7 +343,7 @@ public class SokeeseServer implements Closeable {
     /**
      * Allows to register an event for the reception of a ACTION request on a certain name
      *
-     * @param name The name of the action that will be listened to.
+     * @param name The name of the action that will be listened to, or a pattern: 'orders.*' (one segment), 'metrics.>' (the next segments).
      * @param consumer The consumer which will be executed for each reception.
      *
      * @see ActionEvent.SERVER
@@ -228,6 +353,32 @@ public class SokeeseServer implements Closeable {
         this.catcherManager.addActionEvent(name, consumer);
     }
 
+    /**
+     * Allows to register an event for the reception of the chunks of the streams sent on a certain channel.
+     * The consumer is executed once per chunk, in order, and the next chunks are only granted once it returns.
+     *
+     * @param channel The name of the channel that will be listened to, or a pattern: 'orders.*' (one segment), 'metrics.>' (the next segments).
+     * @param consumer The consumer which will be executed for each chunk.
+     *
+     * @see StreamEvent.SERVER
+     */
+    public final void onStream (final String channel, final BiConsumer<StreamEvent.SERVER, ClientLogged> consumer) {
+        this.catcherManager.addStreamEvent(channel, consumer);
+    }
+
+    /**
+     * Allows to register an event following the files sent on a certain channel, only with the FRAMED transport.
+     * The files of a channel without event are not written to disk.
+     *
+     * @param channel The name of the channel that will be listened to, or a pattern: 'orders.*' (one segment), 'metrics.>' (the next segments).
+     * @param consumer The consumer which will be executed when a file is opened, for each segment written, and at its end.
+     *
+     * @see FileEvent.SERVER
+     */
+    public final void onFile (final String channel, final BiConsumer<FileEvent.SERVER, ClientLogged> consumer) {
+        this.catcherManager.addFileEvent(channel, consumer);
+    }
+
     /**
      * Allows to enable the login manager.
      * @param loginCheckFunction The login manager.
@@ -244,6 +395,14 @@ public class SokeeseServer implements Closeable {
         return this.loginCheckFunction;
     }
 
+    /**
+     * Allows to retrieve the group manager: the sessions that joined each group.
+     * @return The group manager of the instantiated server.
+     */
+    public final GroupManager getGroupManager () {
+        return this.groupManager;
+    }
+
     /**
      * Allows to retrieve the user manager.
      * @return The user manager of the instantiated server.
@@ -260,6 +419,28 @@ public class SokeeseServer implements Closeable {
         return this.catcherManager;
     }
 
+    /**
+     * Allows to retrieve the metrics of the server: requests and bytes of all the sessions, in total and per channel,
+     * forwarded and dropped requests, replies waiting, round trips and execution time of the events.
+     * The counters of a single session are in ClientLogged.getTraffic().
+     * @return The metrics.
+     */
+    public final Metrics getMetrics () {
+        return this.metrics;
+    }
+
+    /**
+     * Allows to give each session a different serial number, never 0.
+     * @return The serial number, on 32 bits.
+     */
+    final long nextSerial () {
+        int serial;
+        do {
+            serial = this.serials.incrementAndGet();
+        } while (serial == 0);
+        return Integer.toUnsignedLong(serial);
+    }
+
     /**
      * Used to retrieve the option of the current session.
      * @return The current session.
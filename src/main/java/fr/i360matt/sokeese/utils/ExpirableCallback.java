@@ -2,12 +2,9 @@ package fr.i360matt.sokeese.utils;
 
 
 import java.io.Closeable;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 
 /**
@@ -15,6 +12,9 @@ import java.util.function.BiConsumer;
  * This class makes it possible to establish a cache system which can expire with the defined time.
  * It is from Vivekananthan but it was remade by me (360matt)
  *
+ * The expirations are handled by a TimingWheel: an entry expires at most one tick after its delay,
+ * without scanning the other entries.
+ *
  * @author Vivekananthan M
  * https://github.com/vivekjustthink/WeakConcurrentHashMap
  * https://stackoverflow.com/questions/3802370/java-time-based-map-cache-with-expiring-keys
@@ -23,60 +23,92 @@ import java.util.function.BiConsumer;
  *
  * @param <K> Key Type
  * @param <V> Value Type
+ *
+ * @see TimingWheel
  */
 public class ExpirableCallback<K, V> extends ConcurrentHashMap<K, V> implements Closeable {
 
     private static final long serialVersionUID = 7931044222401042026L;
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+    private final transient TimingWheel wheel;
 
-    private final Map<K, Long> timeMap = new ConcurrentHashMap<>();
-    private long expiryInMillis = 1000;
+    private final transient Map<K, TimingWheel.Timeout> timeMap = new ConcurrentHashMap<>();
+    private final transient AtomicBoolean closed = new AtomicBoolean();
 
+    /**
+     * Uses the wheel shared by the whole JVM.
+     */
     public ExpirableCallback () {
-        startTask();
+        this((TimingWheel) null);
+    }
+
+    /**
+     * Uses a wheel of its own.
+     * @param tickInMillis The precision of the expirations.
+     */
+    public ExpirableCallback (final long tickInMillis) {
+        this.wheel = new TimingWheel(tickInMillis, TimingWheel.DEFAULT_SIZE);
     }
 
-    public ExpirableCallback (final long expiryInMillis) {
-        this.expiryInMillis = expiryInMillis;
-        startTask();
+    /**
+     * Uses the chosen wheel, which is retained until close() is called.
+     * @param wheel The wheel, or null to use the wheel shared by the whole JVM.
+     */
+    public ExpirableCallback (final TimingWheel wheel) {
+        if (wheel == null) {
+            this.wheel = TimingWheel.shared();
+        } else if (wheel.retain()) {
+            this.wheel = wheel;
+        } else {
+            throw new IllegalStateException("The wheel is closed");
+        }
     }
 
     /**
-     * Insert an entry with the current timestamp.
-     * @param key L'identifiant de la requête de réponse.
+     * Insert an entry which expires after the defined time.
+     * @param key The identifier of the reply request.
      * @param value The content of the event.
      * @param time The deletion time.
      */
     public final void put (final K key, final V value, final int time) {
-        timeMap.put(key, System.currentTimeMillis() + time);
+        if (closed.get())
+            return;
         super.put(key, value);
+        final TimingWheel.Timeout previous = timeMap.put(key, wheel.schedule(() -> expire(key, value), time));
+        if (previous != null)
+            previous.cancel();
     }
 
     /**
-     * Start the service
+     * Remove an entry, its expiration is cancelled.
+     * @param key The identifier of the entry.
+     * @return The removed value.
      */
-    private void startTask () {
-        executor.scheduleAtFixedRate(() -> {
-            final long currentTime = System.currentTimeMillis();
+    @Override
+    public V remove (final Object key) {
+        final V value = super.remove(key);
+        final TimingWheel.Timeout timeout = timeMap.remove(key);
+        if (timeout != null)
+            timeout.cancel();
+        return value;
+    }
 
-            final Iterator<Entry<K, Long>> iter = timeMap.entrySet().iterator();
-            while (iter.hasNext()) {
-                final Entry<K, Long> entry = iter.next();
-                if (currentTime > (entry.getValue() + expiryInMillis)) {
-                    ((BiConsumer<?, Boolean>) this.get(entry.getKey())).accept(null, false);
-                    remove(entry.getKey());
-                    iter.remove();
-                }
-            }
-        }, expiryInMillis / 2, expiryInMillis / 2, TimeUnit.MILLISECONDS);
+    private void expire (final K key, final V value) {
+        if (super.remove(key, value)) {
+            timeMap.remove(key);
+            ((BiConsumer<?, Boolean>) value).accept(null, false);
+        }
     }
 
     /**
      * Allow to stop the service and empty all lists.
+     * The wheel is released, it stops if nobody else uses it.
      */
     @Override
     public final void close () {
-        executor.shutdownNow();
+        if (closed.compareAndSet(false, true)) {
+            timeMap.values().forEach(TimingWheel.Timeout::cancel);
+            wheel.release();
+        }
         clear();
         timeMap.clear();
     }
@@ -86,6 +118,6 @@ public class ExpirableCallback<K, V> extends ConcurrentHashMap<K, V> implements
      * @return The state of the service.
      */
     public final boolean isAlive () {
-        return !executor.isShutdown();
+        return !closed.get() && wheel.isAlive();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package fr.i360matt.sokeese.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded FIFO queue over a fixed array, nothing is allocated once created.
+ * It is not thread-safe: the caller is responsible for the synchronisation.
+ *
+ * @author 360matt
+ * @version 1.0.0
+ *
+ * @param <T> Element Type
+ */
+public class RingBuffer<T> {
+    private final Object[] elements;
+    private int head; // index of the oldest element
+    private int size;
+
+    /**
+     * @param capacity The maximum number of elements.
+     */
+    public RingBuffer (final int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative");
+        this.elements = new Object[capacity];
+    }
+
+    /**
+     * Allows to add an element at the end of the queue.
+     * @param element The element, not null.
+     * @return False if the queue is full, the element is not added then.
+     */
+    public final boolean offer (final T element) {
+        if (element == null)
+            throw new NullPointerException("element is null");
+        if (this.size == this.elements.length)
+            return false;
+        this.elements[(this.head + this.size) % this.elements.length] = element;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Allows to remove the oldest element.
+     * @return The element, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public final T poll () {
+        if (this.size == 0)
+            return null;
+        final T element = (T) this.elements[this.head];
+        this.elements[this.head] = null;
+        this.head = (this.head + 1) % this.elements.length;
+        this.size--;
+        return element;
+    }
+
+    /**
+     * Allows to remove every element at once, in their order of insertion.
+     * @return The elements.
+     */
+    public final List<T> drain () {
+        final List<T> drained = new ArrayList<>(this.size);
+        T element;
+        while ((element = this.poll()) != null)
+            drained.add(element);
+        return drained;
+    }
+
+    public final int size () {
+        return this.size;
+    }
+
+    public final int capacity () {
+        return this.elements.length;
+    }
+
+    public final boolean isEmpty () {
+        return this.size == 0;
+    }
+
+    public final boolean isFull () {
+        return this.size == this.elements.length;
+    }
+}
@@ -0,0 +1,113 @@
+package fr.i360matt.sokeese.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Allows to run tasks in parallel on an executor while keeping the tasks of a same key in order.
+ * Each key is assigned to a lane, a lane runs its tasks one after the other:
+ * the tasks of different lanes run in parallel, those of a same lane never overlap.
+ * An exception thrown by a task does not stop its lane, it is only printed in debug mode.
+ *
+ * @author 360matt
+ * @version 1.1.0
+ */
+public class StripedExecutor {
+    public static final int DEFAULT_LANES = 256; // lanes are cheap: more lanes, fewer unrelated keys waiting for each other
+    private static final int BATCH = 64; // tasks run before giving the thread back to the executor
+
+    private final Executor executor;
+    private final Lane[] lanes;
+    private final boolean debug; // prints the exceptions thrown by the tasks
+
+
+    /**
+     * Allows to create 256 lanes on an executor.
+     * @param executor The executor running the lanes.
+     */
+    public StripedExecutor (final Executor executor) {
+        this(executor, DEFAULT_LANES);
+    }
+
+    /**
+     * Allows to create lanes on an executor.
+     * @param executor The executor running the lanes.
+     * @param lanes The number of lanes, rounded up to a power of two.
+     */
+    public StripedExecutor (final Executor executor, final int lanes) {
+        this(executor, lanes, false);
+    }
+
+    /**
+     * Allows to create lanes on an executor.
+     * @param executor The executor running the lanes.
+     * @param lanes The number of lanes, rounded up to a power of two.
+     * @param debug If the exceptions thrown by the tasks are printed.
+     */
+    public StripedExecutor (final Executor executor, final int lanes, final boolean debug) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor is null");
+
+        this.executor = executor;
+        this.debug = debug;
+        int count = 1;
+        while (count < lanes)
+            count <<= 1;
+        this.lanes = new Lane[count];
+        for (int i = 0; i < count; i++)
+            this.lanes[i] = new Lane();
+    }
+
+    /**
+     * Allows to run a task after the tasks already submitted with the same key.
+     * @param key The key, null is a valid key.
+     * @param task The task.
+     */
+    public final void execute (final Object key, final Runnable task) {
+        int hash = (key != null) ? key.hashCode() : 0;
+        hash ^= hash >>> 16;
+        this.lanes[hash & (this.lanes.length - 1)].add(task);
+    }
+
+
+    private final class Lane implements Runnable {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private void add (final Runnable task) {
+            this.tasks.add(task);
+            this.schedule();
+        }
+
+        private void schedule () {
+            if (this.tasks.isEmpty() || !this.scheduled.compareAndSet(false, true))
+                return;
+            try {
+                StripedExecutor.this.executor.execute(this);
+            } catch (final RejectedExecutionException e) {
+                this.run(); // the lane is still owned by this thread: the order is kept
+            }
+        }
+
+        @Override
+        public void run () {
+            try {
+                Runnable task;
+                for (int i = 0; i < BATCH && (task = this.tasks.poll()) != null; i++) {
+                    try {
+                        task.run();
+                    } catch (final Throwable e) {
+                        if (StripedExecutor.this.debug)
+                            e.printStackTrace();
+                    }
+                }
+            } finally {
+                this.scheduled.set(false);
+            }
+            this.schedule(); // tasks added meanwhile, or left by the batch limit
+        }
+    }
+}
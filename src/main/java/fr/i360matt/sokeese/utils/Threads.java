@@ -0,0 +1,107 @@
+package fr.i360matt.sokeese.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allows to start the threads of the sessions, as platform threads or as virtual threads.
+ * The project is compiled for Java 8: virtual threads are created by reflection
+ * and are only available when running on Java 21 or more, platform threads are used otherwise.
+ * It also provides the executor of the callbacks which must not run on a shared thread, such as the timeouts of the wheel.
+ *
+ * @author 360matt
+ * @version 1.1.0
+ */
+public final class Threads {
+    private static final Method VIRTUAL_EXECUTOR = findVirtualExecutor();
+    private static volatile ExecutorService virtual; // shared, virtual threads do not need to be pooled
+    private static volatile ExecutorService callbacks; // shared, its idle threads stop after a minute
+
+    private Threads () { }
+
+    private static Method findVirtualExecutor () {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (final NoSuchMethodException e) {
+            return null; // before Java 21
+        }
+    }
+
+    /**
+     * Allows to know if virtual threads can be used.
+     * @return True when running on Java 21 or more.
+     */
+    public static boolean isVirtualSupported () {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Allows to retrieve the executor starting a virtual thread per task.
+     * @return The executor, or null if virtual threads are not supported.
+     */
+    public static ExecutorService virtualExecutor () {
+        if (VIRTUAL_EXECUTOR == null)
+            return null;
+
+        ExecutorService executor = virtual;
+        if (executor == null) {
+            synchronized (Threads.class) {
+                executor = virtual;
+                if (executor == null) {
+                    try {
+                        executor = (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+                    } catch (final ReflectiveOperationException e) {
+                        throw new IllegalStateException("Unable to create virtual threads", e);
+                    }
+                    virtual = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Allows to create the executor of a long-running task, such as the loop of a session.
+     * It must be shut down once the task is submitted, like a single thread executor.
+     * @param virtual If a virtual thread should be used when it is supported.
+     * @return The executor.
+     */
+    public static ExecutorService newExecutor (final boolean virtual) {
+        if (virtual && VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+            } catch (final ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create virtual threads", e);
+            }
+        }
+        return Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Allows to retrieve the executor shared by the callbacks having no executor of their own,
+     * such as the reply events which expire while the events are handled by the thread reading the requests.
+     * Its daemon threads are created on demand and stop after a minute without task.
+     * @return The executor.
+     */
+    public static ExecutorService callbackExecutor () {
+        ExecutorService executor = callbacks;
+        if (executor == null) {
+            synchronized (Threads.class) {
+                executor = callbacks;
+                if (executor == null) {
+                    executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+                        final Thread thread = new Thread(task, "sokeese-callbacks");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    callbacks = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
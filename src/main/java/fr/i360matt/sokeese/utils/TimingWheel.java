@@ -0,0 +1,377 @@
+package fr.i360matt.sokeese.utils;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel: allows to run tasks after a delay, with an insertion and a cancellation in O(1).
+ * The timeouts are placed in a ring of buckets covering one tick each,
+ * a timeout whose delay exceeds one turn of the ring waits for as many rounds as necessary.
+ *
+ * Timeouts fire at most one tick after their delay. The thread of the wheel sleeps while nothing is scheduled.
+ *
+ * A wheel can be shared by many clients and servers: each user retains it and releases it once done,
+ * the wheel stops when its last user releases it. shared() returns the wheel used by default in the JVM.
+ * An exception thrown by an expired timeout is ignored, it is only printed in debug mode.
+ *
+ * @author 360matt
+ * @version 1.2.0
+ */
+public class TimingWheel implements Closeable {
+    public static final long DEFAULT_TICK = 5;
+    public static final int DEFAULT_SIZE = 512;
+
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final long start = System.nanoTime();
+
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger users = new AtomicInteger(1); // the creator is the first user
+
+    private static final Object LOCK = new Object();
+    private static TimingWheel shared;
+
+    private long tick; // only used by the wheel thread
+    private volatile Thread worker;
+    private volatile boolean idle;
+    private volatile boolean running = true;
+    private volatile boolean debug = false; // prints the exceptions thrown by the expired timeouts
+
+
+    /**
+     * Allows to start a wheel with a tick of 5 ms and 512 buckets.
+     */
+    public TimingWheel () {
+        this(DEFAULT_TICK, DEFAULT_SIZE);
+    }
+
+    /**
+     * Allows to start a wheel.
+     * @param tickMillis The duration of a tick, which is the precision of the timeouts.
+     * @param size The number of buckets, rounded up to a power of two.
+     */
+    public TimingWheel (final long tickMillis, final int size) {
+        if (tickMillis <= 0 || size <= 0)
+            throw new IllegalArgumentException("tick and size must be positive");
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int capacity = 1;
+        while (capacity < size)
+            capacity <<= 1;
+        this.buckets = new Bucket[capacity];
+        for (int i = 0; i < capacity; i++)
+            this.buckets[i] = new Bucket();
+        this.mask = capacity - 1;
+
+        final ExecutorService service = Executors.newSingleThreadExecutor();
+        service.execute(this::run);
+        service.shutdown();
+    }
+
+    /**
+     * Allows to retrieve the wheel shared by the whole JVM, it is started if necessary.
+     * The caller becomes one of its users and must call release() once done.
+     * @return The shared wheel.
+     */
+    public static TimingWheel shared () {
+        synchronized (LOCK) {
+            if (shared == null || !shared.retain())
+                shared = new TimingWheel();
+            return shared;
+        }
+    }
+
+    /**
+     * Allows to become a user of the wheel, it will not stop before the matching release().
+     * @return False if the wheel is already stopped.
+     */
+    public final boolean retain () {
+        int current;
+        do {
+            current = this.users.get();
+            if (current <= 0 || !this.running)
+                return false;
+        } while (!this.users.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Allows to stop being a user of the wheel, the last user stops it.
+     */
+    public final void release () {
+        if (this.users.decrementAndGet() == 0)
+            this.close();
+    }
+
+    /**
+     * Allows to run a task after a delay.
+     * @param task The task, it is run by the thread of the wheel and must be short.
+     * @param delayMillis The delay.
+     * @return The timeout, which can be cancelled.
+     */
+    public final Timeout schedule (final Runnable task, final long delayMillis) {
+        final Timeout timeout = new Task(task);
+        this.schedule(timeout, delayMillis);
+        return timeout;
+    }
+
+    /**
+     * Allows to schedule a timeout created by the caller, it can only be scheduled once.
+     * @param timeout The timeout, its expire() method is run after the delay.
+     * @param delayMillis The delay.
+     */
+    public final void schedule (final Timeout timeout, final long delayMillis) {
+        if (!this.running)
+            throw new IllegalStateException("The wheel is closed");
+        if (timeout.wheel != null || timeout.state != Timeout.WAITING)
+            throw new IllegalStateException("The timeout is already scheduled");
+
+        timeout.wheel = this;
+        timeout.deadline = System.nanoTime() - this.start + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        this.pending.add(timeout);
+        this.size.incrementAndGet();
+        if (this.idle)
+            LockSupport.unpark(this.worker);
+    }
+
+    /**
+     * Allows to know how many timeouts are waiting.
+     * @return The number of timeouts neither expired nor cancelled.
+     */
+    public final int size () {
+        return this.size.get();
+    }
+
+    /**
+     * Allows to print the exceptions thrown by the expired timeouts, they are ignored otherwise.
+     * @param debug The debug mode.
+     */
+    public final void setDebug (final boolean debug) {
+        this.debug = debug;
+    }
+
+    /**
+     * Allows to know if the exceptions thrown by the expired timeouts are printed.
+     * @return The debug mode.
+     */
+    public final boolean getDebug () {
+        return this.debug;
+    }
+
+    /**
+     * Allow to find out if the wheel is active.
+     * @return The state of the wheel.
+     */
+    public final boolean isAlive () {
+        return this.running;
+    }
+
+    /**
+     * Allows to stop the wheel immediately, even if it still has users.
+     * The waiting timeouts will never expire.
+     */
+    @Override
+    public void close () {
+        this.running = false;
+        LockSupport.unpark(this.worker);
+    }
+
+    private void run () {
+        this.worker = Thread.currentThread();
+        try {
+            while (this.running) {
+                this.waitNextTick();
+                if (!this.running)
+                    break;
+
+                this.unlinkCancelled();
+                this.transferPending();
+                this.buckets[(int) (this.tick & this.mask)].expire();
+                this.tick++;
+            }
+        } finally {
+            for (final Bucket bucket : this.buckets)
+                bucket.clear();
+            this.pending.clear();
+            this.cancelled.clear();
+        }
+    }
+
+    private void waitNextTick () {
+        if (this.size.get() == 0) {
+            this.unlinkCancelled();
+            this.idle = true;
+            while (this.running && this.size.get() == 0)
+                LockSupport.park(this);
+            this.idle = false;
+            // nothing was waiting: the wheel can jump to the current time
+            this.tick = Math.max(this.tick, (System.nanoTime() - this.start) / this.tickNanos);
+        }
+
+        final long deadline = (this.tick + 1) * this.tickNanos;
+        long sleep;
+        while (this.running && (sleep = deadline - (System.nanoTime() - this.start)) > 0)
+            LockSupport.parkNanos(this, sleep);
+    }
+
+    private void transferPending () {
+        Timeout timeout;
+        while ((timeout = this.pending.poll()) != null) {
+            if (timeout.state != Timeout.WAITING)
+                continue;
+
+            final long expected = timeout.deadline / this.tickNanos;
+            timeout.rounds = (expected - this.tick) / this.buckets.length;
+            this.buckets[(int) (Math.max(expected, this.tick) & this.mask)].add(timeout);
+        }
+    }
+
+    private void unlinkCancelled () {
+        Timeout timeout;
+        while ((timeout = this.cancelled.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+
+    /**
+     * A task waiting in the wheel.
+     * It can be extended to avoid the allocation of a Runnable.
+     */
+    public abstract static class Timeout {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private volatile int state = WAITING;
+        private volatile TimingWheel wheel;
+        private long deadline; // nanos since the start of the wheel
+        private long rounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        /**
+         * Called by the thread of the wheel once the delay has elapsed.
+         */
+        protected abstract void expire ();
+
+        /**
+         * Allows to cancel the timeout.
+         * @return True if the timeout will never expire because of this call.
+         */
+        public boolean cancel () {
+            if (!STATE.compareAndSet(this, WAITING, CANCELLED))
+                return false;
+
+            final TimingWheel wheel = this.wheel;
+            if (wheel != null) {
+                wheel.size.decrementAndGet();
+                wheel.cancelled.add(this);
+            }
+            return true;
+        }
+
+        /**
+         * Allows to know if the timeout has been cancelled.
+         * @return True if cancel() succeeded.
+         */
+        public final boolean isCancelled () {
+            return this.state == CANCELLED;
+        }
+
+        /**
+         * Allows to know if the timeout has expired.
+         * @return True if expire() has been called.
+         */
+        public final boolean isExpired () {
+            return this.state == EXPIRED;
+        }
+    }
+
+    private static final class Task extends Timeout {
+        private final Runnable task;
+
+        private Task (final Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        protected void expire () {
+            this.task.run();
+        }
+    }
+
+    /**
+     * Doubly-linked list of the timeouts of a tick, only used by the thread of the wheel.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add (final Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = this.tail;
+            timeout.next = null;
+            if (this.tail == null)
+                this.head = timeout;
+            else
+                this.tail.next = timeout;
+            this.tail = timeout;
+        }
+
+        private void remove (final Timeout timeout) {
+            if (timeout.prev == null)
+                this.head = timeout.next;
+            else
+                timeout.prev.next = timeout.next;
+            if (timeout.next == null)
+                this.tail = timeout.prev;
+            else
+                timeout.next.prev = timeout.prev;
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        private void expire () {
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.rounds <= 0) {
+                    this.remove(timeout);
+                    if (Timeout.STATE.compareAndSet(timeout, Timeout.WAITING, Timeout.EXPIRED)) {
+                        timeout.wheel.size.decrementAndGet();
+                        try {
+                            timeout.expire();
+                        } catch (final Throwable e) {
+                            if (timeout.wheel.debug)
+                                e.printStackTrace();
+                        }
+                    }
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void clear () {
+            while (this.head != null)
+                this.remove(this.head);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.commons.requests.Chunk;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkWriterTest {
+
+    private static void awaitChunks (final List<Chunk> written, final int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (written.size() < count && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        Thread.sleep(20); // no other chunk may follow
+        assertEquals(count, written.size());
+    }
+
+    @Test
+    public void chunksInOrderWithinTheWindow () throws Exception {
+        final byte[] data = new byte[2500];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+        final List<Chunk> written = new CopyOnWriteArrayList<>();
+        final ChunkWriter writer = new ChunkWriter(7, "files", new ByteArrayInputStream(data), 1000, 2, 5000, written::add);
+        final Thread thread = new Thread(writer);
+        thread.start();
+
+        awaitChunks(written, 2); // the window is spent: waits for a credit
+        assertFalse(writer.getFuture().isDone());
+        writer.grant(1);
+        writer.getFuture().get(5, TimeUnit.SECONDS);
+        thread.join();
+
+        assertEquals(3, written.size());
+        final byte[] received = new byte[data.length];
+        int offset = 0;
+        for (int i = 0; i < written.size(); i++) {
+            final Chunk chunk = written.get(i);
+            assertEquals(7, chunk.getIdStream());
+            assertEquals("files", chunk.getChannel());
+            assertEquals(i, chunk.getIndex());
+            assertEquals(i == 2, chunk.isLast());
+            System.arraycopy(chunk.getData(), 0, received, offset, chunk.getData().length);
+            offset += chunk.getData().length;
+        }
+        assertEquals(data.length, offset);
+        assertArrayEquals(data, received);
+    }
+
+    @Test
+    public void failedStreamSendsAnEmptyLastChunk () throws Exception {
+        final InputStream endless = new InputStream() {
+            @Override
+            public int read () {
+                return 1;
+            }
+        };
+        final List<Chunk> written = new CopyOnWriteArrayList<>();
+        final ChunkWriter writer = new ChunkWriter(1, "live", endless, 100, 1, 5000, written::add);
+        final Thread thread = new Thread(writer);
+        thread.start();
+
+        awaitChunks(written, 1);
+        writer.fail(new IOException("The connection is lost"));
+        thread.join(5000);
+
+        try {
+            writer.getFuture().get();
+            fail("The stream is not aborted");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        final Chunk aborted = written.get(written.size() - 1);
+        assertTrue(aborted.isLast());
+        assertNull(aborted.getData());
+    }
+
+    @Test
+    public void noCreditWithinTheDelay () throws Exception {
+        final List<Chunk> written = new CopyOnWriteArrayList<>();
+        final ChunkWriter writer = new ChunkWriter(1, "slow", new ByteArrayInputStream(new byte[300]), 100, 1, 50, written::add);
+        writer.run();
+
+        try {
+            writer.getFuture().get();
+            fail("The stream did not time out");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(2, written.size()); // one chunk, then the abort
+        assertTrue(written.get(1).isLast());
+    }
+}
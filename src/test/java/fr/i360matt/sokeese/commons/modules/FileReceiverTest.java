@@ -0,0 +1,81 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.commons.requests.FileTransfer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FileReceiverTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Path> opened = new CopyOnWriteArrayList<>();
+
+    private FileReceiver receiver (final int maxFiles) {
+        return new FileReceiver(this.folder.getRoot().toPath(), maxFiles, channel -> true, (request, path, transferred) -> {
+            if (transferred == 0 && !request.isAborted())
+                this.opened.add(path);
+        });
+    }
+
+    private static FileTransfer announce (final long id, final long size) {
+        final FileTransfer request = new FileTransfer();
+        request.setIdStream(id);
+        request.setChannel("files");
+        request.setName("file-" + id);
+        request.setSize(size);
+        return request;
+    }
+
+    private static ByteBuffer segment (final long id, final byte[] bytes) {
+        final ByteBuffer payload = ByteBuffer.allocate(8 + bytes.length);
+        payload.putLong(id).put(bytes).flip();
+        return payload;
+    }
+
+    private int files () {
+        final File[] files = this.folder.getRoot().listFiles();
+        return (files != null) ? files.length : 0;
+    }
+
+    @Test
+    public void duplicateIdentifierIsSkipped () throws Exception {
+        final FileReceiver receiver = this.receiver(0);
+        receiver.open(announce(1, 3));
+        receiver.open(announce(1, 3)); // announced again before its end
+        assertEquals(1, this.opened.size());
+        assertEquals(1, this.files());
+
+        receiver.write(segment(1, new byte[] { 1, 2, 3 }));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(this.opened.get(0)));
+        receiver.close();
+    }
+
+    @Test
+    public void receptionsBeyondTheMaximumAreSkipped () throws Exception {
+        final FileReceiver receiver = this.receiver(2);
+        receiver.open(announce(1, 10));
+        receiver.open(announce(2, 10));
+        receiver.open(announce(3, 10)); // a third one at once
+        assertEquals(2, this.opened.size());
+        assertEquals(2, this.files());
+        receiver.write(segment(3, new byte[] { 1 })); // unknown: ignored
+
+        receiver.write(segment(1, new byte[10])); // the first one ends, a place is free
+        receiver.open(announce(4, 10));
+        assertEquals(3, this.opened.size());
+
+        receiver.close(); // the receptions not ended are deleted
+        assertEquals(1, this.files());
+    }
+}
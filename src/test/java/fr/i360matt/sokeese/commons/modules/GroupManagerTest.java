@@ -0,0 +1,76 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.server.ClientLogged;
+import fr.i360matt.sokeese.server.SokeeseServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GroupManagerTest {
+    private SokeeseServer server;
+    private GroupManager groups;
+
+    @Before
+    public void open () {
+        this.server = new SokeeseServer(0);
+        this.groups = new GroupManager();
+    }
+
+    @After
+    public void close () {
+        this.groups.close();
+        this.server.close();
+    }
+
+    private ClientLogged session () {
+        return new ClientLogged(this.server, new Socket()); // never connected: only a key of the manager
+    }
+
+    @Test
+    public void joinAndLeave () {
+        final ClientLogged first = this.session();
+        final ClientLogged second = this.session();
+        assertTrue(this.groups.join(first, "room", 10));
+        assertTrue(this.groups.join(second, "room", 10));
+        assertTrue(this.groups.join(first, "room", 10)); // already a member
+        assertEquals(2, this.groups.getMemberCount("room"));
+        assertEquals(false, this.groups.join(this.session(), "room", 2)); // full
+
+        assertTrue(this.groups.leave(first, "room"));
+        assertEquals(false, this.groups.leave(first, "room"));
+        assertEquals(Arrays.asList(second), this.groups.getMembers("room"));
+        assertTrue(this.groups.leave(second, "room"));
+        assertEquals(false, this.groups.exist("room"));
+    }
+
+    @Test
+    public void reusedSlotIsNotVisited () {
+        final ClientLogged first = this.session();
+        final ClientLogged leaving = this.session();
+        final ClientLogged reusing = this.session();
+        this.groups.join(first, "room", 10);
+        this.groups.join(leaving, "room", 10);
+
+        // while the word of the bitset is being visited, the second member leaves
+        // and its slot is given to a session joining another group
+        final List<ClientLogged> visited = this.groups.forEachMember(GroupManager.PREFIX + "room", null, new ArrayList<>(), (member, ignored, list) -> {
+            if (member == first) {
+                this.groups.leave(leaving, "room");
+                this.groups.join(reusing, "other", 10);
+            }
+            list.add(member);
+            return list;
+        });
+
+        assertEquals(Arrays.asList(first), visited);
+        assertEquals(Arrays.asList(reusing), this.groups.getMembers("other"));
+    }
+}
@@ -0,0 +1,96 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HandlerTableTest {
+    private HandlerTable<String> table;
+
+    @Before
+    public void open () {
+        this.table = new HandlerTable<>();
+    }
+
+    private void assertHandlers (final String name, final String... expected) {
+        final Object[] found = this.table.get(name);
+        assertEquals(name, new HashSet<>(Arrays.asList(expected)), new HashSet<>(Arrays.asList(found)));
+        assertEquals(name, expected.length, found.length);
+    }
+
+    @Test
+    public void exactNames () {
+        this.table.add("orders", "a");
+        this.table.add("orders", "b");
+        this.table.add("orders", "a"); // already registered
+        assertArrayEquals(new Object[] { "a", "b" }, this.table.get("orders"));
+        assertHandlers("orders.new");
+        assertHandlers(null);
+    }
+
+    @Test
+    public void starMatchesExactlyOneSegment () {
+        this.table.add("orders.*", "star");
+        this.table.add("*.new", "first");
+        this.table.add("orders.*.eu", "middle");
+        assertHandlers("orders.new", "star", "first");
+        assertHandlers("orders.old", "star");
+        assertHandlers("orders.new.eu", "middle");
+        assertHandlers("orders");
+        assertHandlers("orders.", "star"); // an empty segment is a segment
+        assertHandlers("orders.eu.new");
+        assertHandlers("payments.new", "first");
+    }
+
+    @Test
+    public void restMatchesOneOrMoreSegments () {
+        this.table.add("metrics.eu.>", "eu");
+        this.table.add(">", "all");
+        this.table.add("metrics.*.>", "region");
+        assertHandlers("metrics.eu.cpu", "eu", "region", "all");
+        assertHandlers("metrics.eu.cpu.max", "eu", "region", "all");
+        assertHandlers("metrics.eu", "all"); // nothing left for the first two
+        assertHandlers("metrics", "all");
+        assertHandlers("metrics.us.cpu", "region", "all");
+    }
+
+    @Test
+    public void exactHandlersComeFirst () {
+        this.table.add("orders.*", "pattern");
+        this.table.add("orders.new", "exact");
+        assertArrayEquals(new Object[] { "exact", "pattern" }, this.table.get("orders.new"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restMustBeTheLastSegment () {
+        this.table.add("metrics.>.cpu", "invalid");
+    }
+
+    @Test
+    public void registrationSeenAfterALookup () {
+        this.table.add("orders.*", "first");
+        assertHandlers("orders.new", "first");
+        this.table.add("orders.new", "exact");
+        this.table.add("*.new", "second");
+        assertHandlers("orders.new", "exact", "first", "second");
+        this.table.clear();
+        assertHandlers("orders.new");
+    }
+
+    @Test
+    public void rotatingChannelsKeepTheCacheBounded () {
+        this.table.add("orders.*", "pattern");
+        this.table.add("hot", "exact");
+        for (int i = 0; i < 100_000; i++) {
+            assertHandlers("orders." + i, "pattern");
+            assertHandlers("hot", "exact");
+            assertTrue(this.table.cached() <= 4096);
+        }
+    }
+}
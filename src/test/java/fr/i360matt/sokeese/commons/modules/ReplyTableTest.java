@@ -0,0 +1,237 @@
+package fr.i360matt.sokeese.commons.modules;
+
+import fr.i360matt.sokeese.commons.requests.Reply;
+import fr.i360matt.sokeese.utils.TimingWheel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ReplyTableTest {
+    private TimingWheel wheel;
+    private ExecutorService executor;
+    private ReplyTable table;
+
+    @Before
+    public void open () {
+        this.wheel = new TimingWheel(1, 64);
+        this.executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "owner"));
+        this.table = new ReplyTable(this.wheel, this.executor, null);
+    }
+
+    @After
+    public void close () {
+        this.table.close();
+        this.wheel.close();
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void putAndRemove () {
+        final BiConsumer<Reply, Boolean> first = (reply, received) -> { };
+        final BiConsumer<Reply, Boolean> second = (reply, received) -> { };
+        assertTrue(this.table.put(42, first, 60_000));
+        assertFalse(this.table.put(42, second, 60_000)); // already waiting
+        assertEquals(1, this.table.size());
+
+        assertSame(first, this.table.remove(42));
+        assertNull(this.table.remove(42));
+        assertNull(this.table.remove(0));
+        assertEquals(0, this.table.size());
+
+        assertTrue(this.table.put(42, second, 60_000)); // reused once answered, like a wrapped counter
+        assertSame(second, this.table.answer(42));
+        assertEquals(0, this.wheel.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void identifierZeroIsRefused () {
+        this.table.put(0, (reply, received) -> { }, 60_000);
+    }
+
+    @Test
+    public void manyIdentifiersWrappingAroundTheStripes () {
+        // identifiers of two sessions whose counters wrapped: the probes wrap around the end of the stripes,
+        // the removals in random order shift them back, the stripes grow then shrink
+        final List<Long> ids = new ArrayList<>();
+        for (long serial = 1; serial <= 2; serial++)
+            for (long sequence = 0xFFFFF000L; sequence != 0x1000L; sequence = (sequence + 1) & 0xFFFFFFFFL)
+                if (sequence != 0)
+                    ids.add((serial << 32) | sequence);
+        Collections.shuffle(ids, new Random(7));
+
+        final Map<Long, BiConsumer<Reply, Boolean>> expected = new HashMap<>();
+        for (final long id : ids) {
+            final BiConsumer<Reply, Boolean> callback = (reply, received) -> { };
+            assertTrue(this.table.put(id, callback, 60_000));
+            expected.put(id, callback);
+        }
+        assertEquals(ids.size(), this.table.size());
+        assertEquals(ids.size() / 2, this.table.count(id -> (id >>> 32) == 1));
+
+        final Random random = new Random(11);
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            final long id = ids.remove(random.nextInt(i + 1));
+            assertSame(expected.remove(id), this.table.remove(id));
+            assertEquals(ids.size(), this.table.size());
+        }
+        assertEquals(0, this.table.size());
+        for (final long id : expected.keySet())
+            assertNull(this.table.remove(id));
+    }
+
+    @Test
+    public void failOwnerOnlyVisitsItsCallbacks () throws Exception {
+        final ReplyOwner owner = new ReplyOwner();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger other = new AtomicInteger();
+        for (long id = 1; id <= 100; id++) {
+            this.table.put(id, (reply, received) -> failed.incrementAndGet(), 60_000, owner);
+            this.table.put(id + 1000, (reply, received) -> other.incrementAndGet(), 60_000);
+        }
+        this.table.remove(1); // answered: unlinked from its owner
+        assertEquals(99, owner.size());
+
+        final ReplyFuture future = new ReplyFuture(60_000, null);
+        this.table.put(500, future, 60_000, owner);
+        this.table.failOwner(owner, new IOException("closed"));
+        assertEquals(99, failed.get());
+        assertTrue(future.getFuture().isCompletedExceptionally());
+        assertEquals(0, other.get());
+        assertEquals(0, owner.size());
+        assertEquals(100, this.table.size());
+
+        // closed: the next callbacks are failed at once, nothing is recorded
+        this.table.put(600, (reply, received) -> failed.incrementAndGet(), 60_000, owner);
+        assertEquals(100, failed.get());
+        assertEquals(100, this.table.size());
+        assertTrue(owner.isClosed());
+    }
+
+    @Test
+    public void expiredCallbackRunsOnTheExecutor () throws Exception {
+        final AtomicReference<String> thread = new AtomicReference<>();
+        final CountDownLatch expired = new CountDownLatch(1);
+        this.table.put(1, (reply, received) -> {
+            assertFalse(received);
+            thread.set(Thread.currentThread().getName());
+            expired.countDown();
+        }, 10);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertEquals("owner", thread.get());
+        assertEquals(0, this.table.size());
+        assertNull(this.table.remove(1));
+    }
+
+    @Test
+    public void slowCallbackDoesNotDelayTheWheel () throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService otherExecutor = Executors.newSingleThreadExecutor();
+        final ReplyTable other = new ReplyTable(this.wheel, otherExecutor, null);
+        try {
+            this.table.put(1, (reply, received) -> {
+                try {
+                    release.await();
+                } catch (final InterruptedException ignored) { }
+            }, 5);
+            final CountDownLatch expired = new CountDownLatch(1);
+            other.put(2, (reply, received) -> expired.countDown(), 20);
+
+            assertTrue(expired.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            other.close();
+            otherExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Runs a task while every stripe of the table is locked.
+     */
+    private static void holdingStripes (final Object[] stripes, final int from, final Runnable task) {
+        if (from == stripes.length) {
+            task.run();
+            return;
+        }
+        synchronized (stripes[from]) {
+            holdingStripes(stripes, from + 1, task);
+        }
+    }
+
+    @Test
+    public void failOwnerRacingTheExpiryCallsTheCallbackOnce () throws Exception {
+        final Field field = ReplyTable.class.getDeclaredField("stripes");
+        field.setAccessible(true);
+        final Object[] stripes = (Object[]) field.get(this.table);
+
+        for (int round = 0; round < 20; round++) {
+            final ReplyOwner owner = new ReplyOwner();
+            final AtomicInteger calls = new AtomicInteger();
+            final CountDownLatch called = new CountDownLatch(1);
+            this.table.put(round + 1, (reply, received) -> {
+                calls.incrementAndGet();
+                called.countDown();
+            }, 1, owner);
+
+            holdingStripes(stripes, 0, () -> {
+                try {
+                    // the wheel has marked the timeout expired, and waits for the stripe to remove it
+                    while (this.wheel.size() != 0)
+                        Thread.sleep(1);
+                } catch (final InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                this.table.failOwner(owner, new IOException("closed")); // removes it first
+            });
+
+            assertTrue("The callback was lost", called.await(5, TimeUnit.SECONDS));
+            Thread.sleep(5);
+            assertEquals(1, calls.get());
+        }
+        assertEquals(0, this.table.size());
+    }
+
+    @Test
+    public void putRacingFailOwnerIsFailedAtOnce () throws Exception {
+        for (int round = 0; round < 50; round++) {
+            final ReplyOwner owner = new ReplyOwner();
+            final int count = 500;
+            final CountDownLatch called = new CountDownLatch(count);
+            final long base = round * 1000L + 1;
+            final Thread putter = new Thread(() -> {
+                for (int i = 0; i < count; i++)
+                    this.table.put(base + i, (reply, received) -> called.countDown(), 60_000, owner);
+            });
+            putter.start();
+            this.table.failOwner(owner, new IOException("closed"));
+            putter.join();
+
+            // none of them waits for its delay of a minute
+            assertTrue("A callback waits for its delay", called.await(5, TimeUnit.SECONDS));
+            assertEquals(0, owner.size());
+        }
+        assertEquals(0, this.table.size());
+    }
+}
@@ -0,0 +1,165 @@
+package fr.i360matt.sokeese.commons.transport;
+
+import fr.i360matt.sokeese.commons.requests.Action;
+import fr.i360matt.sokeese.commons.requests.Chunk;
+import fr.i360matt.sokeese.commons.requests.Message;
+import fr.i360matt.sokeese.commons.requests.Reply;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryCodecTest {
+
+    private static ByteBuffer payload (final Codec codec, final Object obj) throws IOException {
+        final ByteBuffer frame = Frames.encode(codec, obj);
+        frame.position(frame.position() + Frames.HEADER);
+        return frame.slice();
+    }
+
+    private static Object roundTrip (final Codec codec, final Object obj) throws Exception {
+        return Frames.decode(codec, payload(codec, obj));
+    }
+
+    @Test
+    public void messageRoundTrip () throws Exception {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("int", 42);
+        map.put("long", -1L << 40);
+        map.put("double", 1.5);
+        map.put("bool", true);
+        map.put("null", null);
+        final List<Object> list = new ArrayList<>(Arrays.asList("a", "\u00e9\u20ac", 7));
+        map.put("list", list);
+
+        for (final Codec codec : Codec.values()) {
+            final Message message = new Message();
+            message.setIdRequest(123456789012L);
+            message.setRecipient("server");
+            message.setSender("sender");
+            message.setChannel("channel");
+            message.setContent(map);
+
+            final Message decoded = (Message) roundTrip(codec, message);
+            assertEquals(123456789012L, decoded.getIdRequest());
+            assertEquals("server", decoded.getRecipient());
+            assertEquals("sender", decoded.getSender());
+            assertEquals("channel", decoded.getChannel());
+            assertEquals(map, decoded.<Map<String, Object>>getContent());
+        }
+    }
+
+    @Test
+    public void replyActionAndChunkRoundTrip () throws Exception {
+        final Reply reply = new Reply();
+        reply.setIdRequest(1);
+        reply.setRecipient("client");
+        reply.setContent(new byte[] { 1, 2, 3 });
+        final Reply decodedReply = (Reply) roundTrip(Codec.BINARY, reply);
+        assertEquals(1, decodedReply.getIdRequest());
+        assertNull(decodedReply.getChannel());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) decodedReply.getContent());
+
+        final Action action = new Action();
+        action.setName("action");
+        action.setContent(new java.util.Date(0)); // not binary: serialized
+        final Action decodedAction = (Action) roundTrip(Codec.BINARY, action);
+        assertEquals("action", decodedAction.getName());
+        assertEquals(new java.util.Date(0), decodedAction.getContent());
+
+        final Chunk chunk = new Chunk();
+        chunk.setIdStream(9);
+        chunk.setIndex(3);
+        chunk.setLast(true);
+        chunk.setData(new byte[1000]);
+        final Chunk decodedChunk = (Chunk) roundTrip(Codec.BINARY, chunk);
+        assertEquals(9, decodedChunk.getIdStream());
+        assertEquals(3, decodedChunk.getIndex());
+        assertTrue(decodedChunk.isLast());
+        assertEquals(1000, decodedChunk.getData().length);
+    }
+
+    @Test
+    public void compressedRoundTrip () throws Exception {
+        final Message message = new Message();
+        message.setChannel("compressed");
+        final char[] text = new char[10_000];
+        Arrays.fill(text, 'x');
+        message.setContent(new String(text));
+
+        final ByteBuffer frame = Frames.compress(Frames.encode(Codec.BINARY, message), 1024);
+        assertTrue(Frames.isCompressed(frame));
+        final int length = Frames.length(frame);
+        assertTrue(length < 1000);
+
+        frame.position(frame.position() + Frames.HEADER);
+        final Message decoded = (Message) Frames.decode(Codec.BINARY, Frames.inflate(frame.slice()));
+        assertEquals(new String(text), decoded.getContent());
+    }
+
+    @Test
+    public void stringFromDirectBuffer () {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(16);
+        direct.put((byte) 4).put("abc".getBytes()).flip();
+        assertEquals("abc", FrameBuffer.readString(direct));
+        assertEquals(0, direct.remaining());
+    }
+
+    private static void assertMalformed (final int... bytes) throws Exception {
+        final ByteBuffer payload = ByteBuffer.allocate(bytes.length);
+        for (final int b : bytes)
+            payload.put((byte) b);
+        payload.flip();
+        try {
+            Frames.decode(Codec.BINARY, payload);
+            fail("Decoded a malformed payload");
+        } catch (final IOException expected) {
+            // the session is closed
+        }
+    }
+
+    @Test
+    public void malformedPayloads () throws Exception {
+        // a string longer than the payload: must not read beyond it
+        assertMalformed(BinaryCodec.MESSAGE, 0, 0x7F, 'a');
+        // bytes of 2 GB
+        assertMalformed(BinaryCodec.ACTION, 0, BinaryCodec.VALUE_BYTES, 0xFF, 0xFF, 0xFF, 0xFF, 0x07);
+        // negative length after the cast
+        assertMalformed(BinaryCodec.ACTION, 0, BinaryCodec.VALUE_BYTES, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F);
+        // chunk data beyond the payload
+        assertMalformed(BinaryCodec.CHUNK, 1, 0, 0, 0, BinaryCodec.CHUNK_DATA, 0x80, 0x80, 0x04);
+        // serialized content with a negative length
+        assertMalformed(BinaryCodec.ACTION, 0, BinaryCodec.VALUE_SERIALIZED, 0xFF, 0xFF, 0xFF, 0xFF);
+        // a map announcing more entries than bytes
+        assertMalformed(BinaryCodec.ACTION, 0, BinaryCodec.VALUE_MAP, 0xFF, 0xFF, 0xFF, 0x7F);
+        // truncated
+        assertMalformed(BinaryCodec.MESSAGE);
+        assertMalformed(BinaryCodec.MESSAGE, 0x80, 0x80);
+        // unknown type and tag
+        assertMalformed(99);
+        assertMalformed(BinaryCodec.ACTION, 0, 42);
+        // malformed varlong
+        assertMalformed(BinaryCodec.MESSAGE, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01);
+
+        // lists nested too deep for the stack
+        final int[] nested = new int[2 + 2 * 10_000];
+        nested[0] = BinaryCodec.ACTION;
+        nested[1] = 0;
+        for (int i = 2; i < nested.length; i += 2) {
+            nested[i] = BinaryCodec.VALUE_LIST;
+            nested[i + 1] = 1;
+        }
+        assertMalformed(nested);
+    }
+}
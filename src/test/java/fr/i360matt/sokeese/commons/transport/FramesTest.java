@@ -0,0 +1,136 @@
+package fr.i360matt.sokeese.commons.transport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FramesTest {
+
+    private static ByteBuffer frame (final byte[] payload) {
+        final ByteBuffer frame = ByteBuffer.allocate(Frames.HEADER + payload.length);
+        frame.putInt(payload.length).put(payload).flip();
+        return frame;
+    }
+
+    private static byte[] text (final int length) {
+        final byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++)
+            payload[i] = (byte) ('a' + (i % 7));
+        return payload;
+    }
+
+    private static byte[] inflated (final ByteBuffer compressed) throws IOException {
+        assertTrue(Frames.isCompressed(compressed));
+        assertFalse(Frames.isSegment(compressed));
+        final ByteBuffer payload = compressed.duplicate();
+        payload.position(payload.position() + Frames.HEADER);
+        assertEquals(payload.remaining(), Frames.length(compressed));
+
+        final ByteBuffer original = Frames.inflate(payload.slice());
+        final byte[] bytes = new byte[original.remaining()];
+        original.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void compressedRoundTrip () throws Exception {
+        final byte[] payload = text(100_000);
+        final ByteBuffer compressed = Frames.compress(frame(payload), 1024);
+        assertTrue(compressed.remaining() < payload.length / 10);
+        assertEquals(payload.length, compressed.getInt(Frames.HEADER)); // the original length comes first
+        assertArrayEquals(payload, inflated(compressed));
+    }
+
+    @Test
+    public void readOnlyFrameIsCompressed () throws Exception {
+        final byte[] payload = text(10_000);
+        final ByteBuffer shared = frame(payload).asReadOnlyBuffer(); // as queued for many sessions
+        assertArrayEquals(payload, inflated(Frames.compress(shared, 1024)));
+        assertEquals(0, shared.position());
+    }
+
+    @Test
+    public void frameKeptBelowTheThreshold () {
+        final ByteBuffer frame = frame(text(1000));
+        assertSame(frame, Frames.compress(frame, 1024));
+        assertSame(frame, Frames.compress(frame, 0)); // compression disabled
+    }
+
+    @Test
+    public void frameKeptWhenNotSmaller () {
+        final byte[] random = new byte[10_000];
+        new Random(3).nextBytes(random);
+        final ByteBuffer frame = frame(random);
+        assertSame(frame, Frames.compress(frame, 1024));
+    }
+
+    @Test
+    public void inflateBufferReusedBetweenFrames () throws Exception {
+        // the output is only valid until the next call: a smaller frame must not see the bytes of a larger one
+        assertArrayEquals(text(50_000), inflated(Frames.compress(frame(text(50_000)), 1024)));
+        final byte[] smaller = new byte[5000];
+        assertArrayEquals(smaller, inflated(Frames.compress(frame(smaller), 1024)));
+    }
+
+    private static void assertInvalid (final ByteBuffer payload) {
+        try {
+            Frames.inflate(payload);
+            fail("Inflated an invalid payload");
+        } catch (final IOException expected) {
+            // the session is closed
+        }
+    }
+
+    private static ByteBuffer withLength (final ByteBuffer payload, final int length) {
+        final ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+        copy.put(payload.duplicate()).flip();
+        copy.putInt(0, length);
+        return copy;
+    }
+
+    @Test
+    public void invalidCompressedPayloads () {
+        final ByteBuffer compressed = Frames.compress(frame(text(10_000)), 1024);
+        compressed.position(Frames.HEADER);
+        final ByteBuffer payload = compressed.slice();
+
+        assertInvalid(ByteBuffer.wrap(new byte[] { 0, 0 })); // no original length
+        assertInvalid(withLength(payload, 20_000)); // more bytes than the data holds
+        assertInvalid(withLength(payload, 5000)); // fewer bytes than the data holds
+        assertInvalid(withLength(payload, Frames.MAX_LENGTH + 1));
+        assertInvalid(withLength(payload, -1));
+        final ByteBuffer corrupted = ByteBuffer.allocate(8);
+        corrupted.putInt(100).putInt(0xFFFFFFFF).flip(); // not deflate data
+        assertInvalid(corrupted);
+    }
+
+    @Test(expected = IOException.class)
+    public void lengthBeyondTheMaximum () throws Exception {
+        final ByteBuffer header = ByteBuffer.allocate(Frames.HEADER);
+        header.putInt(0, Frames.MAX_LENGTH + 1);
+        Frames.length(header);
+    }
+
+    @Test
+    public void lengthBeyondTheLoginMaximum () throws Exception {
+        final ByteBuffer header = ByteBuffer.allocate(Frames.HEADER);
+        header.putInt(0, Frames.LOGIN_MAX_LENGTH);
+        assertEquals(Frames.LOGIN_MAX_LENGTH, Frames.length(header, Frames.LOGIN_MAX_LENGTH));
+
+        header.putInt(0, Frames.LOGIN_MAX_LENGTH + 1);
+        assertEquals(Frames.LOGIN_MAX_LENGTH + 1, Frames.length(header)); // valid once logged
+        try {
+            Frames.length(header, Frames.LOGIN_MAX_LENGTH);
+            fail("A frame beyond the login maximum was accepted");
+        } catch (final IOException expected) { }
+    }
+}
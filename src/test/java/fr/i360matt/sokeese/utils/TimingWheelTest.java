@@ -0,0 +1,77 @@
+package fr.i360matt.sokeese.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+    @Test
+    public void expiresInTheOrderOfTheDelays () throws Exception {
+        // 8 buckets of 2 ms: the longest delays wait for many rounds
+        final TimingWheel wheel = new TimingWheel(2, 8);
+        try {
+            final int[] delays = { 90, 10, 50, 30, 70, 150, 20, 110 };
+            final List<Integer> expired = Collections.synchronizedList(new ArrayList<>());
+            final CountDownLatch latch = new CountDownLatch(delays.length);
+            final long start = System.nanoTime();
+            for (final int delay : delays) {
+                wheel.schedule(() -> {
+                    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(delay));
+                    expired.add(delay);
+                    latch.countDown();
+                }, delay);
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            final List<Integer> sorted = new ArrayList<>(expired);
+            Collections.sort(sorted);
+            assertEquals(sorted, expired);
+            assertEquals(0, wheel.size());
+        } finally {
+            wheel.close();
+        }
+    }
+
+    @Test
+    public void cancelledTimeoutNeverExpires () throws Exception {
+        final TimingWheel wheel = new TimingWheel(1, 16);
+        try {
+            final CountDownLatch cancelled = new CountDownLatch(1);
+            final CountDownLatch after = new CountDownLatch(1);
+            final TimingWheel.Timeout timeout = wheel.schedule(cancelled::countDown, 20);
+            wheel.schedule(after::countDown, 40);
+            assertTrue(timeout.cancel());
+            assertFalse(timeout.cancel());
+
+            assertTrue(after.await(5, TimeUnit.SECONDS));
+            assertEquals(1, cancelled.getCount());
+            assertTrue(timeout.isCancelled());
+            assertFalse(timeout.isExpired());
+        } finally {
+            wheel.close();
+        }
+    }
+
+    @Test
+    public void failingTimeoutKeepsTheWheelRunning () throws Exception {
+        final TimingWheel wheel = new TimingWheel(1, 16);
+        try {
+            final CountDownLatch next = new CountDownLatch(1);
+            wheel.schedule(() -> { throw new IllegalStateException("ignored out of debug mode"); }, 5);
+            wheel.schedule(next::countDown, 10);
+            assertTrue(next.await(5, TimeUnit.SECONDS));
+            assertTrue(wheel.isAlive());
+        } finally {
+            wheel.close();
+        }
+    }
+}